@@ -18,9 +18,13 @@ import io.rapidpro.surveyor.data.Org;
 import io.rapidpro.surveyor.data.Submission;
 import io.rapidpro.surveyor.data.SubmissionService;
 import io.rapidpro.surveyor.test.BaseApplicationTest;
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.test.SyntheticOrg;
 
 import static androidx.test.espresso.Espresso.onView;
 import static androidx.test.espresso.action.ViewActions.click;
+import static androidx.test.espresso.action.ViewActions.closeSoftKeyboard;
+import static androidx.test.espresso.action.ViewActions.typeText;
 import static androidx.test.espresso.assertion.ViewAssertions.doesNotExist;
 import static androidx.test.espresso.assertion.ViewAssertions.matches;
 import static androidx.test.espresso.intent.Intents.intended;
@@ -144,6 +148,35 @@ public class OrgActivityTest extends BaseApplicationTest {
         onView(withId(R.id.button_pending)).check(matches(withText("2")));
     }
 
+    @Test
+    public void searchLargeOrg() throws IOException {
+        SyntheticOrg.small().withUuid(ORG_UUID).withFlows(1200, 2).withLocations(2, 2, 2).install(getSurveyor().getOrgsDirectory());
+
+        Intent intent = new Intent();
+        intent.putExtra(SurveyorIntent.EXTRA_ORG_UUID, ORG_UUID);
+
+        rule.launchActivity(intent);
+
+        // only the first page of flows is loaded
+        onView(withText("Flow 0")).check(matches(isDisplayed()));
+        onView(withText("Flow 1199")).check(doesNotExist());
+
+        // but any flow can be found by searching
+        onView(withId(R.id.search_flows)).perform(click(), typeText("flow 1199"), closeSoftKeyboard());
+        onView(withText("Flow 1199")).check(matches(isDisplayed()));
+        onView(withText("Flow 0")).check(doesNotExist());
+
+        onView(withText("Flow 1199")).perform(click());
+
+        intended(
+                allOf(
+                        hasComponent(FlowActivity.class.getName()),
+                        hasExtra(SurveyorIntent.EXTRA_ORG_UUID, ORG_UUID),
+                        hasExtra(SurveyorIntent.EXTRA_FLOW_UUID, SyntheticData.uuid("flow", 1199))
+                )
+        );
+    }
+
     @Test
     public void showLogoutConfirmationIfHasSubmissions() throws IOException {
         installOrg(ORG_UUID, io.rapidpro.surveyor.test.R.raw.org1_details, io.rapidpro.surveyor.test.R.raw.org1_flows, io.rapidpro.surveyor.test.R.raw.org1_assets);
@@ -0,0 +1,117 @@
+package io.rapidpro.surveyor.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import io.rapidpro.surveyor.test.BaseApplicationTest;
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+public class IndexedSubmissionServiceTest extends BaseApplicationTest {
+    private static final String DB_NAME = "test_indexed_submissions.db";
+
+    private File rootDir;
+
+    @Before
+    public void setUp() {
+        rootDir = new File(getSurveyor().getUserDirectory(), "indexed_submissions");
+        rootDir.mkdirs();
+        getSurveyor().deleteDatabase(DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        getSurveyor().deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void lifecycle() throws IOException {
+        for (boolean singleFile : new boolean[]{false, true}) {
+            SyntheticOrg synthetic = SyntheticOrg.small().withFlows(2, 3);
+            synthetic.installDetails(getSurveyor().getOrgsDirectory());
+            Org org = getSurveyor().getOrgService().get(synthetic.getUuid());
+            Flow flow1 = org.getFlows().get(0);
+            Flow flow2 = org.getFlows().get(1);
+
+            IndexedSubmissionService svc = new IndexedSubmissionService(getSurveyor(), rootDir, DB_NAME);
+            svc.setSingleFile(singleFile);
+            svc.prepare();
+
+            assertThat(svc.hasSubmissions(), is(false));
+
+            Submission sub1 = svc.newSubmission(org, flow1);
+            sub1.saveSession("{}");
+
+            assertThat(svc.hasSubmissions(), is(true));
+            assertThat(svc.getCompletedCount(org), is(0));
+
+            sub1.complete();
+            Submission sub2 = svc.newSubmission(org, flow2);
+            sub2.complete();
+
+            // starting a new submission discards any incomplete one for the same flow
+            Submission sub3 = svc.newSubmission(org, flow2);
+            svc.newSubmission(org, flow2);
+            assertThat(sub3.getDirectory().exists(), is(false));
+
+            assertThat(svc.getCompletedCount(org), is(2));
+            assertThat(svc.getCompletedCount(org, flow1), is(1));
+            assertThat(svc.getCompletedCounts(org).get(flow1.getUuid()), is(1));
+            assertThat(svc.getCompletedCounts(org).get(flow2.getUuid()), is(1));
+
+            List<Submission> completed = svc.getCompleted(org, flow1);
+            assertThat(completed, hasSize(1));
+            assertThat(completed.get(0).getDirectory(), is(sub1.getDirectory()));
+            assertThat(completed.get(0).getUuid(), is(sub1.getUuid()));
+
+            completed.get(0).delete();
+
+            assertThat(svc.getCompletedCount(org), is(1));
+            assertThat(svc.getCompleted(org), hasSize(1));
+
+            svc.clearAll();
+
+            assertThat(svc.hasSubmissions(), is(false));
+        }
+    }
+
+    @Test
+    public void rebuild() throws IOException {
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(10, 3).withSubmissions(200, 1);
+        synthetic.installDetails(getSurveyor().getOrgsDirectory());
+        Org org = getSurveyor().getOrgService().get(synthetic.getUuid());
+
+        // submissions written before the index existed are found by walking the tree until it's built
+        IndexedSubmissionService svc = new IndexedSubmissionService(getSurveyor(), rootDir, DB_NAME);
+        synthetic.installSubmissions(rootDir, svc.getMediaStore());
+
+        assertThat(svc.isReady(), is(false));
+        assertThat(svc.getCompletedCount(org), is(200));
+
+        // and then from the index
+        svc.prepare();
+        assertThat(svc.isReady(), is(true));
+        assertThat(svc.getCompletedCount(org), is(200));
+        assertThat(svc.getCompletedCount(org, org.getFlows().get(3)), is(20));
+
+        // a new service finds the index already built
+        svc = new IndexedSubmissionService(getSurveyor(), rootDir, DB_NAME);
+        svc.prepare();
+        assertThat(svc.getCompletedCount(org), is(200));
+
+        // and after migrating to single files
+        assertThat(svc.migrateToSingleFiles(), is(200));
+        assertThat(svc.getCompletedCount(org), is(200));
+        assertThat(svc.getCompleted(org).get(0).getDirectory().isFile(), is(true));
+
+        assertThat(svc.rebuild(), is(200));
+    }
+}
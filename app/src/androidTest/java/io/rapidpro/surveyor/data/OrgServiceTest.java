@@ -2,11 +2,13 @@ package io.rapidpro.surveyor.data;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 
 import io.rapidpro.surveyor.net.TembaException;
 import io.rapidpro.surveyor.test.BaseApplicationTest;
+import io.rapidpro.surveyor.test.SyntheticOrg;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -58,6 +60,28 @@ public class OrgServiceTest extends BaseApplicationTest {
 
         assertThat(org.hasAssets(), is(true));
         assertThat(org.getAssets(), not(isEmptyString()));
+        assertThat(org.getAssets("ed8cf8d4-a42c-4ce1-a7e3-44a2918e3cec"), not(isEmptyString()));
+
+        // legacy assets.json will have been migrated to the split format
+        assertThat(new File(org.getDirectory(), "assets.json").exists(), is(false));
+        assertThat(org.hasAssets(), is(true));
+    }
+
+    @Test
+    public void getLargeOrg() throws IOException {
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(200, 10).withLocations(10, 10, 10);
+        synthetic.install(getSurveyor().getOrgsDirectory());
+
+        Org org = getSurveyor().getOrgService().get(synthetic.getUuid());
+        assertThat(org.getFlows(), hasSize(200));
+        assertThat(org.hasAssets(), is(true));
+
+        // every fifth flow is in the legacy format
+        Flow flow = org.getFlows().get(4);
+        assertThat(flow.getName(), is("Flow 4"));
+        assertThat(flow.getSpecVersion(), is("11.12"));
+        assertThat(flow.getQuestionCount(), is(10));
+        assertThat(org.getAssets(flow.getUuid()), not(isEmptyString()));
     }
 
     @Test
@@ -4,12 +4,16 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.test.BaseApplicationTest;
+import io.rapidpro.surveyor.test.SyntheticOrg;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 
@@ -75,4 +79,109 @@ public class SubmissionServiceTest extends BaseApplicationTest {
 
         assertThat(svc.hasSubmissions(), is(false));
     }
+
+    @Test
+    public void singleFile() throws IOException {
+        installOrg(ORG_UUID, io.rapidpro.surveyor.test.R.raw.org1_details, io.rapidpro.surveyor.test.R.raw.org1_flows, io.rapidpro.surveyor.test.R.raw.org1_assets);
+
+        Org org = getSurveyor().getOrgService().get(ORG_UUID);
+        Flow flow1 = org.getFlow("bdd61538-5f50-4836-a8fb-acaafd64ddb1");
+
+        SubmissionService svc = getSurveyor().getSubmissionService();
+
+        // create one submission the old way, and then one as a single file
+        Submission sub1 = svc.newSubmission(org, flow1);
+        sub1.saveSession("{}");
+        sub1.complete();
+
+        svc.setSingleFile(true);
+        try {
+            Submission sub2 = svc.newSubmission(org, flow1);
+            sub2.saveSession("{}");
+            assertThat(sub2.getDirectory().isFile(), is(true));
+            assertThat(sub2.getDirectory().getName(), is(sub2.getUuid() + ".part"));
+            assertThat(sub2.isCompleted(), is(false));
+            assertThat(svc.getCompletedCount(org, flow1), is(1));
+
+            sub2.complete();
+            assertThat(sub2.getDirectory().getName(), is(sub2.getUuid() + ".sub"));
+
+            assertThat(svc.getCompletedCount(org, flow1), is(2));
+
+            assertThat(svc.migrateToSingleFiles(), is(1));
+            assertThat(sub1.getDirectory().exists(), is(false));
+            assertThat(svc.getCompletedCount(org, flow1), is(2));
+
+            svc.getCompleted(org, flow1).get(0).delete();
+
+            assertThat(svc.getCompletedCount(org, flow1), is(1));
+        } finally {
+            svc.setSingleFile(false);
+            svc.clearAll();
+        }
+    }
+
+    @Test
+    public void getInProgress() throws IOException {
+        installOrg(ORG_UUID, io.rapidpro.surveyor.test.R.raw.org1_details, io.rapidpro.surveyor.test.R.raw.org1_flows, io.rapidpro.surveyor.test.R.raw.org1_assets);
+
+        Org org = getSurveyor().getOrgService().get(ORG_UUID);
+        Flow flow1 = org.getFlow("bdd61538-5f50-4836-a8fb-acaafd64ddb1");
+
+        SubmissionService svc = getSurveyor().getSubmissionService();
+
+        List<String> events = new ArrayList<>();
+        for (int e = 0; e < 300; e++) {
+            events.add("{\"type\":\"msg_created\",\"text\":\"" + e + "\"}");
+        }
+
+        for (boolean singleFile : new boolean[]{false, true}) {
+            svc.setSingleFile(singleFile);
+            try {
+                Submission sub = svc.newSubmission(org, flow1);
+                assertThat(sub.readSession(), is(nullValue()));
+                assertThat(sub.readRecentEvents(10), is(empty()));
+
+                sub.saveSession("{\"status\":\"waiting\"}");
+                sub.saveNewEvents(events);
+
+                Submission restored = svc.getInProgress(org, flow1, sub.getUuid());
+                assertThat(restored.getDirectory(), is(sub.getDirectory()));
+                assertThat(restored.readSession(), is("{\"status\":\"waiting\"}"));
+                assertThat(restored.readRecentEvents(500), is(events));
+                assertThat(restored.readRecentEvents(2), is(events.subList(298, 300)));
+
+                assertThat(svc.getInProgress(org, flow1, "1234"), is(nullValue()));
+
+                // completed submissions can't be resumed
+                sub.complete();
+                assertThat(svc.getInProgress(org, flow1, sub.getUuid()), is(nullValue()));
+            } finally {
+                svc.setSingleFile(false);
+                svc.clearAll();
+            }
+        }
+    }
+
+    @Test
+    public void getCompletedAtScale() throws IOException {
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(20, 5).withSubmissions(500, 1);
+        synthetic.installDetails(getSurveyor().getOrgsDirectory());
+
+        Org org = getSurveyor().getOrgService().get(synthetic.getUuid());
+        SubmissionService svc = getSurveyor().getSubmissionService();
+
+        synthetic.installSubmissions(new File(getSurveyor().getUserDirectory(), "test_submissions"), svc.getMediaStore());
+
+        assertThat(svc.getCompletedCount(org), is(500));
+        assertThat(svc.getCompletedCount(org, org.getFlows().get(0)), is(25));
+
+        Submission sub = svc.getCompleted(org).get(0);
+        assertThat(sub.getMediaRefs(), hasSize(1));
+        assertThat(new File(svc.getMediaStore().getDirectory(), sub.getMediaRefs().get(0)).exists(), is(true));
+
+        svc.clearAll();
+
+        assertThat(svc.hasSubmissions(), is(false));
+    }
 }
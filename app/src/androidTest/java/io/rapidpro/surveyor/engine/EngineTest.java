@@ -24,7 +24,9 @@ import io.rapidpro.surveyor.test.R;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 
@@ -44,6 +46,30 @@ public class EngineTest extends BaseApplicationTest {
         assertThat(Engine.isSpecVersionSupported("14.0"), is(false));
     }
 
+    @Test
+    public void checkSpecVersion() {
+        assertThat(Engine.checkSpecVersion("10.0"), is(Engine.SpecVersionSupport.TOO_OLD));
+        assertThat(Engine.checkSpecVersion("12.0"), is(Engine.SpecVersionSupport.TOO_OLD));
+        assertThat(Engine.checkSpecVersion("13.0"), is(Engine.SpecVersionSupport.SUPPORTED));
+        assertThat(Engine.checkSpecVersion("13.0"), is(Engine.SpecVersionSupport.SUPPORTED));
+        assertThat(Engine.checkSpecVersion("14.0"), is(Engine.SpecVersionSupport.TOO_NEW));
+    }
+
+    @Test
+    public void getEnvironment() throws IOException {
+        final String ORG_UUID = "b2ad9e4d-71f1-4d54-8dd6-f7a94b685d06";
+
+        installOrg(ORG_UUID, R.raw.org1_details, R.raw.org1_flows, R.raw.org1_assets);
+        Org org = getSurveyor().getOrgService().get(ORG_UUID);
+
+        Environment env = Engine.getEnvironment(org);
+        assertThat(env, is(notNullValue()));
+        assertThat(Engine.getEnvironment(org), is(sameInstance(env)));
+
+        Engine.invalidateEnvironment(org);
+        assertThat(Engine.getEnvironment(org), is(not(sameInstance(env))));
+    }
+
     @Test(expected = EngineException.class)
     public void loadAssetsThrowsExceptionIfJsonInvalid() throws EngineException {
         Engine.loadAssets("{");
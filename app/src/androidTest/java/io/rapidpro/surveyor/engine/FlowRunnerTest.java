@@ -0,0 +1,63 @@
+package io.rapidpro.surveyor.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.test.BaseApplicationTest;
+import io.rapidpro.surveyor.test.FlowRunner;
+import io.rapidpro.surveyor.test.R;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs scripted sessions through the engine headlessly to measure throughput
+ */
+public class FlowRunnerTest extends BaseApplicationTest {
+
+    private static final String ORG_UUID = "b2ad9e4d-71f1-4d54-8dd6-f7a94b685d06";
+
+    private FlowRunner runner;
+    private List<FlowRunner.Script> scripts;
+
+    @Before
+    public void setUp() throws IOException {
+        installOrg(ORG_UUID, R.raw.org1_details, R.raw.org1_flows, R.raw.org1_assets);
+        Org org = getSurveyor().getOrgService().get(ORG_UUID);
+
+        runner = new FlowRunner(org, new File(getSurveyor().getUserDirectory(), "flow_runner"));
+        scripts = FlowRunner.readScripts(new StringReader(readResourceAsString(R.raw.flow_runner_scripts)));
+    }
+
+    @Test
+    public void serial() throws Exception {
+        FlowRunner.Report report = runner.run(scripts, 30, 1);
+
+        Logger.d("FlowRunner (serial): " + report);
+
+        assertThat(report.getSessions(), is(30));
+        assertThat(report.getFailures(), is(0));
+        assertThat(report.getIncomplete(), is(0));
+        assertThat(report.getSprints(), is(10 * (3 + 4 + 5)));
+        assertThat(report.getBytesPersisted(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        FlowRunner.Report report = runner.run(scripts, 60, 4);
+
+        Logger.d("FlowRunner (4 threads): " + report);
+
+        assertThat(report.getSessions(), is(60));
+        assertThat(report.getFailures(), is(0));
+        assertThat(report.getIncomplete(), is(0));
+    }
+}
@@ -0,0 +1,276 @@
+package io.rapidpro.surveyor.test;
+
+import com.nyaruka.goflow.mobile.Environment;
+import com.nyaruka.goflow.mobile.MsgIn;
+import com.nyaruka.goflow.mobile.SessionAssets;
+import com.nyaruka.goflow.mobile.Trigger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.Submission;
+import io.rapidpro.surveyor.engine.Contact;
+import io.rapidpro.surveyor.engine.Engine;
+import io.rapidpro.surveyor.engine.EngineException;
+import io.rapidpro.surveyor.engine.Session;
+import io.rapidpro.surveyor.engine.Sprint;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * Headless runner which runs sessions end to end against an installed org, answering each wait from
+ * a script, and persisting everything as a real submission would. Used to measure engine throughput
+ * without the UI or network.
+ */
+public class FlowRunner {
+
+    /**
+     * Inputs which look like attachments (e.g. "image/jpeg:file:///cat.jpg" or "geo:-1.95,30.06")
+     * are sent as such rather than as text
+     */
+    private static final Pattern ATTACHMENT = Pattern.compile("^([\\w-]+/[\\w.+-]+|geo):.+");
+
+    private Org org;
+    private File workDir;
+
+    /**
+     * Creates a new runner
+     *
+     * @param org     the org whose assets will be used
+     * @param workDir the directory to write submissions to
+     */
+    public FlowRunner(Org org, File workDir) {
+        this.org = org;
+        this.workDir = workDir;
+    }
+
+    /**
+     * Reads scripts from JSONL, one script per line, e.g. {"flow": "...", "inputs": ["Yes", "25"]}
+     *
+     * @param reader the reader
+     * @return the scripts
+     */
+    public static List<Script> readScripts(Reader reader) throws IOException {
+        List<Script> scripts = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().length() > 0) {
+                scripts.add(JsonUtils.unmarshal(line, Script.class));
+            }
+        }
+        return scripts;
+    }
+
+    /**
+     * Runs the given number of sessions, cycling through the scripts. Assets for each flow are loaded
+     * once up front so that only the engine is timed.
+     *
+     * @param scripts  the scripts
+     * @param sessions the number of sessions to run
+     * @param threads  the number of sessions to run concurrently
+     * @return the report
+     */
+    public Report run(final List<Script> scripts, int sessions, int threads) throws InterruptedException, IOException, EngineException {
+        final Map<String, SessionAssets> assets = loadAssets(scripts);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<SessionResult>> futures = new ArrayList<>(sessions);
+
+        long start = System.nanoTime();
+
+        for (int s = 0; s < sessions; s++) {
+            final Script script = scripts.get(s % scripts.size());
+            futures.add(executor.submit(new Callable<SessionResult>() {
+                @Override
+                public SessionResult call() throws Exception {
+                    return runSession(script, assets.get(script.flow));
+                }
+            }));
+        }
+
+        Report report = new Report();
+        for (Future<SessionResult> future : futures) {
+            try {
+                SessionResult result = future.get();
+                report.sessions++;
+                report.sprintNanos.addAll(result.sprintNanos);
+                report.bytesPersisted += result.bytesPersisted;
+                if (!result.completed) {
+                    report.incomplete++;
+                }
+            } catch (Exception e) {
+                Logger.e("Session failed", e);
+                report.failures++;
+            }
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+
+        Collections.sort(report.sprintNanos);
+        return report;
+    }
+
+    /**
+     * Loads the session assets for each flow used by the given scripts
+     */
+    private Map<String, SessionAssets> loadAssets(List<Script> scripts) throws IOException, EngineException {
+        Environment environment = Engine.getEnvironment(org);
+        Map<String, SessionAssets> assets = new HashMap<>();
+
+        for (Script script : scripts) {
+            if (!assets.containsKey(script.flow)) {
+                if (org.getFlow(script.flow) == null) {
+                    throw new IllegalArgumentException("No such flow " + script.flow);
+                }
+                assets.put(script.flow, Engine.createSessionAssets(environment, Engine.loadAssets(org.getAssets(script.flow))));
+            }
+        }
+        return assets;
+    }
+
+    private SessionResult runSession(Script script, SessionAssets assets) throws IOException, EngineException {
+        Flow flow = org.getFlow(script.flow);
+
+        File directory = new File(workDir, UUID.randomUUID().toString());
+        directory.mkdirs();
+        Submission submission = new Submission(org, directory);
+        SessionResult result = new SessionResult();
+
+        Trigger trigger = Engine.createManualTrigger(Engine.getEnvironment(org), Contact.createEmpty(assets), flow.toReference());
+
+        long start = System.nanoTime();
+        Pair<Session, Sprint> ss = Engine.getInstance().newSession(assets, trigger);
+        result.sprintNanos.add(System.nanoTime() - start);
+
+        Session session = ss.getLeft();
+        persist(submission, session, ss.getRight());
+
+        for (int i = 0; i < script.inputs.size() && session.isWaiting(); i++) {
+            String input = script.inputs.get(i);
+            MsgIn msg = ATTACHMENT.matcher(input).matches() ? Engine.createMsgIn("", input) : Engine.createMsgIn(input);
+
+            start = System.nanoTime();
+            Sprint sprint = session.resume(Engine.createMsgResume(null, null, msg));
+            result.sprintNanos.add(System.nanoTime() - start);
+
+            persist(submission, session, sprint);
+        }
+
+        result.completed = !session.isWaiting();
+        if (result.completed) {
+            submission.complete();
+        }
+
+        result.bytesPersisted = FileUtils.sizeOfDirectory(directory);
+        return result;
+    }
+
+    private static void persist(Submission submission, Session session, Sprint sprint) throws IOException, EngineException {
+        submission.saveSession(session);
+        submission.saveNewModifiers(sprint);
+        submission.saveNewEvents(sprint);
+    }
+
+    /**
+     * A scripted set of answers for a flow
+     */
+    public static class Script {
+        private String flow;
+
+        private List<String> inputs;
+
+        public String getFlow() {
+            return flow;
+        }
+
+        public List<String> getInputs() {
+            return inputs;
+        }
+    }
+
+    private static class SessionResult {
+        private List<Long> sprintNanos = new ArrayList<>();
+        private long bytesPersisted;
+        private boolean completed;
+    }
+
+    /**
+     * The results of a run
+     */
+    public static class Report {
+        private int sessions;
+        private int incomplete;
+        private int failures;
+        private long elapsedNanos;
+        private List<Long> sprintNanos = new ArrayList<>();
+        private long bytesPersisted;
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        /**
+         * Gets the number of sessions which ran out of scripted inputs while still waiting
+         */
+        public int getIncomplete() {
+            return incomplete;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getSprints() {
+            return sprintNanos.size();
+        }
+
+        public long getBytesPersisted() {
+            return bytesPersisted;
+        }
+
+        public double getSessionsPerSecond() {
+            return sessions / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Gets the given percentile of sprint latencies
+         *
+         * @param percentile the percentile, e.g. 99
+         * @return the latency in milliseconds
+         */
+        public double getSprintLatency(int percentile) {
+            if (sprintNanos.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sprintNanos.size()) - 1;
+            return sprintNanos.get(Math.max(index, 0)) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "sessions=%d (failed=%d, incomplete=%d), %.1f sessions/sec, sprints=%d, p50=%.2fms, p99=%.2fms, persisted=%d bytes",
+                    sessions, failures, incomplete, getSessionsPerSecond(), getSprints(), getSprintLatency(50), getSprintLatency(99), bytesPersisted);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.app.Application;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 
@@ -15,6 +16,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Set;
 
+import io.rapidpro.surveyor.data.IndexedSubmissionService;
 import io.rapidpro.surveyor.data.OrgService;
 import io.rapidpro.surveyor.data.SubmissionService;
 import io.rapidpro.surveyor.net.TembaService;
@@ -43,7 +45,7 @@ public class SurveyorApplication extends Application {
     /**
      * Service for local submission operations
      */
-    private SubmissionService submissionService = null;
+    private volatile SubmissionService submissionService = null;
 
     /**
      * Gets the singleton instance of this application
@@ -68,10 +70,23 @@ public class SurveyorApplication extends Application {
 
         try {
             orgService = new OrgService(getOrgsDirectory());
-            submissionService = new SubmissionService(getSubmissionsDirectory());
+            submissionService = createSubmissionService();
         } catch (IOException e) {
             Logger.e("Unable to create directory based services", e);
+            return;
         }
+
+        // the submission and org indexes need building once, e.g. after upgrading from a version without them
+        final SubmissionService service = submissionService;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (service instanceof IndexedSubmissionService) {
+                    ((IndexedSubmissionService) service).prepare();
+                }
+                orgService.buildIndex(service);
+            }
+        });
     }
 
     /**
@@ -152,10 +167,83 @@ public class SurveyorApplication extends Application {
         } catch (IOException e) {
             Logger.e("Unable to clear submissions", e);
         }
+        try {
+            getOrgService().removeAll();
+        } catch (IOException e) {
+            Logger.e("Unable to remove orgs", e);
+        }
 
         tembaService = new TembaService(newHost);
     }
 
+    /**
+     * Called when our submission storage setting has changed
+     */
+    public void onSubmissionStorageChanged() {
+        final boolean singleFile = getPreferences().getBoolean(SurveyorPreferences.SINGLE_FILE_SUBMISSIONS, false);
+        boolean indexed = getPreferences().getBoolean(SurveyorPreferences.INDEXED_SUBMISSIONS, false);
+
+        Logger.d("Submission storage changed (single file=" + singleFile + ", indexed=" + indexed + ")");
+
+        SubmissionService previous = submissionService;
+        final boolean wasIndexed = previous instanceof IndexedSubmissionService;
+        final SubmissionService service;
+        try {
+            service = createSubmissionService();
+        } catch (IOException e) {
+            Logger.e("Unable to create submission service", e);
+            return;
+        }
+
+        // submissions which are already open will notify the new service of changes
+        if (previous != null) {
+            previous.replaceWith(service);
+            previous.close();
+        }
+        submissionService = service;
+
+        // existing submissions are converted in the background, new ones will be created as single files,
+        // and the index will be stale if submissions were written without it
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (singleFile) {
+                        service.migrateToSingleFiles();
+                    }
+                    if (service instanceof IndexedSubmissionService) {
+                        if (wasIndexed) {
+                            ((IndexedSubmissionService) service).prepare();
+                        } else {
+                            ((IndexedSubmissionService) service).rebuild();
+                        }
+                    }
+                } catch (IOException e) {
+                    Logger.e("Unable to migrate submissions", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the submission service for the current storage preferences
+     *
+     * @return the service
+     */
+    protected SubmissionService createSubmissionService() throws IOException {
+        File rootDir = getSubmissionsDirectory();
+
+        SubmissionService service;
+        if (getPreferences().getBoolean(SurveyorPreferences.INDEXED_SUBMISSIONS, false)) {
+            service = new IndexedSubmissionService(this, rootDir, rootDir.getName() + ".db");
+        } else {
+            service = new SubmissionService(rootDir);
+        }
+        service.setSingleFile(getPreferences().getBoolean(SurveyorPreferences.SINGLE_FILE_SUBMISSIONS, false));
+        service.setOrgIndex(getOrgService().getIndex());
+        return service;
+    }
+
     /**
      * Returns the Temba API service
      *
@@ -9,6 +9,9 @@ public interface SurveyorIntent {
     // where media files are to be stored
     String EXTRA_MEDIA_FILE = "surveyor.extra.media_file";
 
+    // how audio recordings should be encoded
+    String EXTRA_AUDIO_PROFILE = "surveyor.extra.audio_profile";
+
     String EXTRA_ERROR = "surveyor.extra.error";
     String EXTRA_CAMERA_DIRECTION = "surveyor.extra.camera_direction";
 }
@@ -20,4 +20,29 @@ public interface SurveyorPreferences {
      * UUIDs of the orgs this user has access to
      */
     String AUTH_ORGS = "auth_orgs";
+
+    /**
+     * Name of the audio profile used to record audio questions (may be overridden per org or flow)
+     */
+    String AUDIO_PROFILE = "audio_profile";
+
+    /**
+     * Name of the video profile used to transcode captured videos
+     */
+    String VIDEO_PROFILE = "video_profile";
+
+    /**
+     * Whether downloaded org assets are stored compressed
+     */
+    String COMPRESS_ASSETS = "compress_assets";
+
+    /**
+     * Whether new submissions are stored as single files rather than directories
+     */
+    String SINGLE_FILE_SUBMISSIONS = "single_file_submissions";
+
+    /**
+     * Whether submissions are tracked in a database rather than found by listing directories
+     */
+    String INDEXED_SUBMISSIONS = "indexed_submissions";
 }
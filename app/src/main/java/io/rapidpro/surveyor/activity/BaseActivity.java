@@ -18,6 +18,7 @@ import com.greysonparrelli.permiso.Permiso;
 import com.greysonparrelli.permiso.PermisoActivity;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 
@@ -101,7 +102,12 @@ public abstract class BaseActivity extends PermisoActivity {
      * @param item the menu item
      */
     public void onActionLogout(MenuItem item) {
-        if (getSurveyor().getSubmissionService().hasSubmissions()) {
+        // the org index lets us skip the scan when it knows of pending submissions, but it can under-count
+        // if we died mid-update and it doesn't include in-progress submissions, so only trust a positive
+        int pending = getSurveyor().getOrgService().getIndex().getTotalPending();
+        boolean hasSubmissions = pending > 0 || getSurveyor().getSubmissionService().hasSubmissions();
+
+        if (hasSubmissions) {
             showConfirmDialog(R.string.confirm_logout_with_submissions, new ConfirmationListener() {
                 @Override
                 public void onConfirm() {
@@ -179,6 +185,11 @@ public abstract class BaseActivity extends PermisoActivity {
         } catch (IOException e) {
             Logger.e("Unable to clear submissions", e);
         }
+        try {
+            getSurveyor().getOrgService().removeAll();
+        } catch (IOException e) {
+            Logger.e("Unable to remove orgs", e);
+        }
 
         Intent intent = new Intent(this, LoginActivity.class);
 
@@ -277,6 +288,40 @@ public abstract class BaseActivity extends PermisoActivity {
                 }).show();
     }
 
+    /**
+     * Shows a dialog to choose the audio profile stored under the given preference key. The first
+     * choice clears the preference so that the profile is inherited.
+     *
+     * @param key            the preference key
+     * @param inheritTitleId the title of the choice to inherit the profile
+     */
+    protected void showAudioProfileDialog(final String key, int inheritTitleId) {
+        String[] titles = getResources().getStringArray(R.array.pref_audio_profile_titles);
+        final String[] values = getResources().getStringArray(R.array.pref_audio_profile_values);
+
+        String[] choices = new String[titles.length + 1];
+        choices[0] = getString(inheritTitleId);
+        System.arraycopy(titles, 0, choices, 1, titles.length);
+
+        String current = getPreferences().getString(key, null);
+        int checked = current != null ? Arrays.asList(values).indexOf(current) + 1 : 0;
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.pref_title_audio_profile)
+                .setSingleChoiceItems(choices, checked, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            getSurveyor().clearPreference(key);
+                        } else {
+                            getSurveyor().setPreference(key, values[which - 1]);
+                        }
+                        dialog.dismiss();
+                    }
+                })
+                .show();
+    }
+
     public void showRationaleDialog(int body, Permiso.IOnRationaleProvided callback) {
         Permiso.getInstance().showRationaleInDialog(getString(R.string.title_permissions), getString(body), null, callback);
     }
@@ -12,6 +12,7 @@ import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.R;
 import io.rapidpro.surveyor.SurveyorIntent;
 import io.rapidpro.surveyor.ui.IconTextView;
+import io.rapidpro.surveyor.utils.AudioProfile;
 
 /**
  * Activity for capturing an audio recording
@@ -37,8 +38,9 @@ public class CaptureAudioActivity extends BaseActivity {
         isRecording = true;
 
         String output = getIntent().getStringExtra(SurveyorIntent.EXTRA_MEDIA_FILE);
+        AudioProfile profile = AudioProfile.fromName(getIntent().getStringExtra(SurveyorIntent.EXTRA_AUDIO_PROFILE));
 
-        Logger.d("Recording audio to " + output + "...");
+        Logger.d("Recording audio to " + output + " with profile " + profile.getName() + "...");
 
         try {
             mediaRecorder = new MediaRecorder();
@@ -46,6 +48,7 @@ public class CaptureAudioActivity extends BaseActivity {
             mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
             mediaRecorder.setOutputFile(output);
             mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+            profile.configure(mediaRecorder);
             mediaRecorder.prepare();
 
         } catch (Exception e) {
@@ -2,6 +2,8 @@ package io.rapidpro.surveyor.activity;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 
 import java.text.NumberFormat;
@@ -13,7 +15,10 @@ import io.rapidpro.surveyor.SurveyorIntent;
 import io.rapidpro.surveyor.data.Flow;
 import io.rapidpro.surveyor.data.Org;
 import io.rapidpro.surveyor.data.Submission;
+import io.rapidpro.surveyor.engine.PreparedSessions;
+import io.rapidpro.surveyor.task.PrepareSessionTask;
 import io.rapidpro.surveyor.ui.ViewCache;
+import io.rapidpro.surveyor.utils.AudioProfile;
 
 /**
  * Home screen for a flow - shows start button and pending submissions
@@ -66,6 +71,29 @@ public class FlowActivity extends BaseSubmissionsActivity {
 
         cache.setVisible(R.id.container_pending, pending > 0);
         cache.setButtonText(R.id.button_pending, nf.format(pending));
+
+        // get a session ready in case the user starts this flow
+        PrepareSessionTask.prepare(org, flow);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (isFinishing()) {
+            PreparedSessions.getInstance().discard();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        super.onCreateOptionsMenu(menu);
+        getMenuInflater().inflate(R.menu.menu_flow, menu);
+        return true;
+    }
+
+    public void onActionAudioProfile(MenuItem item) {
+        showAudioProfileDialog(AudioProfile.prefKey(org.getUuid(), flow.getUuid()), R.string.audio_profile_inherit_org);
     }
 
     public void onActionStart(View view) {
@@ -6,15 +6,17 @@ import android.app.FragmentTransaction;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
-import com.vdurmont.semver4j.Semver;
 
 import java.text.NumberFormat;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.R;
@@ -24,10 +26,14 @@ import io.rapidpro.surveyor.data.Flow;
 import io.rapidpro.surveyor.data.Org;
 import io.rapidpro.surveyor.data.Submission;
 import io.rapidpro.surveyor.engine.Engine;
+import io.rapidpro.surveyor.data.OrgSummary;
 import io.rapidpro.surveyor.fragment.FlowListFragment;
+import io.rapidpro.surveyor.task.CountSubmissionsTask;
+import io.rapidpro.surveyor.task.PrepareSessionTask;
 import io.rapidpro.surveyor.task.RefreshOrgTask;
 import io.rapidpro.surveyor.ui.BlockingProgress;
 import io.rapidpro.surveyor.ui.ViewCache;
+import io.rapidpro.surveyor.utils.AudioProfile;
 
 /**
  * Home screen for an org - shows available flows and pending submissions
@@ -35,6 +41,7 @@ import io.rapidpro.surveyor.ui.ViewCache;
 public class OrgActivity extends BaseSubmissionsActivity implements FlowListFragment.Container {
 
     private Org org;
+    private Map<String, Integer> pendingCounts = Collections.emptyMap();
     private AlertDialog confirmRefreshDialog;
 
     @Override
@@ -97,16 +104,21 @@ public class OrgActivity extends BaseSubmissionsActivity implements FlowListFrag
 
         setTitle(org.getName());
 
-        FlowListAdapter adapter = (FlowListAdapter) getViewCache().getListViewAdapter(android.R.id.list);
-        if (adapter != null) {
-            adapter.notifyDataSetChanged();
+        // show the indexed total until the flows have been counted
+        OrgSummary summary = getSurveyor().getOrgService().getIndex().get(org.getUuid());
+        if (summary != null) {
+            showPending(summary.getPendingCount());
         }
 
-        int pending = getSurveyor().getSubmissionService().getCompletedCount(getOrg());
-
-        ViewCache cache = getViewCache();
-        cache.setVisible(R.id.container_pending, pending > 0);
-        cache.setButtonText(R.id.button_pending, NumberFormat.getInstance().format(pending));
+        // count pending submissions for all flows at once rather than as each row is shown
+        new CountSubmissionsTask(getSurveyor().getSubmissionService(), new CountSubmissionsTask.Listener() {
+            @Override
+            public void onComplete(Map<String, Integer> counts) {
+                if (!isFinishing()) {
+                    showPendingCounts(counts);
+                }
+            }
+        }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, getOrg());
 
         if (confirmRefreshDialog == null) {
             if (!org.hasAssets()) {
@@ -114,25 +126,52 @@ public class OrgActivity extends BaseSubmissionsActivity implements FlowListFrag
                 confirmRefreshOrg(R.string.confirm_org_download);
             } else {
                 for (Flow flow : org.getFlows()) {
-                    if (!Engine.isSpecVersionSupported(flow.getSpecVersion())) {
+                    Engine.SpecVersionSupport support = Engine.checkSpecVersion(flow.getSpecVersion());
+                    if (support != Engine.SpecVersionSupport.SUPPORTED) {
                         Logger.w("Found flow " + flow.getUuid() + " with unsupported version " + flow.getSpecVersion());
 
-                        Semver flowVersion = new Semver(flow.getSpecVersion(), Semver.SemverType.LOOSE);
-                        if (flowVersion.isGreaterThan(Engine.currentSpecVersion())) {
+                        if (support == Engine.SpecVersionSupport.TOO_NEW) {
                             // if this flow is a major version ahead of us... user needs to upgrade the app
                             promptToUpgrade();
-                            break;
+                            return;
                         } else {
                             // if it is a major version behind, they should refresh the assets
                             confirmRefreshOrg(R.string.confirm_org_refresh_old);
-                            break;
+                            return;
                         }
                     }
                 }
+
+                // warm up the engine, and if there's only one flow the user is likely to run it
+                PrepareSessionTask.prepare(org, org.getFlows().size() == 1 ? org.getFlows().get(0) : null);
             }
         }
     }
 
+    private void showPendingCounts(Map<String, Integer> counts) {
+        pendingCounts = counts;
+        int pending = 0;
+        for (int count : pendingCounts.values()) {
+            pending += count;
+        }
+
+        FlowListAdapter adapter = (FlowListAdapter) getViewCache().getListViewAdapter(android.R.id.list);
+        if (adapter != null) {
+            adapter.setPendingCounts(pendingCounts);
+        }
+
+        // we've counted anyway so correct the index if it's drifted
+        getSurveyor().getOrgService().getIndex().setPending(org.getUuid(), pending);
+
+        showPending(pending);
+    }
+
+    private void showPending(int pending) {
+        ViewCache cache = getViewCache();
+        cache.setVisible(R.id.container_pending, pending > 0);
+        cache.setButtonText(R.id.button_pending, NumberFormat.getInstance().format(pending));
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         super.onCreateOptionsMenu(menu);
@@ -145,6 +184,10 @@ public class OrgActivity extends BaseSubmissionsActivity implements FlowListFrag
         return super.onOptionsItemSelected(item);
     }
 
+    public void onActionAudioProfile(MenuItem item) {
+        showAudioProfileDialog(AudioProfile.prefKey(org.getUuid(), null), R.string.audio_profile_inherit_app);
+    }
+
     public void onActionRefresh(MenuItem item) {
         confirmRefreshOrg(R.string.confirm_org_refresh);
     }
@@ -198,11 +241,11 @@ public class OrgActivity extends BaseSubmissionsActivity implements FlowListFrag
     }
 
     /**
-     * @see FlowListFragment.Container#getListItems()
+     * @see FlowListFragment.Container#getPendingCounts()
      */
     @Override
-    public List<Flow> getListItems() {
-        return getOrg().getFlows();
+    public Map<String, Integer> getPendingCounts() {
+        return pendingCounts;
     }
 
     /**
@@ -17,7 +17,7 @@ import io.rapidpro.surveyor.R;
 import io.rapidpro.surveyor.SurveyorApplication;
 import io.rapidpro.surveyor.SurveyorIntent;
 import io.rapidpro.surveyor.SurveyorPreferences;
-import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.OrgSummary;
 import io.rapidpro.surveyor.fragment.OrgListFragment;
 
 /**
@@ -25,13 +25,14 @@ import io.rapidpro.surveyor.fragment.OrgListFragment;
  */
 public class OrgChooseActivity extends BaseActivity implements OrgListFragment.Container {
 
-    private List<Org> getOrgs() {
+    private List<OrgSummary> getOrgs() {
         Set<String> orgUUIDs = SurveyorApplication.get().getPreferences().getStringSet(SurveyorPreferences.AUTH_ORGS, Collections.<String>emptySet());
-        List<Org> orgs = new ArrayList<>(orgUUIDs.size());
 
+        // summaries come from the org index so we don't have to load every org
+        List<OrgSummary> orgs = new ArrayList<>(orgUUIDs.size());
         for (String uuid : orgUUIDs) {
             try {
-                orgs.add(getSurveyor().getOrgService().get(uuid));
+                orgs.add(getSurveyor().getOrgService().getSummary(uuid));
             } catch (Exception e) {
                 Logger.e("Unable to load org", e);
             }
@@ -51,7 +52,7 @@ public class OrgChooseActivity extends BaseActivity implements OrgListFragment.C
             return;
         }
 
-        List<Org> orgs = getOrgs();
+        List<OrgSummary> orgs = getOrgs();
 
         // if we don't have any orgs, take us back to the login screen
         if (orgs == null || orgs.size() == 0) {
@@ -93,19 +94,19 @@ public class OrgChooseActivity extends BaseActivity implements OrgListFragment.C
      * @see OrgListFragment.Container#getListItems()
      */
     @Override
-    public List<Org> getListItems() {
+    public List<OrgSummary> getListItems() {
         return getOrgs();
     }
 
     /**
-     * @see OrgListFragment.Container#onItemClick(Org)
+     * @see OrgListFragment.Container#onItemClick(OrgSummary)
      */
     @Override
-    public void onItemClick(Org org) {
+    public void onItemClick(OrgSummary org) {
         showOrg(org);
     }
 
-    private void showOrg(Org org) {
+    private void showOrg(OrgSummary org) {
         Intent intent = new Intent(OrgChooseActivity.this, OrgActivity.class);
         intent.putExtra(SurveyorIntent.EXTRA_ORG_UUID, org.getUuid());
         startActivity(intent);
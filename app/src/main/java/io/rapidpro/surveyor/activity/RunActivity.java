@@ -17,6 +17,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
@@ -25,36 +26,42 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.greysonparrelli.permiso.Permiso;
-import com.nyaruka.goflow.mobile.Environment;
-import com.nyaruka.goflow.mobile.Event;
-import com.nyaruka.goflow.mobile.Hint;
 import com.nyaruka.goflow.mobile.MsgIn;
 import com.nyaruka.goflow.mobile.Resume;
-import com.nyaruka.goflow.mobile.SessionAssets;
-import com.nyaruka.goflow.mobile.Trigger;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.R;
 import io.rapidpro.surveyor.SurveyorIntent;
+import io.rapidpro.surveyor.SurveyorPreferences;
+import io.rapidpro.surveyor.adapter.LocationCompletionAdapter;
 import io.rapidpro.surveyor.data.Flow;
 import io.rapidpro.surveyor.data.Org;
 import io.rapidpro.surveyor.data.Submission;
-import io.rapidpro.surveyor.engine.Contact;
 import io.rapidpro.surveyor.engine.Engine;
 import io.rapidpro.surveyor.engine.EngineException;
+import io.rapidpro.surveyor.engine.LocationIndex;
+import io.rapidpro.surveyor.engine.PreparedSessions;
 import io.rapidpro.surveyor.engine.Session;
 import io.rapidpro.surveyor.engine.Sprint;
+import io.rapidpro.surveyor.engine.events.EngineEvent;
+import io.rapidpro.surveyor.engine.events.EventDecoders;
+import io.rapidpro.surveyor.engine.events.MsgEvent;
+import io.rapidpro.surveyor.engine.events.WaitEvent;
+import io.rapidpro.surveyor.task.TranscodeVideoTask;
+import io.rapidpro.surveyor.ui.BlockingProgress;
 import io.rapidpro.surveyor.ui.IconTextView;
 import io.rapidpro.surveyor.ui.ViewCache;
+import io.rapidpro.surveyor.utils.AudioProfile;
 import io.rapidpro.surveyor.utils.ImageUtils;
+import io.rapidpro.surveyor.utils.VideoProfile;
 import io.rapidpro.surveyor.widget.ChatBubbleView;
 import io.rapidpro.surveyor.widget.IconLinkView;
 
@@ -75,13 +82,29 @@ public class RunActivity extends BaseActivity {
     private static final int MAX_IMAGE_DIMENSION = 1024;
     private static final int MAX_THUMB_DIMENSION = 600;
 
+    // key of the in-progress submission in the saved instance state
+    private static final String STATE_SUBMISSION_UUID = "submission_uuid";
+
+    // how many of the most recent events are replayed into the chat history when a run is restored
+    private static final int MAX_REPLAYED_EVENTS = 200;
+
     private LinearLayout chatHistory;
     private IconTextView sendButtom;
-    private EditText chatCompose;
+    private AutoCompleteTextView chatCompose;
     private ScrollView scrollView;
 
+    private Org org;
+    private Flow flow;
     private Session session;
     private Submission submission;
+    private Map<String, Integer> locationNodes;
+
+    // set while we're asking the user whether to discard a run we couldn't restore
+    private String unrestoredUUID;
+
+    // transcoding of a captured video, which is retained if we're recreated before it completes
+    private TranscodeVideoTask transcodeTask;
+    private BlockingProgress transcodeProgress;
 
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
@@ -94,16 +117,46 @@ public class RunActivity extends BaseActivity {
         initUI();
 
         try {
-            Org org = getSurveyor().getOrgService().get(orgUUID);
-            Environment environment = Engine.createEnvironment(org);
-            SessionAssets assets = Engine.createSessionAssets(environment, Engine.loadAssets(org.getAssets()));
-
-            Flow flow = org.getFlow(flowUUID);
+            org = getSurveyor().getOrgService().get(orgUUID);
+            flow = org.getFlow(flowUUID);
             setTitle(flow.getName());
+            locationNodes = org.getLocationNodes(flowUUID);
+        } catch (IOException e) {
+            handleProblem("Unable to start flow", e);
+            return;
+        }
 
-            Trigger trigger = Engine.createManualTrigger(environment, Contact.createEmpty(assets), flow.toReference());
+        // if we were killed part way through a run, pick up where the user left off
+        String submissionUUID = savedInstanceState != null ? savedInstanceState.getString(STATE_SUBMISSION_UUID) : null;
+        if (submissionUUID != null) {
+            Submission previous = getSurveyor().getSubmissionService().getInProgress(org, flow, submissionUUID);
+            if (previous != null) {
+                if (restoreRun(previous)) {
+                    resumeTranscode();
+                } else {
+                    // starting again would discard the run, which might be restorable later, so ask first
+                    unrestoredUUID = submissionUUID;
+                    confirmRestartRun();
+                }
+                return;
+            }
 
-            Pair<Session, Sprint> ss = Engine.getInstance().newSession(assets, trigger);
+            Logger.w("Unable to find submission " + submissionUUID + " to restore");
+        }
+
+        startRun();
+    }
+
+    /**
+     * Starts a new run of the flow, discarding any incomplete submissions for it
+     */
+    private void startRun() {
+        try {
+            // use the session started while the user was looking at this flow if there is one
+            Pair<Session, Sprint> ss = PreparedSessions.getInstance().take(org, flow);
+            if (ss == null) {
+                ss = PreparedSessions.start(org, flow);
+            }
             session = ss.getLeft();
             submission = getSurveyor().getSubmissionService().newSubmission(org, flow);
 
@@ -114,6 +167,148 @@ public class RunActivity extends BaseActivity {
         }
     }
 
+    /**
+     * Asks the user whether to start again when a run couldn't be restored, leaving it alone if not
+     */
+    private void confirmRestartRun() {
+        AlertDialog dialog = showConfirmDialog(R.string.confirm_restart_run, new ConfirmationListener() {
+            @Override
+            public void onConfirm() {
+                unrestoredUUID = null;
+                startRun();
+            }
+        });
+        dialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                finish();
+            }
+        });
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return transcodeTask;
+    }
+
+    @Override
+    protected void onDestroy() {
+        // the task outlives us if we're being recreated so make sure it doesn't call back into this instance
+        if (transcodeTask != null) {
+            transcodeTask.setListener(null);
+        }
+        if (transcodeProgress != null) {
+            transcodeProgress.dismiss();
+        }
+
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        if (submission != null && submission.getDirectory() != null) {
+            outState.putString(STATE_SUBMISSION_UUID, submission.getUuid());
+        } else if (unrestoredUUID != null) {
+            outState.putString(STATE_SUBMISSION_UUID, unrestoredUUID);
+        }
+    }
+
+    /**
+     * Restores a run from its saved submission, replaying its most recent messages into the chat history
+     *
+     * @param previous the in-progress submission
+     * @return true if the run was restored
+     */
+    private boolean restoreRun(Submission previous) {
+        try {
+            String sessionJSON = previous.readSession();
+            if (sessionJSON == null) {
+                return false;
+            }
+
+            session = PreparedSessions.restore(org, flow, sessionJSON);
+            submission = previous;
+
+            // read one more than we show so we know whether there were any earlier ones
+            List<String> payloads = submission.readRecentEvents(MAX_REPLAYED_EVENTS + 1);
+            if (payloads.size() > MAX_REPLAYED_EVENTS) {
+                addLogMessage(R.string.log_earlier_messages);
+                payloads = payloads.subList(1, payloads.size());
+            }
+            WaitEvent wait = replayEvents(payloads);
+            showSessionState(wait);
+
+            Logger.d("Restored run from submission " + previous.getUuid());
+            return true;
+
+        } catch (EngineException | IOException e) {
+            Logger.e("Unable to restore submission " + previous.getUuid(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds the messages from previously saved events to the chat history
+     *
+     * @param payloads the event payloads
+     * @return the last wait event or null if there wasn't one
+     */
+    private WaitEvent replayEvents(List<String> payloads) {
+        WaitEvent wait = null;
+
+        for (String payload : payloads) {
+            EngineEvent event = EventDecoders.decode(payload);
+            if (event instanceof WaitEvent) {
+                wait = (WaitEvent) event;
+                continue;
+            }
+            if (!(event instanceof MsgEvent)) {
+                continue;
+            }
+
+            MsgEvent msg = (MsgEvent) event;
+            if (msg.isOutgoing()) {
+                addMessage(msg.getText(), false);
+                continue;
+            }
+
+            if (!msg.getText().isEmpty()) {
+                addMessage(msg.getText(), true);
+            }
+            for (String attachment : msg.getAttachments()) {
+                replayAttachment(attachment);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Adds a link to previously captured media to the chat history
+     *
+     * @param attachment the attachment in the form content-type:url
+     */
+    private void replayAttachment(String attachment) {
+        int colon = attachment.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+
+        String type = attachment.substring(0, colon);
+        String url = attachment.substring(colon + 1);
+
+        if (type.startsWith("image/")) {
+            addMediaLink(getString(R.string.took_photo), url, R.string.media_image);
+        } else if (type.startsWith("video/")) {
+            addMediaLink(getString(R.string.made_video), url, R.string.media_video);
+        } else if (type.startsWith("audio/")) {
+            addMediaLink(getString(R.string.made_recording), url, R.string.media_audio);
+        } else if (type.equals("geo")) {
+            addMediaLink(url, "geo:" + url + "?q=" + url + "(Location)", R.string.media_location);
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -255,8 +450,11 @@ public class RunActivity extends BaseActivity {
             @SuppressWarnings("ResourceType")
             public void onPermissionResult(Permiso.ResultSet resultSet) {
                 if (resultSet.areAllPermissionsGranted()) {
+                    AudioProfile profile = AudioProfile.forFlow(getPreferences(), org.getUuid(), flow.getUuid());
+
                     Intent intent = new Intent(RunActivity.this, CaptureAudioActivity.class);
                     intent.putExtra(SurveyorIntent.EXTRA_MEDIA_FILE, getAudioOutput().getAbsolutePath());
+                    intent.putExtra(SurveyorIntent.EXTRA_AUDIO_PROFILE, profile.getName());
                     intent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
                     startActivityForResult(intent, RESULT_AUDIO);
                 }
@@ -286,6 +484,10 @@ public class RunActivity extends BaseActivity {
         return new File(getSurveyor().getExternalCacheDir(), "video.mp4");
     }
 
+    private File getTranscodedVideoOutput() {
+        return new File(getSurveyor().getExternalCacheDir(), "video_transcoded.mp4");
+    }
+
     private File getAudioOutput() {
         return new File(getSurveyor().getExternalCacheDir(), "audio.m4a");
     }
@@ -333,17 +535,8 @@ public class RunActivity extends BaseActivity {
             } else if (requestCode == RESULT_VIDEO) {
                 File output = getVideoOutput();
                 if (output.exists()) {
-                    Bitmap thumb = ImageUtils.thumbnailFromVideo(output);
-
-                    Uri uri = submission.saveMedia(output);
-
-                    addMedia(thumb, uri.toString(), R.string.media_video);
-
-                    Logger.d("Saved video capture to " + uri);
-
-                    msg = Engine.createMsgIn("", "video/mp4:" + uri);
-
-                    output.delete();
+                    // video is saved and the session resumed once transcoding completes
+                    transcodeVideo(output);
                 }
 
             } else if (requestCode == RESULT_AUDIO) {
@@ -379,6 +572,72 @@ public class RunActivity extends BaseActivity {
         }
     }
 
+    /**
+     * Transcodes a captured video in the background and then saves it to the submission
+     *
+     * @param output the captured video
+     */
+    private void transcodeVideo(File output) {
+        String profileName = getPreferences().getString(SurveyorPreferences.VIDEO_PROFILE, VideoProfile.STANDARD.getName());
+        VideoProfile profile = VideoProfile.fromName(profileName);
+
+        transcodeTask = new TranscodeVideoTask(profile.createTranscoder(), null);
+        attachTranscode();
+        transcodeTask.execute(output, getTranscodedVideoOutput());
+    }
+
+    /**
+     * Picks up a transcode started by the instance of this activity we replaced, if there is one
+     */
+    private void resumeTranscode() {
+        Object retained = getLastCustomNonConfigurationInstance();
+        if (retained instanceof TranscodeVideoTask) {
+            transcodeTask = (TranscodeVideoTask) retained;
+            attachTranscode();
+        }
+    }
+
+    private void attachTranscode() {
+        transcodeProgress = new BlockingProgress(this, R.string.one_moment, R.string.processing_video);
+        transcodeProgress.setIndeterminate(true);
+        transcodeProgress.show();
+
+        transcodeTask.setListener(new TranscodeVideoTask.Listener() {
+            @Override
+            public void onComplete(File video) {
+                onVideoTranscoded(video);
+            }
+        });
+    }
+
+    /**
+     * Saves a transcoded video to the submission and resumes the session with it
+     *
+     * @param video the video to save, which may be the original capture
+     */
+    private void onVideoTranscoded(File video) {
+        transcodeProgress.dismiss();
+        transcodeProgress = null;
+        transcodeTask = null;
+
+        try {
+            Bitmap thumb = ImageUtils.thumbnailFromVideo(video);
+
+            Uri uri = submission.saveMedia(video);
+
+            addMedia(thumb, uri.toString(), R.string.media_video);
+
+            Logger.d("Saved video capture to " + uri);
+
+            getVideoOutput().delete();
+            video.delete();
+
+            resumeSession(Engine.createMsgIn("", "video/mp4:" + uri));
+        } catch (IOException e) {
+            handleProblem("Unable capture media", e);
+        }
+    }
+
     /**
      * Something has gone wrong... show the user the big report dialog
      */
@@ -448,17 +707,34 @@ public class RunActivity extends BaseActivity {
      * @param sprint the sprint from the engine
      */
     private void handleEngineSprint(Sprint sprint) throws IOException, EngineException {
-        for (Event event : sprint.getEvents()) {
-            Logger.d("Event: " + event.payload());
+        WaitEvent wait = null;
 
-            JsonObject asObj = new JsonParser().parse(event.payload()).getAsJsonObject();
+        for (int e = 0; e < sprint.getEventCount(); e++) {
+            Logger.d("Event: " + sprint.getEventPayload(e));
 
-            if (event.type().equals("msg_created")) {
-                JsonObject msg = asObj.get("msg").getAsJsonObject();
-                addMessage(msg.get("text").getAsString(), false);
+            EngineEvent event = sprint.getEvent(e);
+            if (event instanceof MsgEvent && ((MsgEvent) event).isOutgoing()) {
+                addMessage(((MsgEvent) event).getText(), false);
+            } else if (event instanceof WaitEvent) {
+                wait = (WaitEvent) event;
             }
         }
 
+        showSessionState(wait);
+
+        submission.saveSession(session);
+        submission.saveNewModifiers(sprint);
+        submission.saveNewEvents(sprint);
+
+        Logger.d("Persisted new events and modifiers after engine sprint");
+    }
+
+    /**
+     * Shows either the input for what the session is waiting for, or the actions for a completed session
+     *
+     * @param wait the event of the wait the session is in, if it's waiting
+     */
+    private void showSessionState(WaitEvent wait) throws IOException, EngineException {
         if (!session.isWaiting()) {
             addLogMessage(R.string.log_flow_complete);
 
@@ -467,22 +743,27 @@ public class RunActivity extends BaseActivity {
             cache.hide(R.id.container_request_media);
             cache.show(R.id.completed_session_actions);
         } else {
-            waitForInput(session.getWait().hint());
+            waitForInput(wait);
+            suggestLocations();
         }
-
-        submission.saveSession(session);
-        submission.saveNewModifiers(sprint.getModifiers());
-        submission.saveNewEvents(sprint.getEvents());
-
-        Logger.d("Persisted new events and modifiers after engine sprint");
     }
 
-    private void waitForInput(Hint hint) {
+    /**
+     * Shows the input for the given wait, i.e. the media request for its hint or the chat box
+     *
+     * @param wait the wait event
+     */
+    private void waitForInput(WaitEvent wait) {
         ViewCache vc = getViewCache();
         TextView mediaButton = vc.getTextView(R.id.media_icon);
         TextView mediaText = vc.getTextView(R.id.media_text);
 
-        String mediaType = hint != null ? hint.type() : "";
+        // surveys are filled in by hand so a timeout never fires, but note when a flow expects one
+        if (wait != null && wait.getTimeoutSeconds() > 0) {
+            Logger.d("Waiting for input with timeout of " + wait.getTimeoutSeconds() + " seconds");
+        }
+
+        String mediaType = wait != null && wait.getHintType() != null ? wait.getHintType() : "";
         switch (mediaType) {
             case "image":
                 mediaButton.setText(getString(R.string.icon_photo_camera));
@@ -519,6 +800,23 @@ public class RunActivity extends BaseActivity {
         }
     }
 
+    /**
+     * If the session is waiting at a location question, suggests location names as the user types
+     */
+    private void suggestLocations() throws IOException, EngineException {
+        Integer level = null;
+        if (!locationNodes.isEmpty()) {
+            level = locationNodes.get(session.getWaitingNodeUUID());
+        }
+
+        LocationIndex index = level != null ? org.getLocationIndex() : null;
+        if (index != null) {
+            chatCompose.setAdapter(new LocationCompletionAdapter(this, index, level));
+        } else {
+            chatCompose.setAdapter(null);
+        }
+    }
+
     private void addLogMessage(int message) {
         getLayoutInflater().inflate(R.layout.item_log_message, chatHistory);
         TextView view = (TextView) chatHistory.getChildAt(chatHistory.getChildCount() - 1);
@@ -5,25 +5,120 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.TextView;
 
 import java.text.NumberFormat;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import io.rapidpro.surveyor.R;
-import io.rapidpro.surveyor.SurveyorApplication;
 import io.rapidpro.surveyor.data.Flow;
 import io.rapidpro.surveyor.data.Org;
 
-public class FlowListAdapter extends ArrayAdapter<Flow> {
+/**
+ * Adapter for an org's flows which shows them a page at a time, optionally filtered by a name prefix.
+ * Flows come from the org's flow index and pending counts are provided up front rather than counted
+ * for each row.
+ */
+public class FlowListAdapter extends BaseAdapter {
+
+    /**
+     * Number of flows shown initially and added by each call to {@link #showMore()}
+     */
+    public static final int PAGE_SIZE = 50;
+
+    private Context context;
+
+    private int resourceId;
 
     private Org org;
 
-    public FlowListAdapter(Context context, int resourceId, Org org, List<Flow> flows) {
-        super(context, resourceId, flows);
+    private String filter = "";
+
+    private List<Flow> matches;
 
+    private int shown = PAGE_SIZE;
+
+    private Map<String, Integer> pendingCounts = Collections.emptyMap();
+
+    private NumberFormat nf = NumberFormat.getInstance();
+
+    public FlowListAdapter(Context context, int resourceId, Org org) {
+        this.context = context;
+        this.resourceId = resourceId;
         this.org = org;
+        this.matches = org.getFlows();
+    }
+
+    /**
+     * Filters the flows to those whose names start with the given prefix, going back to the first page
+     *
+     * @param prefix the name prefix or empty for all flows
+     */
+    public void setFilter(String prefix) {
+        this.filter = prefix != null ? prefix.trim() : "";
+        this.shown = PAGE_SIZE;
+
+        refresh();
+    }
+
+    /**
+     * Sets the pending submission counts to display, keyed by flow UUID
+     *
+     * @param pendingCounts the pending counts
+     */
+    public void setPendingCounts(Map<String, Integer> pendingCounts) {
+        this.pendingCounts = pendingCounts;
+
+        refresh();
+    }
+
+    /**
+     * Re-reads the flows from the org, e.g. after it has been refreshed
+     */
+    public void refresh() {
+        this.matches = filter.isEmpty() ? org.getFlows() : org.findFlows(filter);
+
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Shows another page of flows if there are any
+     *
+     * @return true if more flows were shown
+     */
+    public boolean showMore() {
+        if (shown >= matches.size()) {
+            return false;
+        }
+
+        shown += PAGE_SIZE;
+        notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * Gets the number of flows matching the current filter, including those not yet shown
+     */
+    public int getMatchCount() {
+        return matches.size();
+    }
+
+    @Override
+    public int getCount() {
+        return Math.min(shown, matches.size());
+    }
+
+    @Override
+    public Flow getItem(int position) {
+        return matches.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
     }
 
     @Override
@@ -31,10 +126,9 @@ public class FlowListAdapter extends ArrayAdapter<Flow> {
         View row = convertView;
         ViewCache cache;
 
-        LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
-
         if (row == null) {
-            row = inflater.inflate(R.layout.item_flow, parent, false);
+            LayoutInflater inflater = (LayoutInflater) context.getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
+            row = inflater.inflate(resourceId, parent, false);
 
             cache = new ViewCache();
             cache.titleView = row.findViewById(R.id.text_flow_name);
@@ -49,15 +143,15 @@ public class FlowListAdapter extends ArrayAdapter<Flow> {
         Flow flow = getItem(position);
         cache.titleView.setText(flow.getName());
 
-        int pending = SurveyorApplication.get().getSubmissionService().getCompletedCount(org, flow);
+        Integer pending = pendingCounts.get(flow.getUuid());
+        pending = pending != null ? pending : 0;
 
-        NumberFormat nf = NumberFormat.getInstance();
         cache.pendingSubmissions.setText(nf.format(pending));
         cache.pendingSubmissions.setTag(flow);
         cache.pendingSubmissions.setVisibility(pending > 0 ? View.VISIBLE : View.GONE);
 
         int numQuestions = flow.getQuestionCount();
-        String questionsString = getContext().getResources().getQuantityString(R.plurals.questions, numQuestions, numQuestions);
+        String questionsString = context.getResources().getQuantityString(R.plurals.questions, numQuestions, numQuestions);
 
         cache.questionView.setText(questionsString + " (v" + nf.format(flow.getRevision()) + ")");
         return row;
@@ -68,4 +162,4 @@ public class FlowListAdapter extends ArrayAdapter<Flow> {
         TextView questionView;
         TextView pendingSubmissions;
     }
-}
\ No newline at end of file
+}
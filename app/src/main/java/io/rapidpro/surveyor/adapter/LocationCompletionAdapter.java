@@ -0,0 +1,91 @@
+package io.rapidpro.surveyor.adapter;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import io.rapidpro.surveyor.engine.LocationIndex;
+
+/**
+ * Suggests location names at a given level as the user types the answer to a location question
+ */
+public class LocationCompletionAdapter extends BaseAdapter implements Filterable {
+
+    private static final int MAX_SUGGESTIONS = 20;
+
+    private Context context;
+    private LocationIndex index;
+    private int level;
+    private int[] suggestions = new int[0];
+
+    public LocationCompletionAdapter(Context context, LocationIndex index, int level) {
+        this.context = context;
+        this.index = index;
+        this.level = level;
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.length;
+    }
+
+    @Override
+    public String getItem(int position) {
+        return index.getName(suggestions[position]);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return suggestions[position];
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View row = convertView;
+        if (row == null) {
+            LayoutInflater inflater = (LayoutInflater) context.getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
+            row = inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false);
+        }
+
+        // show the full path to help pick between locations with the same name
+        ((TextView) row).setText(index.getPath(suggestions[position]));
+        return row;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                int[] matches = constraint != null ? index.complete(constraint.toString(), level, MAX_SUGGESTIONS) : new int[0];
+
+                FilterResults results = new FilterResults();
+                results.values = matches;
+                results.count = matches.length;
+                return results;
+            }
+
+            @Override
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                suggestions = results.values != null ? (int[]) results.values : new int[0];
+
+                if (suggestions.length > 0) {
+                    notifyDataSetChanged();
+                } else {
+                    notifyDataSetInvalidated();
+                }
+            }
+
+            @Override
+            public CharSequence convertResultToString(Object resultValue) {
+                return (String) resultValue;
+            }
+        };
+    }
+}
@@ -11,18 +11,18 @@ import android.widget.TextView;
 import java.util.List;
 
 import io.rapidpro.surveyor.R;
-import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.OrgSummary;
 
-public class OrgListAdapter extends ArrayAdapter<Org> {
+public class OrgListAdapter extends ArrayAdapter<OrgSummary> {
 
-    public OrgListAdapter(Context context, int resourceId, List<Org> orgs) {
+    public OrgListAdapter(Context context, int resourceId, List<OrgSummary> orgs) {
         super(context, resourceId, orgs);
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         ViewCache cache;
-        Org org = getItem(position);
+        OrgSummary org = getItem(position);
 
         LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
 
@@ -0,0 +1,780 @@
+package io.rapidpro.surveyor.data;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.engine.LocationAsset;
+import io.rapidpro.surveyor.engine.LocationIndex;
+import io.rapidpro.surveyor.engine.LocationTreeWriter;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.utils.CompressedFile;
+import io.rapidpro.surveyor.utils.DurableFile;
+import io.rapidpro.surveyor.utils.JsonUtils;
+import io.rapidpro.surveyor.utils.RawJson;
+
+/**
+ * Stores an org's assets split into a file per asset type and a file per flow, with a manifest
+ * describing what each flow depends on, so that running a flow only has to load that flow, the flows
+ * it can start and the shared assets it uses. Files may optionally be stored compressed. Stores are
+ * safe to use from multiple threads, and writes are never seen part way through by loads. The manifest
+ * records a checksum of every other file, which is verified the first time that file is loaded.
+ */
+public class AssetStore {
+
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String FIELDS_FILE = "fields.json";
+    private static final String GROUPS_FILE = "groups.json";
+    private static final String LOCATIONS_FILE = "locations.json";
+    private static final String LOCATIONS_INDEX_FILE = "locations.idx";
+    private static final String FLOWS_DIR = "flows";
+
+    /**
+     * Field types whose values are locations, and so need the location hierarchy
+     */
+    private static final Set<String> LOCATION_FIELD_TYPES = new HashSet<>(Arrays.asList("state", "district", "ward"));
+
+    /**
+     * Router case types (13+) and rule test types (11.x) which need the location hierarchy, and the
+     * level of location they test for
+     */
+    private static final Map<String, Integer> LOCATION_TEST_LEVELS = new HashMap<>();
+
+    static {
+        LOCATION_TEST_LEVELS.put("has_state", LocationIndex.LEVEL_STATE);
+        LOCATION_TEST_LEVELS.put("has_district", LocationIndex.LEVEL_DISTRICT);
+        LOCATION_TEST_LEVELS.put("has_ward", LocationIndex.LEVEL_WARD);
+        LOCATION_TEST_LEVELS.put("state", LocationIndex.LEVEL_STATE);
+        LOCATION_TEST_LEVELS.put("district", LocationIndex.LEVEL_DISTRICT);
+        LOCATION_TEST_LEVELS.put("ward", LocationIndex.LEVEL_WARD);
+    }
+
+    /**
+     * Bumped when what we store changes so that existing stores are rewritten
+     */
+    private static final int MANIFEST_VERSION = 3;
+
+    /**
+     * Directories which have already been checked for interrupted writes by this process
+     */
+    private static final Set<String> recoveredDirectories = new HashSet<>();
+
+    /**
+     * Locks for each directory, shared by all stores for that directory. Writes are serialized on the lock
+     * itself and only hold its write lock while swapping directories.
+     */
+    private static final Map<String, ReadWriteLock> locks = new HashMap<>();
+
+    private File directory;
+
+    private boolean compressed;
+
+    private final ReadWriteLock lock;
+
+    private volatile Manifest manifest;
+
+    /**
+     * Creates a new asset store in the given directory which writes plain JSON files
+     *
+     * @param directory the directory
+     */
+    public AssetStore(File directory) {
+        this(directory, false);
+    }
+
+    /**
+     * Creates a new asset store in the given directory
+     *
+     * @param directory  the directory
+     * @param compressed whether files should be written compressed
+     */
+    public AssetStore(File directory, boolean compressed) {
+        this.directory = directory;
+        this.compressed = compressed;
+
+        synchronized (locks) {
+            ReadWriteLock existing = locks.get(directory.getAbsolutePath());
+            if (existing == null) {
+                existing = new ReentrantReadWriteLock();
+                locks.put(directory.getAbsolutePath(), existing);
+            }
+            this.lock = existing;
+        }
+    }
+
+    /**
+     * Gets whether this store has been written
+     *
+     * @return true if it exists
+     */
+    public boolean exists() {
+        recover();
+
+        lock.readLock().lock();
+        try {
+            return new File(directory, MANIFEST_FILE).exists();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets whether the existing files in this store are compressed
+     *
+     * @return true if compressed
+     */
+    public boolean isCompressed() throws IOException {
+        lock.readLock().lock();
+        try {
+            return CompressedFile.isCompressed(new File(directory, MANIFEST_FILE));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites existing files if they're not already in the format (compressed or plain) that this
+     * store writes, or were written by an older version
+     */
+    public void upgrade() throws IOException {
+        recover();
+
+        synchronized (lock) {
+            if (!new File(directory, MANIFEST_FILE).exists() || (isCompressed() == compressed && getManifest().version >= MANIFEST_VERSION)) {
+                return;
+            }
+
+            List<String> flows = new ArrayList<>();
+            for (String uuid : getManifest().flows.keySet()) {
+                flows.add(CompressedFile.read(new File(directory, flowPath(uuid))));
+            }
+
+            write(CompressedFile.read(new File(directory, FIELDS_FILE)), CompressedFile.read(new File(directory, GROUPS_FILE)),
+                    jsonLocations(CompressedFile.read(new File(directory, LOCATIONS_FILE))), flows);
+        }
+
+        Logger.d("Upgraded assets in " + directory.getPath() + " to " + (compressed ? "compressed" : "plain") + " files");
+    }
+
+    /**
+     * Writes the given assets, replacing anything previously stored
+     *
+     * @param assets the org assets
+     */
+    public void write(OrgAssets assets) throws IOException {
+        List<String> flows = new ArrayList<>(assets.getFlowDefinitions().size());
+        for (RawJson definition : assets.getFlowDefinitions()) {
+            flows.add(definition.toString());
+        }
+
+        write(JsonUtils.marshal(assets.getFields()), JsonUtils.marshal(assets.getGroups()), jsonLocations(JsonUtils.marshal(assets.getLocations())), flows);
+    }
+
+    /**
+     * Writes the given assets, replacing anything previously stored, but with the location hierarchy
+     * coming from boundaries that were streamed into a tree writer rather than from the assets
+     *
+     * @param assets    the org assets
+     * @param locations the tree writer with all boundaries added
+     */
+    public void write(OrgAssets assets, final LocationTreeWriter locations) throws IOException {
+        List<String> flows = new ArrayList<>(assets.getFlowDefinitions().size());
+        for (RawJson definition : assets.getFlowDefinitions()) {
+            flows.add(definition.toString());
+        }
+
+        write(JsonUtils.marshal(assets.getFields()), JsonUtils.marshal(assets.getGroups()), new LocationsWriter() {
+            @Override
+            public void write(File locationsFile, File indexFile) throws IOException {
+                int count = locations.finish(CompressedFile.openWriter(locationsFile, compressed), CompressedFile.openOutputStream(indexFile, compressed));
+                if (count == 0) {
+                    FileUtils.deleteQuietly(indexFile);
+                }
+            }
+        }, flows);
+    }
+
+    /**
+     * Splits an existing single file of assets, e.g. a legacy assets.json, into this store. The file
+     * is streamed so that flow definitions and locations are never parsed into memory.
+     *
+     * @param file the assets file
+     */
+    public void migrate(File file) throws IOException {
+        String fields = "[]", groups = "[]", locations = "[]";
+        List<String> flows = new ArrayList<>();
+
+        Reader reader = CompressedFile.openReader(file);
+        try {
+            JsonReader in = new JsonReader(reader);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "fields":
+                        fields = copyValue(in);
+                        break;
+                    case "groups":
+                        groups = copyValue(in);
+                        break;
+                    case "locations":
+                        locations = copyValue(in);
+                        break;
+                    case "flows":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            flows.add(copyValue(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+        } finally {
+            reader.close();
+        }
+
+        write(fields, groups, jsonLocations(locations), flows);
+
+        Logger.d("Migrated " + file.getPath() + " to split assets (flows=" + flows.size() + ")");
+    }
+
+    private void write(String fields, String groups, LocationsWriter locations, List<String> flows) throws IOException {
+        recover();
+
+        // only one write at a time, but loads can continue until the directory is swapped
+        synchronized (lock) {
+            writeAndSwap(fields, groups, locations, flows);
+        }
+    }
+
+    private void writeAndSwap(String fields, String groups, LocationsWriter locations, List<String> flows) throws IOException {
+        // write everything to a new directory and only replace the existing one once complete
+        File temp = getTempDirectory();
+        FileUtils.deleteQuietly(temp);
+        new File(temp, FLOWS_DIR).mkdirs();
+
+        Manifest newManifest = new Manifest();
+        newManifest.version = MANIFEST_VERSION;
+
+        CompressedFile.write(new File(temp, FIELDS_FILE), fields, compressed);
+        CompressedFile.write(new File(temp, GROUPS_FILE), groups, compressed);
+        locations.write(new File(temp, LOCATIONS_FILE), new File(temp, LOCATIONS_INDEX_FILE));
+        seal(temp, FIELDS_FILE, newManifest);
+        seal(temp, GROUPS_FILE, newManifest);
+        seal(temp, LOCATIONS_FILE, newManifest);
+        seal(temp, LOCATIONS_INDEX_FILE, newManifest);
+
+        Set<String> locationFields = getLocationFields(fields);
+
+        for (String definition : flows) {
+            FlowEntry entry = scanFlow(definition, locationFields);
+            if (entry.uuid == null) {
+                continue;
+            }
+
+            CompressedFile.write(new File(temp, flowPath(entry.uuid)), definition, compressed);
+            seal(temp, flowPath(entry.uuid), newManifest);
+            newManifest.flows.put(entry.uuid, entry);
+        }
+
+        CompressedFile.write(new File(temp, MANIFEST_FILE), JsonUtils.marshal(newManifest), compressed);
+
+        // everything must be on disk before the new directory can replace the old one
+        DurableFile.sync(new File(temp, MANIFEST_FILE));
+        DurableFile.syncDirectory(new File(temp, FLOWS_DIR));
+        DurableFile.syncDirectory(temp);
+
+        // move the existing directory aside rather than deleting it so there's always a complete one to recover
+        File old = getOldDirectory();
+        FileUtils.deleteQuietly(old);
+
+        lock.writeLock().lock();
+        try {
+            if (directory.exists() && !directory.renameTo(old)) {
+                throw new IOException("Unable to move aside assets in " + directory.getPath());
+            }
+            if (!temp.renameTo(directory)) {
+                old.renameTo(directory);
+                throw new IOException("Unable to move assets to " + directory.getPath());
+            }
+            manifest = newManifest;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        DurableFile.syncDirectory(directory.getParentFile());
+        FileUtils.deleteQuietly(old);
+    }
+
+    /**
+     * Syncs a file written to the given directory and records its checksum in the manifest
+     */
+    private static void seal(File dir, String path, Manifest manifest) throws IOException {
+        File file = new File(dir, path);
+        if (file.exists()) {
+            DurableFile.sync(file);
+            manifest.checksums.put(path, FileUtils.checksumCRC32(file));
+        }
+    }
+
+    /**
+     * Writes locations which are already in memory as JSON
+     */
+    private LocationsWriter jsonLocations(final String locations) {
+        return new LocationsWriter() {
+            @Override
+            public void write(File locationsFile, File indexFile) throws IOException {
+                CompressedFile.write(locationsFile, locations, compressed);
+
+                LocationAsset[] roots = JsonUtils.unmarshal(locations, LocationAsset[].class);
+                if (roots.length > 0) {
+                    LocationIndex.fromAsset(roots[0]).write(CompressedFile.openOutputStream(indexFile, compressed));
+                }
+            }
+        };
+    }
+
+    /**
+     * Loads assets JSON for all flows
+     *
+     * @return the assets JSON
+     */
+    public String load() throws IOException {
+        recover();
+
+        lock.readLock().lock();
+        try {
+            return load(getManifest().flows.keySet(), true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads assets JSON containing only what's needed to run the given flow, i.e. the flow itself,
+     * any flows it can start, and the shared assets they use
+     *
+     * @param flowUUID the UUID of the flow to be run
+     * @return the assets JSON
+     */
+    public String load(String flowUUID) throws IOException {
+        recover();
+
+        lock.readLock().lock();
+        try {
+            return loadForFlow(flowUUID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String loadForFlow(String flowUUID) throws IOException {
+        Manifest manifest = getManifest();
+        if (!manifest.flows.containsKey(flowUUID)) {
+            return load(manifest.flows.keySet(), true);
+        }
+
+        // collect the flow and its dependencies, and their dependencies...
+        Set<String> flowUUIDs = new LinkedHashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(flowUUID);
+        boolean needsLocations = false;
+
+        while (!pending.isEmpty()) {
+            String uuid = pending.remove(pending.size() - 1);
+            FlowEntry entry = manifest.flows.get(uuid);
+            if (entry == null || !flowUUIDs.add(uuid)) {
+                continue;
+            }
+
+            needsLocations |= entry.usesLocations;
+            pending.addAll(entry.dependencies);
+        }
+
+        return load(flowUUIDs, needsLocations);
+    }
+
+    private String load(Set<String> flowUUIDs, boolean includeLocations) throws IOException {
+        Manifest manifest = getManifest();
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"fields\":");
+        readFileTo(manifest, FIELDS_FILE, json);
+        json.append(",\"groups\":");
+        readFileTo(manifest, GROUPS_FILE, json);
+        json.append(",\"locations\":");
+        if (includeLocations) {
+            readFileTo(manifest, LOCATIONS_FILE, json);
+        } else {
+            json.append("[]");
+        }
+        json.append(",\"flows\":[");
+
+        boolean first = true;
+        for (String uuid : flowUUIDs) {
+            if (!first) {
+                json.append(",");
+            }
+            readFileTo(manifest, flowPath(uuid), json);
+            first = false;
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Gets the nodes in the given flow which are waiting for a location name
+     *
+     * @param flowUUID the flow UUID
+     * @return map of node UUIDs to location levels
+     */
+    public Map<String, Integer> getLocationNodes(String flowUUID) throws IOException {
+        recover();
+
+        lock.readLock().lock();
+        try {
+            FlowEntry entry = getManifest().flows.get(flowUUID);
+            return entry != null ? entry.locationNodes : Collections.<String, Integer>emptyMap();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the index of the location hierarchy
+     *
+     * @return the index or null if this org doesn't have locations
+     */
+    public LocationIndex loadLocationIndex() throws IOException {
+        recover();
+
+        lock.readLock().lock();
+        try {
+            if (!new File(directory, LOCATIONS_INDEX_FILE).exists()) {
+                return null;
+            }
+            return LocationIndex.read(CompressedFile.openInputStream(verifiedFile(getManifest(), LOCATIONS_INDEX_FILE)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void readFileTo(Manifest manifest, String path, StringBuilder sb) throws IOException {
+        CompressedFile.readTo(verifiedFile(manifest, path), sb);
+    }
+
+    /**
+     * Gets a stored file, checking it against its checksum in the manifest the first time it's read
+     */
+    private File verifiedFile(Manifest manifest, String path) throws IOException {
+        File file = new File(directory, path);
+        Long expected = manifest.checksums.get(path);
+
+        if (expected != null && !manifest.verified.contains(path)) {
+            if (FileUtils.checksumCRC32(file) != expected) {
+                throw new IOException("Checksum mismatch in " + file.getPath());
+            }
+            manifest.verified.add(path);
+        }
+        return file;
+    }
+
+    /**
+     * Cleans up after a write that was interrupted, e.g. by the app being killed or losing power. The first
+     * of the current, new and old directories whose files all match the checksums in its manifest is kept.
+     * Must not be called while holding the lock.
+     */
+    private void recover() {
+        synchronized (recoveredDirectories) {
+            if (!recoveredDirectories.add(directory.getAbsolutePath())) {
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                File temp = getTempDirectory();
+                File old = getOldDirectory();
+
+                // without either of these, the last write finished and the current directory is complete
+                if ((temp.exists() || old.exists()) && !isComplete(directory)) {
+                    File complete = isComplete(temp) ? temp : (isComplete(old) ? old : null);
+                    if (complete != null) {
+                        FileUtils.deleteQuietly(directory);
+                        if (complete.renameTo(directory)) {
+                            Logger.d("Recovered assets from " + complete.getPath());
+                        }
+                    }
+                }
+
+                FileUtils.deleteQuietly(temp);
+                FileUtils.deleteQuietly(old);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given directory has a manifest and files which match its checksums
+     */
+    private static boolean isComplete(File dir) {
+        File manifestFile = new File(dir, MANIFEST_FILE);
+        if (!manifestFile.exists()) {
+            return false;
+        }
+
+        try {
+            Manifest manifest = JsonUtils.unmarshal(CompressedFile.read(manifestFile), Manifest.class);
+            for (Map.Entry<String, Long> checksum : manifest.checksums.entrySet()) {
+                File file = new File(dir, checksum.getKey());
+                if (!file.exists() || FileUtils.checksumCRC32(file) != checksum.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | JsonParseException e) {
+            return false;
+        }
+    }
+
+    private File getTempDirectory() {
+        return new File(directory.getParentFile(), directory.getName() + ".tmp");
+    }
+
+    private File getOldDirectory() {
+        return new File(directory.getParentFile(), directory.getName() + ".old");
+    }
+
+    /**
+     * Gets the manifest, reading it if necessary. Must be called while holding the lock.
+     */
+    private Manifest getManifest() throws IOException {
+        Manifest current = manifest;
+        if (current == null) {
+            current = JsonUtils.unmarshal(CompressedFile.read(new File(directory, MANIFEST_FILE)), Manifest.class);
+            manifest = current;
+        }
+        return current;
+    }
+
+    private static String flowPath(String uuid) {
+        return FLOWS_DIR + File.separator + uuid + ".json";
+    }
+
+    private static String copyValue(JsonReader in) throws IOException {
+        StringWriter buffer = new StringWriter();
+        RawJson.copy(in, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Gets the keys of the fields whose values are locations
+     */
+    private static Set<String> getLocationFields(String fieldsJson) {
+        TypeToken type = new TypeToken<List<FieldInfo>>() {
+        };
+        List<FieldInfo> fields = JsonUtils.unmarshal(fieldsJson, type);
+
+        Set<String> keys = new HashSet<>();
+        for (FieldInfo field : fields) {
+            if (LOCATION_FIELD_TYPES.contains(field.type)) {
+                keys.add(field.key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Scans a flow definition (13+ or 11.x) for its UUID, the flows it references and whether it uses
+     * locations, either by testing for them or by saving to a location field
+     */
+    static FlowEntry scanFlow(String definition, Set<String> locationFields) throws IOException {
+        FlowEntry entry = new FlowEntry();
+
+        JsonReader in = new JsonReader(new StringReader(definition));
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("uuid") && in.peek() == JsonToken.STRING) {
+                entry.uuid = in.nextString();
+            } else if (name.equals("metadata") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (in.nextName().equals("uuid") && in.peek() == JsonToken.STRING) {
+                        entry.uuid = in.nextString();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } else if ((name.equals("nodes") || name.equals("rule_sets")) && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    scanNode(in, entry, locationFields);
+                }
+                in.endArray();
+            } else {
+                scanValue(in, name, entry, locationFields, null);
+            }
+        }
+        in.endObject();
+
+        entry.dependencies.remove(entry.uuid);
+        return entry;
+    }
+
+    /**
+     * Scans a node (13+) or rule set (11.x), recording it if it tests for a location
+     */
+    private static void scanNode(JsonReader in, FlowEntry entry, Set<String> locationFields) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return;
+        }
+
+        String uuid = null;
+        int[] level = {0};
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (key.equals("uuid") && in.peek() == JsonToken.STRING) {
+                uuid = in.nextString();
+            } else {
+                scanValue(in, key, entry, locationFields, level);
+            }
+        }
+        in.endObject();
+
+        if (uuid != null && level[0] > 0) {
+            entry.locationNodes.put(uuid, level[0]);
+        }
+    }
+
+    private static void scanValue(JsonReader in, String name, FlowEntry entry, Set<String> locationFields, int[] nodeLevel) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                boolean isFlowRef = name.equals("flow");
+                boolean isFieldRef = name.equals("field");
+
+                in.beginObject();
+                while (in.hasNext()) {
+                    String key = in.nextName();
+                    if (isFlowRef && key.equals("uuid") && in.peek() == JsonToken.STRING) {
+                        entry.dependencies.add(in.nextString());
+                    } else if (isFieldRef && key.equals("key") && in.peek() == JsonToken.STRING) {
+                        entry.usesLocations |= locationFields.contains(in.nextString());
+                    } else {
+                        scanValue(in, key, entry, locationFields, nodeLevel);
+                    }
+                }
+                in.endObject();
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                while (in.hasNext()) {
+                    scanValue(in, name, entry, locationFields, nodeLevel);
+                }
+                in.endArray();
+                break;
+            case STRING:
+                String value = in.nextString();
+                Integer testLevel = LOCATION_TEST_LEVELS.get(value);
+                if (name.equals("type") && testLevel != null) {
+                    entry.usesLocations = true;
+                    if (nodeLevel != null) {
+                        nodeLevel[0] = Math.max(nodeLevel[0], testLevel);
+                    }
+                } else if (name.equals("field") && locationFields.contains(value)) {
+                    // 11.x save_to_contact actions reference fields by key
+                    entry.usesLocations = true;
+                }
+                break;
+            default:
+                in.skipValue();
+        }
+    }
+
+    /**
+     * Writes the location hierarchy and its index
+     */
+    private interface LocationsWriter {
+        void write(File locationsFile, File indexFile) throws IOException;
+    }
+
+    /**
+     * The manifest of stored flows
+     */
+    private static class Manifest {
+        private int version;
+
+        private Map<String, FlowEntry> flows = new LinkedHashMap<>();
+
+        /**
+         * CRC32 checksums of the other files, by path
+         */
+        private Map<String, Long> checksums = new LinkedHashMap<>();
+
+        /**
+         * The files which have been checked against their checksums since this was read
+         */
+        private transient Set<String> verified = Collections.synchronizedSet(new HashSet<String>());
+    }
+
+    /**
+     * Manifest entry for a single flow
+     */
+    static class FlowEntry {
+        private String uuid;
+
+        private Set<String> dependencies = new LinkedHashSet<>();
+
+        @SerializedName("uses_locations")
+        private boolean usesLocations;
+
+        @SerializedName("location_nodes")
+        private Map<String, Integer> locationNodes = new LinkedHashMap<>();
+
+        String getUuid() {
+            return uuid;
+        }
+
+        Set<String> getDependencies() {
+            return dependencies;
+        }
+
+        boolean usesLocations() {
+            return usesLocations;
+        }
+    }
+
+    private static class FieldInfo {
+        private String key;
+        private String type;
+    }
+}
@@ -1,11 +1,16 @@
 package io.rapidpro.surveyor.data;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.nyaruka.goflow.mobile.FlowReference;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 import io.rapidpro.surveyor.utils.JsonUtils;
 import io.rapidpro.surveyor.utils.RawJson;
 
@@ -46,49 +51,140 @@ public class Flow {
      * @return the flow summary
      */
     public static Flow extract(RawJson flow) {
-        JsonObject definition = JsonUtils.unmarshal(flow.toString(), JsonObject.class);
+        try {
+            return extract(new JsonReader(new StringReader(flow.toString())));
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
 
-        // flow is in 13+ format
-        if (definition.get("uuid") != null) {
-            String uuid = definition.get("uuid").getAsString();
-            String name = definition.get("name").getAsString();
-            String specVersion = definition.get("spec_version").getAsString();
-            int revision = definition.get("revision").getAsInt();
-            int questionCount = 0;
-
-            JsonArray nodes = definition.get("nodes").getAsJsonArray();
-            for (JsonElement elem : nodes) {
-                JsonObject node = elem.getAsJsonObject();
-                JsonElement routerElem = node.get("router");
-                if (routerElem != null) {
-                    JsonObject router = routerElem.getAsJsonObject();
-                    if (router.get("wait") != null) {
-                        questionCount++;
+    /**
+     * Extracts a flow summary from the given flow definition in a single streaming pass, without
+     * reading the definition into memory. Supports both 13+ and 11.x formats.
+     *
+     * @param in the JSON reader positioned at the flow definition
+     * @return the flow summary
+     */
+    public static Flow extract(JsonReader in) throws IOException {
+        // 13+ format fields
+        String uuid = null, name = null, specVersion = null;
+        int revision = 0, waitCount = 0;
+
+        // 11.x format fields
+        String legacyUUID = null, legacyName = null, legacyVersion = null;
+        int legacyRevision = 0, waitRuleSetCount = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "uuid":
+                    uuid = JsonUtils.nextStringOrNull(in);
+                    break;
+                case "name":
+                    name = JsonUtils.nextStringOrNull(in);
+                    break;
+                case "spec_version":
+                    specVersion = JsonUtils.nextStringOrNull(in);
+                    break;
+                case "revision":
+                    revision = JsonUtils.nextIntOrDefault(in, revision);
+                    break;
+                case "nodes":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (nodeHasWait(in)) {
+                            waitCount++;
+                        }
                     }
-                }
+                    in.endArray();
+                    break;
+                case "version":
+                    legacyVersion = JsonUtils.nextStringOrNull(in);
+                    break;
+                case "metadata":
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "uuid":
+                                legacyUUID = JsonUtils.nextStringOrNull(in);
+                                break;
+                            case "name":
+                                legacyName = JsonUtils.nextStringOrNull(in);
+                                break;
+                            case "revision":
+                                legacyRevision = JsonUtils.nextIntOrDefault(in, legacyRevision);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    break;
+                case "rule_sets":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (ruleSetIsWait(in)) {
+                            waitRuleSetCount++;
+                        }
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
             }
+        }
+        in.endObject();
 
-            return new Flow(uuid, name, specVersion, revision, questionCount);
+        // flow is in 13+ format
+        if (uuid != null) {
+            return new Flow(uuid, name, specVersion, revision, waitCount);
         }
 
         // flow is in 11.x format
-        JsonObject metadata = definition.get("metadata").getAsJsonObject();
-        String uuid = metadata.get("uuid").getAsString();
-        String name = metadata.get("name").getAsString();
-        String specVersion = definition.get("version").getAsString();
-        int revision = metadata.get("revision").getAsInt();
-        int questionCount = 0;
-
-        JsonArray ruleSets = definition.get("rule_sets").getAsJsonArray();
-        for (JsonElement elem : ruleSets) {
-            JsonObject ruleSet = elem.getAsJsonObject();
-            String rulesetType = ruleSet.get("ruleset_type").getAsString();
-            if (rulesetType.startsWith("wait_")) {
-                questionCount++;
+        return new Flow(legacyUUID, legacyName, legacyVersion, legacyRevision, waitRuleSetCount);
+    }
+
+    /**
+     * Reads a 13+ format node and returns whether its router has a wait
+     */
+    private static boolean nodeHasWait(JsonReader in) throws IOException {
+        boolean hasWait = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("router") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (in.nextName().equals("wait")) {
+                        hasWait = true;
+                    }
+                    in.skipValue();
+                }
+                in.endObject();
+            } else {
+                in.skipValue();
             }
         }
+        in.endObject();
+        return hasWait;
+    }
+
+    /**
+     * Reads a 11.x format rule set and returns whether it's a wait
+     */
+    private static boolean ruleSetIsWait(JsonReader in) throws IOException {
+        boolean isWait = false;
 
-        return new Flow(uuid, name, specVersion, revision, questionCount);
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("ruleset_type") && in.peek() == JsonToken.STRING) {
+                isWait = in.nextString().startsWith("wait_");
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return isWait;
     }
 
     public String getUuid() {
@@ -114,4 +210,51 @@ public class Flow {
     public FlowReference toReference() {
         return new FlowReference(uuid, name);
     }
+
+    /**
+     * Streaming type adapter for flow summaries so loading flows.json doesn't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Flow> {
+        @Override
+        public void write(JsonWriter out, Flow value) throws IOException {
+            out.beginObject();
+            out.name("uuid").value(value.uuid);
+            out.name("name").value(value.name);
+            out.name("spec_version").value(value.specVersion);
+            out.name("revision").value(value.revision);
+            out.name("question_count").value(value.questionCount);
+            out.endObject();
+        }
+
+        @Override
+        public Flow read(JsonReader in) throws IOException {
+            String uuid = null, name = null, specVersion = null;
+            int revision = 0, questionCount = 0;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uuid":
+                        uuid = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "spec_version":
+                        specVersion = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "revision":
+                        revision = JsonUtils.nextIntOrDefault(in, revision);
+                        break;
+                    case "question_count":
+                        questionCount = JsonUtils.nextIntOrDefault(in, questionCount);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Flow(uuid, name, specVersion, revision, questionCount);
+        }
+    }
 }
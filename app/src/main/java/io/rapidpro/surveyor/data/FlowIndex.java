@@ -0,0 +1,99 @@
+package io.rapidpro.surveyor.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable index of an org's flows by UUID and by name. A new index is built whenever the flow list
+ * is replaced, so the list and its indexes are always consistent with each other.
+ */
+class FlowIndex {
+
+    private final List<Flow> flows;
+
+    private final Map<String, Flow> byUuid;
+
+    private final Flow[] byName;
+
+    private final String[] nameKeys;
+
+    /**
+     * Creates a new index of the given flows
+     *
+     * @param flows the flows in their original order
+     */
+    FlowIndex(List<Flow> flows) {
+        this.flows = Collections.unmodifiableList(new ArrayList<>(flows));
+        this.byUuid = new HashMap<>(flows.size() * 2);
+        for (Flow flow : flows) {
+            byUuid.put(flow.getUuid(), flow);
+        }
+
+        this.byName = flows.toArray(new Flow[flows.size()]);
+        Arrays.sort(byName, new Comparator<Flow>() {
+            @Override
+            public int compare(Flow f1, Flow f2) {
+                return normalize(f1.getName()).compareTo(normalize(f2.getName()));
+            }
+        });
+
+        this.nameKeys = new String[byName.length];
+        for (int f = 0; f < byName.length; f++) {
+            nameKeys[f] = normalize(byName[f].getName());
+        }
+    }
+
+    /**
+     * Gets all flows in their original order
+     */
+    List<Flow> getAll() {
+        return flows;
+    }
+
+    /**
+     * Gets the flow with the given UUID
+     *
+     * @param uuid the flow UUID
+     * @return the flow or null
+     */
+    Flow get(String uuid) {
+        return byUuid.get(uuid);
+    }
+
+    /**
+     * Finds flows whose names start with the given prefix, ignoring case
+     *
+     * @param prefix the name prefix
+     * @return the matching flows sorted by name
+     */
+    List<Flow> findByPrefix(String prefix) {
+        String key = normalize(prefix);
+
+        // binary search for the first name which isn't less than the prefix
+        int low = 0, high = nameKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nameKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int end = low;
+        while (end < nameKeys.length && nameKeys[end].startsWith(key)) {
+            end++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(byName).subList(low, end));
+    }
+
+    private static String normalize(String name) {
+        return name != null ? name.trim().toLowerCase(Locale.ROOT) : "";
+    }
+}
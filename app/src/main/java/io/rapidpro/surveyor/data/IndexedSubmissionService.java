@@ -0,0 +1,365 @@
+package io.rapidpro.surveyor.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.rapidpro.surveyor.Logger;
+
+/**
+ * Submission service which keeps submission metadata (org, flow, status, sizes and sync state) in an
+ * indexed SQLite table, so that listing and counting don't require walking the submissions tree.
+ * Payloads and media are still stored on disk as they are by {@link SubmissionService}.
+ * <p>
+ * The table is built from disk by {@link #prepare()} when the database is first created, or by
+ * {@link #rebuild()}, e.g. after submissions have been written by the plain service. Both should be
+ * called in the background, and until the table has been built, queries fall back to walking the
+ * submissions tree like the plain service.
+ */
+public class IndexedSubmissionService extends SubmissionService {
+
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "submission";
+    private static final String STATE_TABLE = "index_state";
+
+    private static final int STATUS_IN_PROGRESS = 0;
+    private static final int STATUS_COMPLETED = 1;
+
+    private Helper helper;
+
+    // whether the table has been built and can be queried
+    private volatile boolean ready;
+
+    /**
+     * Creates a new indexed submission service
+     *
+     * @param context the context
+     * @param rootDir the root directory
+     * @param dbName  the name of the database
+     */
+    public IndexedSubmissionService(Context context, File rootDir, String dbName) {
+        super(rootDir);
+
+        this.helper = new Helper(context, dbName);
+    }
+
+    /**
+     * @see SubmissionService#newSubmission(Org, Flow)
+     */
+    @Override
+    public Submission newSubmission(Org org, Flow flow) throws IOException {
+        discardIncomplete(org, flow);
+
+        Submission submission = create(org, flow);
+
+        ContentValues values = new ContentValues();
+        values.put("uuid", submission.getUuid());
+        values.put("org_uuid", org.getUuid());
+        values.put("flow_uuid", flow.getUuid());
+        values.put("path", relativePath(submission.getDirectory()));
+        values.put("status", STATUS_IN_PROGRESS);
+        values.put("created_on", System.currentTimeMillis());
+        // a build running in the background may already have found it
+        getDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        return submission;
+    }
+
+    /**
+     * @see SubmissionService#getCompleted(Org)
+     */
+    @Override
+    public List<Submission> getCompleted(Org org) {
+        if (!ready) {
+            return super.getCompleted(org);
+        }
+        return query(org, "org_uuid = ? AND status = ?", org.getUuid(), String.valueOf(STATUS_COMPLETED));
+    }
+
+    /**
+     * @see SubmissionService#getCompleted(Org, Flow)
+     */
+    @Override
+    public List<Submission> getCompleted(Org org, Flow flow) {
+        if (!ready) {
+            return super.getCompleted(org, flow);
+        }
+        return query(org, "org_uuid = ? AND flow_uuid = ? AND status = ?", org.getUuid(), flow.getUuid(), String.valueOf(STATUS_COMPLETED));
+    }
+
+    /**
+     * @see SubmissionService#getCompletedCount(Org)
+     */
+    @Override
+    public int getCompletedCount(Org org) {
+        if (!ready) {
+            return super.getCompletedCount(org);
+        }
+        return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE, "org_uuid = ? AND status = ?",
+                new String[]{org.getUuid(), String.valueOf(STATUS_COMPLETED)});
+    }
+
+    /**
+     * @see SubmissionService#getCompletedCount(Org, Flow)
+     */
+    @Override
+    public int getCompletedCount(Org org, Flow flow) {
+        if (!ready) {
+            return super.getCompletedCount(org, flow);
+        }
+        return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE, "org_uuid = ? AND flow_uuid = ? AND status = ?",
+                new String[]{org.getUuid(), flow.getUuid(), String.valueOf(STATUS_COMPLETED)});
+    }
+
+    /**
+     * @see SubmissionService#getCompletedCounts(Org)
+     */
+    @Override
+    public Map<String, Integer> getCompletedCounts(Org org) {
+        if (!ready) {
+            return super.getCompletedCounts(org);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        Cursor cursor = getDatabase().rawQuery("SELECT flow_uuid, COUNT(*) FROM " + TABLE + " WHERE org_uuid = ? AND status = ? GROUP BY flow_uuid",
+                new String[]{org.getUuid(), String.valueOf(STATUS_COMPLETED)});
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    /**
+     * @see SubmissionService#hasSubmissions()
+     */
+    @Override
+    public boolean hasSubmissions() {
+        if (!ready) {
+            return super.hasSubmissions();
+        }
+        return DatabaseUtils.queryNumEntries(getDatabase(), TABLE) > 0;
+    }
+
+    /**
+     * @see SubmissionService#clearAll()
+     */
+    @Override
+    public void clearAll() throws IOException {
+        super.clearAll();
+
+        getDatabase().delete(TABLE, null, null);
+    }
+
+    /**
+     * @see SubmissionService#migrateToSingleFiles()
+     */
+    @Override
+    public int migrateToSingleFiles() throws IOException {
+        int migrated = super.migrateToSingleFiles();
+        if (migrated > 0) {
+            rebuild();
+        }
+        return migrated;
+    }
+
+    /**
+     * Builds the metadata table from the submissions on disk if it hasn't been built already. Should be
+     * called in the background as building requires walking all submissions.
+     */
+    public synchronized void prepare() {
+        SQLiteDatabase db = getDatabase();
+        if (DatabaseUtils.queryNumEntries(db, STATE_TABLE) == 0) {
+            rebuild(db);
+        }
+        ready = true;
+    }
+
+    /**
+     * Rebuilds the metadata table from the submissions on disk
+     *
+     * @return the number of submissions found
+     */
+    public synchronized int rebuild() {
+        int count = rebuild(getDatabase());
+        ready = true;
+        return count;
+    }
+
+    /**
+     * Gets whether the metadata table has been built, and so is being used for queries
+     *
+     * @return true if ready
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    void discardIncomplete(Org org, Flow flow) throws IOException {
+        // until the table is built it may not know about everything on disk
+        if (!ready) {
+            super.discardIncomplete(org, flow);
+            return;
+        }
+
+        String[] args = new String[]{org.getUuid(), flow.getUuid(), String.valueOf(STATUS_IN_PROGRESS)};
+
+        for (Submission submission : query(org, "org_uuid = ? AND flow_uuid = ? AND status = ?", args)) {
+            submission.delete();
+        }
+
+        // in case any couldn't be deleted from disk
+        getDatabase().delete(TABLE, "org_uuid = ? AND flow_uuid = ? AND status = ?", args);
+    }
+
+    @Override
+    void onCompleted(Submission submission) {
+        super.onCompleted(submission);
+
+        ContentValues values = new ContentValues();
+        values.put("path", relativePath(submission.getDirectory()));
+        values.put("status", STATUS_COMPLETED);
+        values.put("size", sizeOf(submission.getDirectory()));
+        getDatabase().update(TABLE, values, "uuid = ?", new String[]{submission.getUuid()});
+    }
+
+    @Override
+    void onSubmitting(Submission submission) {
+        super.onSubmitting(submission);
+
+        getDatabase().execSQL("UPDATE " + TABLE + " SET submit_attempts = submit_attempts + 1, last_attempt_on = ? WHERE uuid = ?",
+                new Object[]{System.currentTimeMillis(), submission.getUuid()});
+    }
+
+    @Override
+    void onDeleted(Submission submission, boolean wasCompleted) {
+        super.onDeleted(submission, wasCompleted);
+
+        getDatabase().delete(TABLE, "uuid = ?", new String[]{submission.getUuid()});
+    }
+
+    private List<Submission> query(Org org, String selection, String... args) {
+        List<Submission> submissions = new ArrayList<>();
+        Cursor cursor = getDatabase().query(TABLE, new String[]{"path"}, selection, args, null, null, "created_on");
+        try {
+            while (cursor.moveToNext()) {
+                submissions.add(new Submission(org, new File(getRootDir(), cursor.getString(0)), this));
+            }
+        } finally {
+            cursor.close();
+        }
+        return submissions;
+    }
+
+    /**
+     * @see SubmissionService#close()
+     */
+    @Override
+    public void close() {
+        helper.close();
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return helper.getWritableDatabase();
+    }
+
+    private int rebuild(SQLiteDatabase db) {
+        int count = 0;
+
+        db.beginTransaction();
+        try {
+            db.delete(TABLE, null, null);
+
+            for (File orgDir : getOrgDirectories()) {
+                for (File flowDir : orgDir.listFiles(DIR_FILTER)) {
+                    for (File file : flowDir.listFiles(SUBMISSION_FILTER)) {
+                        Submission submission = new Submission(null, file);
+                        boolean completed = submission.isCompleted();
+
+                        ContentValues values = new ContentValues();
+                        values.put("uuid", submission.getUuid());
+                        values.put("org_uuid", orgDir.getName());
+                        values.put("flow_uuid", flowDir.getName());
+                        values.put("path", relativePath(file));
+                        values.put("status", completed ? STATUS_COMPLETED : STATUS_IN_PROGRESS);
+                        values.put("created_on", file.lastModified());
+                        values.put("size", completed ? sizeOf(file) : 0);
+                        db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                        count++;
+                    }
+                }
+            }
+
+            // record that the table is complete so an interrupted build is started again
+            db.delete(STATE_TABLE, null, null);
+            ContentValues state = new ContentValues();
+            state.put("built_on", System.currentTimeMillis());
+            db.insert(STATE_TABLE, null, state);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Logger.d("Rebuilt submission index with " + count + " submissions");
+        return count;
+    }
+
+    private String relativePath(File file) {
+        return file.getParentFile().getParentFile().getName() + File.separator + file.getParentFile().getName() + File.separator + file.getName();
+    }
+
+    private static long sizeOf(File file) {
+        return file.isDirectory() ? FileUtils.sizeOfDirectory(file) : file.length();
+    }
+
+    private static class Helper extends SQLiteOpenHelper {
+        Helper(Context context, String name) {
+            super(context, name, null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " (" +
+                    "uuid TEXT PRIMARY KEY, " +
+                    "org_uuid TEXT NOT NULL, " +
+                    "flow_uuid TEXT NOT NULL, " +
+                    "path TEXT NOT NULL, " +
+                    "status INTEGER NOT NULL, " +
+                    "created_on INTEGER NOT NULL, " +
+                    "size INTEGER NOT NULL DEFAULT 0, " +
+                    "submit_attempts INTEGER NOT NULL DEFAULT 0, " +
+                    "last_attempt_on INTEGER)");
+            db.execSQL("CREATE INDEX submission_org_status ON " + TABLE + " (org_uuid, status, created_on)");
+            db.execSQL("CREATE INDEX submission_org_flow_status ON " + TABLE + " (org_uuid, flow_uuid, status, created_on)");
+
+            // has a row once the submission table has been built from disk
+            db.execSQL("CREATE TABLE " + STATE_TABLE + " (built_on INTEGER NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // the tables only cache what's on disk so can always be recreated
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + STATE_TABLE);
+            onCreate(db);
+        }
+    }
+}
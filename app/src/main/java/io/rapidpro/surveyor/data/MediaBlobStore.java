@@ -0,0 +1,365 @@
+package io.rapidpro.surveyor.data;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.utils.DurableFile;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * Content addressed store for submission media. Each distinct file is stored once as
+ * <hash>.<extension> and reference counted, and its remote URL is remembered once uploaded so that
+ * it's only uploaded once per org no matter how many submissions use it.
+ * <p>
+ * Blobs are added before the submission records its reference to them, so garbage collection never
+ * deletes blobs which were added or re-added recently, whatever their reference count.
+ */
+public class MediaBlobStore {
+
+    private static final String INDEX_FILE = "index.json";
+
+    /**
+     * File whose modified time records when garbage was last collected
+     */
+    private static final String COLLECTED_FILE = ".collected";
+
+    /**
+     * How long blobs are protected from garbage collection after being added
+     */
+    static final long GRACE_PERIOD = 24 * 60 * 60 * 1000;
+
+    /**
+     * How often garbage collection is worth doing
+     */
+    static final long COLLECTION_INTERVAL = 24 * 60 * 60 * 1000;
+
+    private static final Map<String, MediaBlobStore> instances = new HashMap<>();
+
+    private File directory;
+
+    private Map<String, Entry> index;
+
+    private int batchDepth;
+
+    private boolean dirty;
+
+    /**
+     * Creates a new media store in the given directory
+     *
+     * @param directory the directory
+     */
+    public MediaBlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the shared store for the given directory, so that all users of a directory share one index
+     * and one lock
+     *
+     * @param directory the directory
+     * @return the store
+     */
+    public static MediaBlobStore forDirectory(File directory) {
+        synchronized (instances) {
+            String key = directory.getAbsolutePath();
+            MediaBlobStore store = instances.get(key);
+            if (store == null) {
+                store = new MediaBlobStore(directory);
+                instances.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Gets the directory blobs are stored in
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Adds the given data to the store, or adds a reference if it's already stored
+     *
+     * @param data      the media data
+     * @param extension the file extension
+     * @return the blob file
+     */
+    public File add(byte[] data, String extension) throws IOException {
+        return add(new ByteArrayInputStream(data), extension);
+    }
+
+    /**
+     * Adds a copy of the given file to the store, or adds a reference if it's already stored
+     *
+     * @param src       the file to copy
+     * @param extension the file extension
+     * @return the blob file
+     */
+    public File add(File src, String extension) throws IOException {
+        InputStream input = new FileInputStream(src);
+        try {
+            return add(input, extension);
+        } finally {
+            input.close();
+        }
+    }
+
+    private synchronized File add(InputStream input, String extension) throws IOException {
+        directory.mkdirs();
+
+        // copy to a temporary file, hashing as we go
+        File temp = new File(directory, UUID.randomUUID().toString() + ".tmp");
+        String hash;
+        try {
+            MessageDigest digest = newDigest();
+            OutputStream output = new FileOutputStream(temp);
+            try {
+                IOUtils.copy(new DigestInputStream(input, digest), output);
+            } finally {
+                output.close();
+            }
+            hash = toHex(digest.digest());
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        String name = hash + "." + extension;
+        File blob = new File(directory, name);
+
+        if (blob.exists()) {
+            temp.delete();
+
+            // restart the grace period of an existing blob as the reference to it hasn't been recorded yet
+            blob.setLastModified(System.currentTimeMillis());
+        } else if (!temp.renameTo(blob)) {
+            temp.delete();
+            throw new IOException("Unable to store media blob " + blob.getPath());
+        }
+
+        Entry entry = getIndex().get(name);
+        if (entry == null) {
+            entry = new Entry();
+            getIndex().put(name, entry);
+        }
+        entry.refs++;
+        saveIndex();
+
+        Logger.d("Stored media blob " + name + " (refs=" + entry.refs + ")");
+        return blob;
+    }
+
+    /**
+     * Releases a reference to the given blob, deleting it if it's no longer referenced
+     *
+     * @param name the blob name
+     */
+    public synchronized void release(String name) throws IOException {
+        Entry entry = getIndex().get(name);
+        if (entry != null) {
+            entry.refs--;
+
+            if (entry.refs <= 0) {
+                getIndex().remove(name);
+                FileUtils.deleteQuietly(new File(directory, name));
+
+                Logger.d("Deleted unreferenced media blob " + name);
+            }
+            saveIndex();
+        }
+    }
+
+    /**
+     * Gets the remote URL of the given blob if it's already been uploaded for the given org
+     *
+     * @param orgUUID the org UUID
+     * @param name    the blob name
+     * @return the URL or null
+     */
+    public synchronized String getUploadedUrl(String orgUUID, String name) throws IOException {
+        Entry entry = getIndex().get(name);
+        return entry != null && entry.urls != null ? entry.urls.get(orgUUID) : null;
+    }
+
+    /**
+     * Records the remote URL of the given blob after it's been uploaded for the given org
+     *
+     * @param orgUUID the org UUID
+     * @param name    the blob name
+     * @param url     the remote URL
+     */
+    public synchronized void setUploadedUrl(String orgUUID, String name, String url) throws IOException {
+        Entry entry = getIndex().get(name);
+        if (entry != null) {
+            if (entry.urls == null) {
+                entry.urls = new HashMap<>();
+            }
+            entry.urls.put(orgUUID, url);
+            saveIndex();
+        }
+    }
+
+    /**
+     * Gets whether it's been long enough since garbage was last collected for it to be worth doing again
+     *
+     * @return true if collection is due
+     */
+    public boolean isCollectionDue() {
+        if (!directory.exists()) {
+            return false;
+        }
+        File collected = new File(directory, COLLECTED_FILE);
+        return !collected.exists() || collected.lastModified() < System.currentTimeMillis() - COLLECTION_INTERVAL;
+    }
+
+    /**
+     * Resets reference counts to the given actual counts and deletes any blobs which are no longer
+     * referenced, e.g. after a crash left the index out of sync with submissions. Blobs added within the
+     * grace period are kept even if unreferenced, as their references may not have been counted.
+     *
+     * @param refCounts the number of references to each blob name
+     * @return the number of blobs deleted
+     */
+    public synchronized int collectGarbage(Map<String, Integer> refCounts) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        long protectedSince = System.currentTimeMillis() - GRACE_PERIOD;
+        Set<String> keep = new HashSet<>(refCounts.keySet());
+
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(INDEX_FILE) || name.equals(COLLECTED_FILE)) {
+                continue;
+            }
+
+            Integer refs = refCounts.get(name);
+            if (refs == null || refs <= 0) {
+                if (file.lastModified() >= protectedSince) {
+                    keep.add(name);
+                    continue;
+                }
+
+                FileUtils.deleteQuietly(file);
+                getIndex().remove(name);
+                deleted++;
+            } else {
+                Entry entry = getIndex().get(name);
+                if (entry == null) {
+                    entry = new Entry();
+                    getIndex().put(name, entry);
+                }
+                entry.refs = refs;
+            }
+        }
+
+        // drop index entries for blobs which are no longer referenced or protected
+        getIndex().keySet().retainAll(keep);
+        saveIndex();
+
+        FileUtils.touch(new File(directory, COLLECTED_FILE));
+
+        Logger.d("Collected " + deleted + " unreferenced media blobs");
+        return deleted;
+    }
+
+    /**
+     * Starts a batch of changes, e.g. to the media of a submission being sent or deleted, during which the
+     * index is only updated in memory. Must be followed by a call to {@link #endBatch()}.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes, writing the index once if anything changed
+     */
+    public synchronized void endBatch() throws IOException {
+        if (batchDepth > 0 && --batchDepth == 0 && dirty) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Discards the in-memory index so that it will be reloaded from disk, e.g. after the directory was cleared
+     */
+    synchronized void reset() {
+        index = null;
+        dirty = false;
+    }
+
+    private Map<String, Entry> getIndex() throws IOException {
+        if (index == null) {
+            File file = new File(directory, INDEX_FILE);
+            if (file.exists()) {
+                TypeToken type = new TypeToken<HashMap<String, Entry>>() {
+                };
+                index = JsonUtils.unmarshal(DurableFile.read(file), type);
+            }
+            if (index == null) {
+                index = new HashMap<>();
+            }
+        }
+        return index;
+    }
+
+    private void saveIndex() throws IOException {
+        if (batchDepth > 0) {
+            dirty = true;
+            return;
+        }
+
+        dirty = false;
+        DurableFile.write(new File(directory, INDEX_FILE), JsonUtils.marshal(index));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Index entry for a single blob
+     */
+    private static class Entry {
+        private int refs;
+
+        private Map<String, String> urls;
+    }
+}
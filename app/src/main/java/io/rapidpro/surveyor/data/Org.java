@@ -1,23 +1,33 @@
 package io.rapidpro.surveyor.data;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.SurveyorApplication;
+import io.rapidpro.surveyor.SurveyorPreferences;
+import io.rapidpro.surveyor.engine.Engine;
+import io.rapidpro.surveyor.engine.LocationIndex;
+import io.rapidpro.surveyor.engine.LocationTreeWriter;
 import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.engine.PreparedSessions;
 import io.rapidpro.surveyor.net.TembaException;
 import io.rapidpro.surveyor.net.TembaService;
 import io.rapidpro.surveyor.net.responses.Boundary;
 import io.rapidpro.surveyor.net.responses.Field;
 import io.rapidpro.surveyor.net.responses.Group;
+import io.rapidpro.surveyor.utils.DurableFile;
 import io.rapidpro.surveyor.utils.JsonUtils;
 import io.rapidpro.surveyor.utils.RawJson;
 
@@ -28,15 +38,26 @@ public class Org {
     private static final String DETAILS_FILE = "details.json";
 
     /**
-     * Contains a goflow assets file with this org's flows, groups, fields etc
+     * Contains a goflow assets file with this org's flows, groups, fields etc (no longer written but
+     * migrated to the assets directory if found)
      */
     private static final String ASSETS_FILE = "assets.json";
 
+    /**
+     * Contains this org's flows, groups, fields etc split into separate files
+     */
+    private static final String ASSETS_DIR = "assets";
+
     /**
      * Contains summaries of each flow available in this org
      */
     private static final String FLOWS_FILE = "flows.json";
 
+    /**
+     * Temporary file for boundaries as they're fetched
+     */
+    private static final String LOCATIONS_SPOOL_FILE = "boundaries.tmp";
+
     private String token;
 
     private String name;
@@ -59,7 +80,11 @@ public class Org {
 
     private transient File directory;
 
-    private transient List<Flow> flows;
+    private transient volatile FlowIndex flows;
+
+    private transient AssetStore assetStore;
+
+    private transient LocationIndex locationIndex;
 
     /**
      * Creates an new empty org
@@ -75,11 +100,11 @@ public class Org {
         org.name = name;
         org.token = token;
         org.directory = directory;
-        org.flows = new ArrayList<>();
+        org.flows = new FlowIndex(Collections.<Flow>emptyList());
         org.legacySubmissionsDirectory = null;
 
-        FileUtils.writeStringToFile(new File(directory, DETAILS_FILE), "{\"name\":\"" + name + "\",\"token\":\"" + token + "\"}");
-        FileUtils.writeStringToFile(new File(directory, FLOWS_FILE), "[]");
+        DurableFile.write(new File(directory, DETAILS_FILE), "{\"name\":\"" + name + "\",\"token\":\"" + token + "\"}");
+        DurableFile.write(new File(directory, FLOWS_FILE), "[]");
         return org;
     }
 
@@ -95,16 +120,16 @@ public class Org {
         }
 
         // read details.json
-        String detailsJSON = FileUtils.readFileToString(new File(directory, DETAILS_FILE));
+        String detailsJSON = DurableFile.read(new File(directory, DETAILS_FILE));
         Org org = JsonUtils.unmarshal(detailsJSON, Org.class);
         org.directory = directory;
 
         // read flows.json
-        String flowsJson = FileUtils.readFileToString(new File(directory, FLOWS_FILE));
+        String flowsJson = DurableFile.read(new File(directory, FLOWS_FILE));
 
         TypeToken type = new TypeToken<List<Flow>>() {
         };
-        org.flows = JsonUtils.unmarshal(flowsJson, type);
+        org.flows = new FlowIndex(JsonUtils.<List<Flow>>unmarshal(flowsJson, type));
         return org;
     }
 
@@ -187,7 +212,7 @@ public class Org {
     }
 
     public List<Flow> getFlows() {
-        return flows;
+        return flows.getAll();
     }
 
     /**
@@ -197,12 +222,17 @@ public class Org {
      * @return the flow or null if no such flow exists
      */
     public Flow getFlow(String uuid) {
-        for (Flow flow : flows) {
-            if (flow.getUuid().equals(uuid)) {
-                return flow;
-            }
-        }
-        return null;
+        return flows.get(uuid);
+    }
+
+    /**
+     * Finds flows whose names start with the given prefix, ignoring case
+     *
+     * @param prefix the name prefix
+     * @return the matching flows sorted by name
+     */
+    public List<Flow> findFlows(String prefix) {
+        return flows.findByPrefix(prefix);
     }
 
     /**
@@ -211,7 +241,7 @@ public class Org {
      * @return true if org has assets
      */
     public boolean hasAssets() {
-        return new File(directory, ASSETS_FILE).exists();
+        return new File(directory, ASSETS_FILE).exists() || new AssetStore(new File(directory, ASSETS_DIR)).exists();
     }
 
     /**
@@ -220,7 +250,65 @@ public class Org {
      * @return the assets JSON
      */
     public String getAssets() throws IOException {
-        return FileUtils.readFileToString(new File(directory, ASSETS_FILE));
+        return getAssetStore().load();
+    }
+
+    /**
+     * Gets the downloaded assets needed to run the given flow
+     *
+     * @param flowUUID the flow UUID
+     * @return the assets JSON
+     */
+    public String getAssets(String flowUUID) throws IOException {
+        return getAssetStore().load(flowUUID);
+    }
+
+    /**
+     * Gets the nodes in the given flow which are waiting for a location name
+     *
+     * @param flowUUID the flow UUID
+     * @return map of node UUIDs to location levels
+     */
+    public Map<String, Integer> getLocationNodes(String flowUUID) throws IOException {
+        return getAssetStore().getLocationNodes(flowUUID);
+    }
+
+    /**
+     * Gets the index of this org's location hierarchy
+     *
+     * @return the index or null if org has no locations
+     */
+    public synchronized LocationIndex getLocationIndex() throws IOException {
+        if (locationIndex == null) {
+            locationIndex = getAssetStore().loadLocationIndex();
+        }
+        return locationIndex;
+    }
+
+    /**
+     * Prepares the stored assets of this org, upgrading or migrating them if necessary, so that this
+     * doesn't have to happen the first time assets are needed on the UI thread
+     */
+    public void prepareAssets() throws IOException {
+        getAssetStore();
+    }
+
+    private synchronized AssetStore getAssetStore() throws IOException {
+        if (assetStore == null) {
+            boolean compress = SurveyorApplication.get().getPreferences().getBoolean(SurveyorPreferences.COMPRESS_ASSETS, true);
+            assetStore = new AssetStore(new File(directory, ASSETS_DIR), compress);
+
+            // existing files may have been written with a different setting or by an older version
+            assetStore.upgrade();
+        }
+
+        // migrate a single assets file to the split format
+        File legacyFile = new File(directory, ASSETS_FILE);
+        if (legacyFile.exists()) {
+            assetStore.migrate(legacyFile);
+            FileUtils.deleteQuietly(legacyFile);
+        }
+        return assetStore;
     }
 
     /**
@@ -239,19 +327,25 @@ public class Org {
         this.anon = apiOrg.isAnon();
         this.save();
 
+        Engine.invalidateEnvironment(this);
+
         if (progress != null) {
             progress.reportProgress(10);
         }
 
         if (includeAssets) {
             refreshAssets(progress);
+
+            SurveyorApplication.get().getOrgService().onChanged(this);
         }
     }
 
     public void save() throws IOException {
         // (re)write org fields to details.json
         String detailsJSON = JsonUtils.marshal(this);
-        FileUtils.writeStringToFile(new File(directory, DETAILS_FILE), detailsJSON);
+        DurableFile.write(new File(directory, DETAILS_FILE), detailsJSON);
+
+        SurveyorApplication.get().getOrgService().onChanged(this);
     }
 
     private void refreshAssets(RefreshProgress progress) throws TembaException, IOException {
@@ -271,31 +365,105 @@ public class Org {
 
         progress.reportProgress(60);
 
-        List<Boundary> boundaries = SurveyorApplication.get().getTembaService().getBoundaries(getToken());
-
-        progress.reportProgress(70);
-
-        OrgAssets assets = OrgAssets.fromTemba(fields, groups, boundaries, definitions);
-        String assetsJSON = JsonUtils.marshal(assets);
-
-        FileUtils.writeStringToFile(new File(directory, ASSETS_FILE), assetsJSON);
+        OrgAssets assets = OrgAssets.fromTemba(fields, groups, Collections.<Boundary>emptyList(), definitions);
+
+        // boundaries can number in the tens of thousands so build the hierarchy page by page
+        final LocationTreeWriter locations = new LocationTreeWriter(new File(directory, LOCATIONS_SPOOL_FILE));
+        try {
+            SurveyorApplication.get().getTembaService().getBoundaries(getToken(), new TembaService.PageListener<Boundary>() {
+                @Override
+                public void onPage(List<Boundary> results) throws IOException {
+                    locations.addAll(results);
+                }
+            });
+
+            progress.reportProgress(70);
+
+            getAssetStore().write(assets, locations);
+            locationIndex = null;
+            PreparedSessions.getInstance().discard();
+        } finally {
+            locations.close();
+        }
 
         progress.reportProgress(80);
 
-        // update the flow summaries
-        this.flows.clear();
-        this.flows.addAll(assets.getFlows());
+        // update the flow summaries, swapping in a new index so that other threads never see it half updated
+        this.flows = new FlowIndex(assets.getFlows());
 
         // and write that to flows.json as well
-        String summariesJSON = JsonUtils.marshal(this.flows);
-        FileUtils.writeStringToFile(new File(directory, FLOWS_FILE), summariesJSON);
+        String summariesJSON = JsonUtils.marshal(assets.getFlows());
+        DurableFile.write(new File(directory, FLOWS_FILE), summariesJSON);
 
         progress.reportProgress(100);
 
-        Logger.d("Refreshed assets for org " + getUuid() + " (flows=" + flows.size() + ", fields=" + fields.size() + ", groups=" + groups.size() + ")");
+        Logger.d("Refreshed assets for org " + getUuid() + " (flows=" + getFlows().size() + ", fields=" + fields.size() + ", groups=" + groups.size() + ")");
     }
 
     public interface RefreshProgress {
         void reportProgress(int percent);
     }
+
+    /**
+     * Streaming type adapter for details.json so loading an org doesn't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Org> {
+        @Override
+        public void write(JsonWriter out, Org value) throws IOException {
+            out.beginObject();
+            out.name("token").value(value.token);
+            out.name("name").value(value.name);
+            out.name("primary_language").value(value.primaryLanguage);
+            out.name("languages");
+            JsonUtils.writeStringArray(out, value.languages);
+            out.name("timezone").value(value.timezone);
+            out.name("country").value(value.country);
+            out.name("date_style").value(value.dateStyle);
+            out.name("anon").value(value.anon);
+            out.name("legacySubmissionsDirectory").value(value.legacySubmissionsDirectory);
+            out.endObject();
+        }
+
+        @Override
+        public Org read(JsonReader in) throws IOException {
+            Org org = new Org();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "token":
+                        org.token = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        org.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "primary_language":
+                        org.primaryLanguage = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "languages":
+                        org.languages = JsonUtils.nextStringArray(in);
+                        break;
+                    case "timezone":
+                        org.timezone = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "country":
+                        org.country = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "date_style":
+                        org.dateStyle = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "anon":
+                        org.anon = JsonUtils.nextBooleanOrDefault(in, org.anon);
+                        break;
+                    case "legacySubmissionsDirectory":
+                        org.legacySubmissionsDirectory = JsonUtils.nextStringOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return org;
+        }
+    }
 }
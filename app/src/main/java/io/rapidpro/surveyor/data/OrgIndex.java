@@ -0,0 +1,233 @@
+package io.rapidpro.surveyor.data;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.utils.DurableFile;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * Index file of summaries of all orgs on the device, with their names, flow counts, pending
+ * submission counts and asset versions. It's kept up to date as orgs are refreshed and submissions
+ * completed or sent.
+ * <p>
+ * Pending counts can only be trusted once the index has been built by scanning submissions, which
+ * happens once when the index file doesn't exist yet, e.g. after upgrading.
+ */
+public class OrgIndex {
+
+    private File file;
+
+    private Map<String, OrgSummary> summaries;
+
+    private boolean pendingCountsKnown;
+
+    private int batchDepth;
+
+    private boolean dirty;
+
+    /**
+     * Creates a new org index backed by the given file
+     *
+     * @param file the index file
+     */
+    public OrgIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the summary of the given org
+     *
+     * @param uuid the org UUID
+     * @return the summary or null if org isn't in the index
+     */
+    public synchronized OrgSummary get(String uuid) {
+        return getSummaries().get(uuid);
+    }
+
+    /**
+     * Adds or updates the summary of the given org
+     *
+     * @param org the org
+     * @return the summary
+     */
+    public synchronized OrgSummary update(Org org) {
+        OrgSummary summary = getSummaries().get(org.getUuid());
+        if (summary == null) {
+            summary = new OrgSummary(org.getUuid());
+            getSummaries().put(org.getUuid(), summary);
+        }
+        summary.update(org);
+        save();
+        return summary;
+    }
+
+    /**
+     * Removes the given org from the index
+     *
+     * @param uuid the org UUID
+     */
+    public synchronized void remove(String uuid) {
+        if (getSummaries().remove(uuid) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Adjusts the pending count of the given org, e.g. when a submission is completed or sent
+     *
+     * @param uuid  the org UUID
+     * @param delta the change in pending submissions
+     */
+    public synchronized void adjustPending(String uuid, int delta) {
+        OrgSummary summary = getSummaries().get(uuid);
+        if (summary != null) {
+            summary.setPendingCount(summary.getPendingCount() + delta);
+            save();
+        }
+    }
+
+    /**
+     * Sets the pending count of the given org, e.g. when it's been counted anyway
+     *
+     * @param uuid  the org UUID
+     * @param count the number of pending submissions
+     */
+    public synchronized void setPending(String uuid, int count) {
+        OrgSummary summary = getSummaries().get(uuid);
+        if (summary != null && summary.getPendingCount() != count) {
+            summary.setPendingCount(count);
+            save();
+        }
+    }
+
+    /**
+     * Sets the pending count of all orgs to zero, e.g. after all submissions have been cleared
+     */
+    public synchronized void clearPending() {
+        for (OrgSummary summary : getSummaries().values()) {
+            summary.setPendingCount(0);
+        }
+        pendingCountsKnown = true;
+        save();
+    }
+
+    /**
+     * Gets the total number of pending submissions across all orgs
+     *
+     * @return the total or -1 if the index hasn't been built yet
+     */
+    public synchronized int getTotalPending() {
+        if (needsBuild()) {
+            return -1;
+        }
+        int total = 0;
+        for (OrgSummary summary : getSummaries().values()) {
+            total += summary.getPendingCount();
+        }
+        return total;
+    }
+
+    /**
+     * Gets whether this index needs to be built by scanning orgs and submissions
+     *
+     * @return true if it needs building
+     */
+    public synchronized boolean needsBuild() {
+        getSummaries();
+        return !pendingCountsKnown;
+    }
+
+    /**
+     * Rebuilds this index from the given orgs and their pending counts
+     *
+     * @param orgs          the orgs
+     * @param pendingCounts the pending count of each org
+     */
+    public synchronized void build(List<Org> orgs, Map<String, Integer> pendingCounts) {
+        summaries = new LinkedHashMap<>();
+        for (Org org : orgs) {
+            OrgSummary summary = new OrgSummary(org.getUuid());
+            summary.update(org);
+            Integer pending = pendingCounts.get(org.getUuid());
+            summary.setPendingCount(pending != null ? pending : 0);
+            summaries.put(org.getUuid(), summary);
+        }
+        pendingCountsKnown = true;
+        save();
+
+        Logger.d("Built org index with " + orgs.size() + " orgs");
+    }
+
+    /**
+     * Starts a batch of changes, e.g. sending many submissions, during which the index is only updated
+     * in memory. Must be followed by a call to {@link #endBatch()}.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes, writing the index once if anything changed
+     */
+    public synchronized void endBatch() {
+        if (batchDepth > 0 && --batchDepth == 0 && dirty) {
+            save();
+        }
+    }
+
+    /**
+     * Discards the in-memory index so that it will be reloaded from disk
+     */
+    public synchronized void reset() {
+        summaries = null;
+        pendingCountsKnown = false;
+        dirty = false;
+    }
+
+    private Map<String, OrgSummary> getSummaries() {
+        if (summaries == null) {
+            summaries = new LinkedHashMap<>();
+
+            if (file.exists()) {
+                try {
+                    TypeToken type = new TypeToken<List<OrgSummary>>() {
+                    };
+                    List<OrgSummary> loaded = JsonUtils.unmarshal(DurableFile.read(file), type);
+                    for (OrgSummary summary : loaded) {
+                        summaries.put(summary.getUuid(), summary);
+                    }
+                    pendingCountsKnown = true;
+                } catch (Exception e) {
+                    Logger.e("Unable to read org index, will rebuild", e);
+                }
+            }
+        }
+        return summaries;
+    }
+
+    private void save() {
+        // don't write an index with pending counts we don't trust yet
+        if (!pendingCountsKnown) {
+            return;
+        }
+        if (batchDepth > 0) {
+            dirty = true;
+            return;
+        }
+
+        dirty = false;
+        try {
+            DurableFile.write(file, JsonUtils.marshal(new ArrayList<>(summaries.values())));
+        } catch (IOException e) {
+            Logger.e("Unable to write org index", e);
+        }
+    }
+}
@@ -1,41 +1,151 @@
 package io.rapidpro.surveyor.data;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.net.TembaException;
 
 /**
- * Directory based service for org configurations
+ * Directory based service for org configurations. Loaded orgs are kept in a cache which is safe to
+ * use from background tasks, and bounded by the total number of flows the orgs hold.
  */
 public class OrgService {
 
+    /**
+     * File inside the root directory where the org index is stored
+     */
+    private static final String INDEX_FILE = ".index.json";
+
+    /**
+     * Default maximum number of flows held by cached orgs
+     */
+    static final int DEFAULT_MAX_CACHED_FLOWS = 1000;
+
     private File rootDir;
 
-    private Map<String, Org> cache = new HashMap<>();
+    private int maxCachedFlows;
+
+    /**
+     * Cached orgs in least recently used order, guarded by itself
+     */
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int cachedFlows;
+
+    private int generation;
+
+    private OrgIndex index;
 
     public OrgService(File rootDir) {
+        this(rootDir, DEFAULT_MAX_CACHED_FLOWS);
+    }
+
+    OrgService(File rootDir, int maxCachedFlows) {
         this.rootDir = rootDir;
+        this.maxCachedFlows = maxCachedFlows;
+        this.index = new OrgIndex(new File(rootDir, INDEX_FILE));
 
         Logger.d("OrgService created for directory " + this.rootDir.getAbsolutePath());
     }
 
     public Org get(String uuid) throws IOException {
-        if (cache.containsKey(uuid)) {
-            Logger.d("Returning cached org " + uuid);
-            return cache.get(uuid);
+        int loadGeneration;
+
+        synchronized (cache) {
+            Cached cached = cache.get(uuid);
+            if (cached != null) {
+                Logger.d("Returning cached org " + uuid);
+                return cached.org;
+            }
+            loadGeneration = generation;
         }
 
+        // load outside of the lock so that a large org doesn't block access to others
         File directory = new File(rootDir, uuid);
         Org org = Org.load(directory);
         Logger.d("Loaded org " + uuid);
-        cache.put(uuid, org);
+
+        synchronized (cache) {
+            Cached cached = cache.get(uuid);
+            if (cached != null) {
+                return cached.org;
+            }
+
+            // don't cache what we loaded if the org was changed whilst we were loading it
+            if (loadGeneration == generation) {
+                put(org);
+            }
+        }
+
+        if (index.get(uuid) == null) {
+            index.update(org);
+        }
         return org;
     }
 
+    /**
+     * Gets the summary of the given org from the index, only loading the org if it isn't indexed yet
+     *
+     * @param uuid the UUID of the org
+     * @return the summary
+     */
+    public OrgSummary getSummary(String uuid) throws IOException {
+        OrgSummary summary = index.get(uuid);
+        if (summary == null) {
+            get(uuid);
+            summary = index.get(uuid);
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the index of org summaries
+     *
+     * @return the index
+     */
+    public OrgIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Builds the org index if it doesn't exist yet by loading every org and counting its pending submissions
+     *
+     * @param submissions the submission service
+     * @return true if the index was built
+     */
+    public boolean buildIndex(SubmissionService submissions) {
+        if (!index.needsBuild()) {
+            return false;
+        }
+
+        List<Org> orgs = new ArrayList<>();
+        Map<String, Integer> pendingCounts = new HashMap<>();
+
+        for (File dir : rootDir.listFiles()) {
+            if (dir.isDirectory()) {
+                try {
+                    Org org = get(dir.getName());
+                    orgs.add(org);
+                    pendingCounts.put(org.getUuid(), submissions.getCompletedCount(org));
+                } catch (IOException e) {
+                    Logger.e("Unable to load org " + dir.getName() + " for index", e);
+                }
+            }
+        }
+
+        index.build(orgs, pendingCounts);
+        return true;
+    }
+
     /**
      * Fetches an org using the given API token and saves it to the org storage
      *
@@ -54,7 +164,119 @@ public class OrgService {
         return org;
     }
 
+    /**
+     * Called when an org has written new data to disk, to replace any cached copy and update the index
+     *
+     * @param org the org
+     */
+    public void onChanged(Org org) {
+        synchronized (cache) {
+            invalidate(org.getUuid());
+            put(org);
+        }
+
+        index.update(org);
+    }
+
+    /**
+     * Removes an org from the cache so that it will be reloaded from disk
+     *
+     * @param uuid the UUID of the org
+     */
+    public void invalidate(String uuid) {
+        synchronized (cache) {
+            Cached removed = cache.remove(uuid);
+            if (removed != null) {
+                cachedFlows -= removed.weight;
+            }
+            generation++;
+        }
+    }
+
+    /**
+     * Removes an org from storage, the cache and the index
+     *
+     * @param uuid the UUID of the org
+     */
+    public void remove(String uuid) throws IOException {
+        invalidate(uuid);
+        FileUtils.deleteDirectory(new File(rootDir, uuid));
+        index.remove(uuid);
+
+        Logger.d("Removed org " + uuid);
+    }
+
+    /**
+     * Removes all orgs from storage, the cache and the index, e.g. when the user logs out
+     */
+    public void removeAll() throws IOException {
+        File[] dirs = rootDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (dir.isDirectory()) {
+                remove(dir.getName());
+            }
+        }
+    }
+
     public void clearCache() {
-        cache.clear();
+        synchronized (cache) {
+            cache.clear();
+            cachedFlows = 0;
+            generation++;
+        }
+        index.reset();
+    }
+
+    /**
+     * Gets the number of cached orgs
+     */
+    int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Gets the number of flows held by cached orgs
+     */
+    int getCachedFlows() {
+        synchronized (cache) {
+            return cachedFlows;
+        }
+    }
+
+    /**
+     * Adds an org to the cache, evicting the least recently used orgs if we're over our limit. The most
+     * recently used org is always kept even if it is over the limit by itself.
+     */
+    private void put(Org org) {
+        Cached entry = new Cached(org);
+        cache.put(org.getUuid(), entry);
+        cachedFlows += entry.weight;
+
+        Iterator<Cached> eldest = cache.values().iterator();
+        while (cachedFlows > maxCachedFlows && cache.size() > 1) {
+            Cached evicted = eldest.next();
+            eldest.remove();
+            cachedFlows -= evicted.weight;
+
+            Logger.d("Evicted cached org " + evicted.org.getUuid());
+        }
+    }
+
+    /**
+     * A cached org with its weight at the time it was cached
+     */
+    private static class Cached {
+        final Org org;
+        final int weight;
+
+        Cached(Org org) {
+            this.org = org;
+            this.weight = 1 + org.getFlows().size();
+        }
     }
 }
@@ -0,0 +1,86 @@
+package io.rapidpro.surveyor.data;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.zip.CRC32;
+
+/**
+ * Lightweight summary of an org kept in the org index, so that screens which only need a name or
+ * counts don't have to load the org itself
+ */
+public class OrgSummary {
+
+    private String uuid;
+
+    private String name;
+
+    @SerializedName("flow_count")
+    private int flowCount;
+
+    @SerializedName("pending_count")
+    private int pendingCount;
+
+    @SerializedName("has_assets")
+    private boolean hasAssets;
+
+    @SerializedName("assets_version")
+    private String assetsVersion;
+
+    OrgSummary(String uuid) {
+        this.uuid = uuid;
+    }
+
+    /**
+     * Updates this summary from the given org
+     *
+     * @param org the org
+     */
+    void update(Org org) {
+        this.name = org.getName();
+        this.flowCount = org.getFlows().size();
+        this.hasAssets = org.hasAssets();
+        this.assetsVersion = versionOf(org);
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFlowCount() {
+        return flowCount;
+    }
+
+    /**
+     * Gets the number of completed submissions waiting to be sent
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    void setPendingCount(int pendingCount) {
+        this.pendingCount = Math.max(pendingCount, 0);
+    }
+
+    public boolean hasAssets() {
+        return hasAssets;
+    }
+
+    /**
+     * Gets a version of the org's assets which changes whenever any flow is added, removed or revised
+     */
+    public String getAssetsVersion() {
+        return assetsVersion;
+    }
+
+    private static String versionOf(Org org) {
+        CRC32 crc = new CRC32();
+        for (Flow flow : org.getFlows()) {
+            crc.update((flow.getUuid() + ":" + flow.getRevision() + ";").getBytes());
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -2,11 +2,9 @@ package io.rapidpro.surveyor.data;
 
 import android.net.Uri;
 
-import com.nyaruka.goflow.mobile.Event;
-import com.nyaruka.goflow.mobile.Modifier;
-
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.ReversedLinesFileReader;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.BufferedWriter;
@@ -16,39 +14,58 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.SurveyorApplication;
 import io.rapidpro.surveyor.engine.EngineException;
 import io.rapidpro.surveyor.engine.Session;
+import io.rapidpro.surveyor.engine.Sprint;
 import io.rapidpro.surveyor.net.TembaException;
 import io.rapidpro.surveyor.net.requests.SubmissionPayload;
+import io.rapidpro.surveyor.utils.DurableFile;
 import io.rapidpro.surveyor.utils.RawJson;
 import io.rapidpro.surveyor.utils.SurveyUtils;
 
 public class Submission {
 
-    private static final String SESSION_FILE = "session.json";
-    private static final String MODIFIERS_FILE = "modifiers.jsonl";
-    private static final String EVENTS_FILE = "events.jsonl";
-    private static final String COMPLETION_FILE = ".completed";
-    private static final String MEDIA_DIR = "media";
+    static final String SESSION_FILE = "session.json";
+    static final String MODIFIERS_FILE = "modifiers.jsonl";
+    static final String EVENTS_FILE = "events.jsonl";
+    static final String COMPLETION_FILE = ".completed";
+    static final String MEDIA_DIR = "media";
+    static final String MEDIA_REFS_FILE = "media.refs";
 
     private Org org;
     private File directory;
 
+    // set if this submission is stored as a single file rather than a directory
+    private SubmissionContainer container;
+
+    // set if this submission was created or loaded by a service which wants to know about changes, which
+    // is notified through whichever service has since replaced it
+    private SubmissionService service;
+
     /**
-     * Creates a new submission for the given org in the given directory
+     * Creates a new submission for the given org in the given directory or container file
      *
      * @param org       the org
-     * @param directory the directory
+     * @param directory the directory or container file
      */
     public Submission(Org org, File directory) {
         this.org = org;
         this.directory = directory;
+
+        if (SubmissionContainer.isContainer(directory)) {
+            this.container = new SubmissionContainer(directory);
+        }
+    }
+
+    Submission(Org org, File directory, SubmissionService service) {
+        this(org, directory);
+        this.service = service;
     }
 
     /**
@@ -57,7 +74,7 @@ public class Submission {
      * @return the UUID
      */
     public String getUuid() {
-        return directory.getName();
+        return container != null ? container.getUuid() : directory.getName();
     }
 
     /**
@@ -70,7 +87,7 @@ public class Submission {
     }
 
     /**
-     * Get's the directory this submission is stored in
+     * Get's the directory this submission is stored in, or its file if it's a single file submission
      *
      * @return the directory
      */
@@ -93,6 +110,9 @@ public class Submission {
      * @return true if complete
      */
     public boolean isCompleted() {
+        if (container != null) {
+            return container.isSealed();
+        }
         return new File(directory, COMPLETION_FILE).exists();
     }
 
@@ -102,45 +122,131 @@ public class Submission {
      * @param session the current session
      */
     public void saveSession(Session session) throws IOException, EngineException {
-        FileUtils.writeStringToFile(new File(directory, SESSION_FILE), session.toJSON());
+        saveSession(session.toJSON());
+    }
+
+    /**
+     * Saves the current session which has already been serialized
+     *
+     * @param sessionJSON the current session as JSON
+     */
+    public void saveSession(String sessionJSON) throws IOException {
+        if (container != null) {
+            container.append(SubmissionContainer.SESSION, sessionJSON);
+            return;
+        }
+        DurableFile.write(new File(directory, SESSION_FILE), sessionJSON);
     }
 
     /**
-     * Saves new modifiers to this submission
+     * Saves new modifiers from an engine sprint to this submission
      *
-     * @param modifiers the modifiers to save
+     * @param sprint the sprint whose modifiers should be saved
      */
-    public void saveNewModifiers(List<Modifier> modifiers) throws IOException {
+    public void saveNewModifiers(Sprint sprint) throws IOException {
+        if (container != null) {
+            List<String> payloads = new ArrayList<>(sprint.getModifierCount());
+            for (int m = 0; m < sprint.getModifierCount(); m++) {
+                payloads.add(sprint.getModifierPayload(m));
+            }
+            container.append(SubmissionContainer.MODIFIER, payloads);
+            return;
+        }
+
         File file = new File(directory, MODIFIERS_FILE);
 
         BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
 
-        for (Modifier mod : modifiers) {
-            writer.write(mod.payload());
+        for (int m = 0; m < sprint.getModifierCount(); m++) {
+            writer.write(sprint.getModifierPayload(m));
             writer.newLine();
         }
 
         writer.close();
     }
 
+    /**
+     * Saves new events from an engine sprint to this submission
+     *
+     * @param sprint the sprint whose events should be saved
+     */
+    public void saveNewEvents(Sprint sprint) throws IOException {
+        List<String> payloads = new ArrayList<>(sprint.getEventCount());
+        for (int e = 0; e < sprint.getEventCount(); e++) {
+            payloads.add(sprint.getEventPayload(e));
+        }
+        saveNewEvents(payloads);
+    }
+
     /**
      * Saves new events to this submission
      *
-     * @param events the events to save
+     * @param payloads the JSON payloads of the events
      */
-    public void saveNewEvents(List<Event> events) throws IOException {
+    public void saveNewEvents(List<String> payloads) throws IOException {
+        if (container != null) {
+            container.append(SubmissionContainer.EVENT, payloads);
+            return;
+        }
+
         File file = new File(directory, EVENTS_FILE);
 
         BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
 
-        for (Event event : events) {
-            writer.write(event.payload());
+        for (String payload : payloads) {
+            writer.write(payload);
             writer.newLine();
         }
 
         writer.close();
     }
 
+    /**
+     * Reads the last saved session
+     *
+     * @return the session JSON or null if it was never saved
+     */
+    public String readSession() throws IOException {
+        if (container != null) {
+            return container.readSession();
+        }
+
+        File file = new File(directory, SESSION_FILE);
+        return file.exists() ? DurableFile.read(file) : null;
+    }
+
+    /**
+     * Reads the most recent events saved to this submission, without reading any before them, so that
+     * the cost doesn't grow with the length of the session
+     *
+     * @param max the maximum number of events to read
+     * @return the event payloads in the order they were saved
+     */
+    public List<String> readRecentEvents(int max) throws IOException {
+        if (container != null) {
+            return container.readLast(SubmissionContainer.EVENT, max);
+        }
+
+        File file = new File(directory, EVENTS_FILE);
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+
+        LinkedList<String> events = new LinkedList<>();
+        ReversedLinesFileReader reader = new ReversedLinesFileReader(file, 4096, "UTF-8");
+        try {
+            String line;
+            while (events.size() < max && (line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    events.addFirst(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
     /**
      * Saves a new media file to this submission
      *
@@ -149,9 +255,9 @@ public class Submission {
      * @return the URI of the saved file
      */
     public Uri saveMedia(byte[] data, String extension) throws IOException {
-        File file = new File(getMediaDirectory(), UUID.randomUUID().toString() + "." + extension);
-        FileUtils.writeByteArrayToFile(file, data);
-        return SurveyorApplication.get().getUriForFile(file);
+        File blob = getMediaStore().add(data, extension);
+        addMediaRef(blob);
+        return SurveyorApplication.get().getUriForFile(blob);
     }
 
     /**
@@ -162,16 +268,61 @@ public class Submission {
      */
     public Uri saveMedia(File src) throws IOException {
         String extension = FilenameUtils.getExtension(src.getName());
-        File file = new File(getMediaDirectory(), UUID.randomUUID().toString() + "." + extension);
-        FileUtils.copyFile(src, file);
-        return SurveyorApplication.get().getUriForFile(file);
+        File blob = getMediaStore().add(src, extension);
+        addMediaRef(blob);
+        return SurveyorApplication.get().getUriForFile(blob);
+    }
+
+    /**
+     * Gets the names of the media blobs referenced by this submission
+     *
+     * @return the blob names
+     */
+    public List<String> getMediaRefs() throws IOException {
+        if (container != null) {
+            return container.read(SubmissionContainer.MEDIA_REF);
+        }
+
+        File file = new File(directory, MEDIA_REFS_FILE);
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        return FileUtils.readLines(file);
+    }
+
+    private void addMediaRef(File blob) throws IOException {
+        if (container != null) {
+            container.append(SubmissionContainer.MEDIA_REF, blob.getName());
+            return;
+        }
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, MEDIA_REFS_FILE), true));
+        writer.write(blob.getName());
+        writer.newLine();
+        writer.close();
+    }
+
+    private MediaBlobStore getMediaStore() {
+        if (service != null) {
+            return service.getMediaStore();
+        }
+        return SurveyorApplication.get().getSubmissionService().getMediaStore();
     }
 
     /**
      * Marks this submission as completed
      */
     public void complete() throws IOException {
-        FileUtils.writeStringToFile(new File(directory, COMPLETION_FILE), "");
+        if (container != null) {
+            container.seal();
+            directory = container.getFile();
+        } else {
+            FileUtils.writeStringToFile(new File(directory, COMPLETION_FILE), "");
+        }
+
+        if (service != null) {
+            service.current().onCompleted(this);
+        }
     }
 
     /**
@@ -179,7 +330,27 @@ public class Submission {
      */
     public void delete() {
         try {
-            FileUtils.deleteDirectory(directory);
+            boolean wasCompleted = isCompleted();
+
+            MediaBlobStore store = getMediaStore();
+            store.beginBatch();
+            try {
+                for (String ref : getMediaRefs()) {
+                    store.release(ref);
+                }
+            } finally {
+                store.endBatch();
+            }
+
+            if (container != null) {
+                FileUtils.forceDelete(directory);
+            } else {
+                FileUtils.deleteDirectory(directory);
+            }
+
+            if (service != null) {
+                service.current().onDeleted(this, wasCompleted);
+            }
             directory = null;
         } catch (IOException e) {
             Logger.e("Unable to delete submission " + directory.getAbsolutePath(), e);
@@ -189,9 +360,32 @@ public class Submission {
     public void submit() throws IOException, TembaException {
         Logger.d("Submitting submission " + getUuid() + "...");
 
-        String session = FileUtils.readFileToString(new File(directory, SESSION_FILE));
-        List<String> modifiers = FileUtils.readLines(new File(directory, MODIFIERS_FILE));
-        List<String> events = FileUtils.readLines(new File(directory, EVENTS_FILE));
+        if (service != null) {
+            service.current().onSubmitting(this);
+        }
+
+        // write the media index once for all uploads and releases
+        MediaBlobStore store = getMediaStore();
+        store.beginBatch();
+        try {
+            send();
+        } finally {
+            store.endBatch();
+        }
+    }
+
+    private void send() throws IOException, TembaException {
+        String session;
+        List<String> modifiers, events;
+        if (container != null) {
+            session = container.readSession();
+            modifiers = container.read(SubmissionContainer.MODIFIER);
+            events = container.read(SubmissionContainer.EVENT);
+        } else {
+            session = DurableFile.read(new File(directory, SESSION_FILE));
+            modifiers = FileUtils.readLines(new File(directory, MODIFIERS_FILE));
+            events = FileUtils.readLines(new File(directory, EVENTS_FILE));
+        }
 
         // upload all media and get a new remote URL for each item
         Map<Uri, String> mediaUrls = uploadMedia();
@@ -233,25 +427,45 @@ public class Submission {
      * @return the map of local URIs to remote URLs
      */
     private Map<Uri, String> uploadMedia() throws IOException, TembaException {
-        if (!hasMedia()) {
-            return Collections.emptyMap();
-        }
-
         SurveyorApplication app = SurveyorApplication.get();
         Map<Uri, String> uploads = new HashMap<>();
 
-        for (File mediaFile : getMediaDirectory().listFiles()) {
-            Uri mediaUri = app.getUriForFile(mediaFile);
-            String newUrl = app.getTembaService().uploadMedia(org.getToken(), mediaUri);
+        // media saved by older versions lives in the submission's own media directory
+        if (hasMedia()) {
+            for (File mediaFile : getMediaDirectory().listFiles()) {
+                Uri mediaUri = app.getUriForFile(mediaFile);
+                String newUrl = app.getTembaService().uploadMedia(org.getToken(), mediaUri);
 
-            uploads.put(mediaUri, newUrl);
+                uploads.put(mediaUri, newUrl);
+
+                Logger.d("Uploaded media " + mediaUri + " to " + newUrl);
+            }
+        }
 
-            Logger.d("Uploaded media " + mediaUri + " to " + newUrl);
+        // shared blobs only need uploading once per org
+        MediaBlobStore store = getMediaStore();
+        for (String ref : getMediaRefs()) {
+            Uri mediaUri = app.getUriForFile(new File(store.getDirectory(), ref));
+            if (uploads.containsKey(mediaUri)) {
+                continue;
+            }
+
+            String newUrl = store.getUploadedUrl(org.getUuid(), ref);
+            if (newUrl == null) {
+                newUrl = app.getTembaService().uploadMedia(org.getToken(), mediaUri);
+                store.setUploadedUrl(org.getUuid(), ref, newUrl);
+
+                Logger.d("Uploaded media " + mediaUri + " to " + newUrl);
+            } else {
+                Logger.d("Reusing previous upload of media " + mediaUri + " at " + newUrl);
+            }
+
+            uploads.put(mediaUri, newUrl);
         }
         return uploads;
     }
 
     private boolean hasMedia() {
-        return new File(directory, MEDIA_DIR).exists();
+        return container == null && new File(directory, MEDIA_DIR).exists();
     }
 }
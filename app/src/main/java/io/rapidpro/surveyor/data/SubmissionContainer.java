@@ -0,0 +1,558 @@
+package io.rapidpro.surveyor.data;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.utils.DurableFile;
+
+/**
+ * A submission stored as a single file rather than as a directory of files, to save inodes and
+ * directory listings on FAT formatted SD cards. The file is an append-only log of records, each a type
+ * byte, a length and a UTF-8 payload. Completing the submission appends a trailer which indexes the
+ * records so that readers can seek straight to them, followed by a fixed size footer, and then
+ * renames the file from .part to .sub, so checking whether a submission is complete doesn't require
+ * opening it at all.
+ * <p>
+ * The session is appended each time it's saved and the last copy wins. Once earlier copies make up
+ * half of a large log it's rewritten without them, and sealing does the same. Record offsets are kept
+ * in memory as records are appended, so the log is only scanned when a container is first opened. If
+ * the app dies part way through an append, the partial record is discarded on the next append.
+ */
+public class SubmissionContainer {
+
+    public static final String EXTENSION = ".sub";
+    public static final String PARTIAL_EXTENSION = ".part";
+    private static final String COMPACT_EXTENSION = ".compact";
+
+    public static final byte SESSION = 'S';
+    public static final byte MODIFIER = 'M';
+    public static final byte EVENT = 'E';
+    public static final byte MEDIA_REF = 'R';
+    private static final byte TRAILER = 'T';
+
+    private static final int MAGIC = 0x53565343; // SVSC
+    private static final int FOOTER_MAGIC = 0x53565345; // SVSE
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int FOOTER_SIZE = 12;
+
+    /**
+     * How many bytes of earlier session copies an unsealed log can have before it's compacted
+     */
+    private static final long COMPACT_THRESHOLD = 128 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File file;
+
+    // offsets of the records, which are only valid while the file is the length they say it is
+    private Index index;
+
+    /**
+     * Opens an existing container
+     *
+     * @param file the container file
+     */
+    public SubmissionContainer(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a new empty container
+     *
+     * @param directory the directory to create it in
+     * @param uuid      the submission UUID
+     * @return the container
+     */
+    public static SubmissionContainer create(File directory, String uuid) throws IOException {
+        return create(new File(directory, uuid + PARTIAL_EXTENSION));
+    }
+
+    private static SubmissionContainer create(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        } finally {
+            out.close();
+        }
+
+        SubmissionContainer container = new SubmissionContainer(file);
+        container.index = new Index();
+        container.index.end = HEADER_SIZE;
+        return container;
+    }
+
+    /**
+     * Converts a submission directory to a container next to it. The directory itself is left as is.
+     *
+     * @param directory the submission directory
+     * @return the new container
+     */
+    public static SubmissionContainer migrate(File directory) throws IOException {
+        boolean completed = new File(directory, Submission.COMPLETION_FILE).exists();
+        File target = new File(directory.getParentFile(), directory.getName() + (completed ? EXTENSION : PARTIAL_EXTENSION));
+        File temp = new File(directory.getParentFile(), directory.getName() + ".tmp");
+
+        SubmissionContainer container = create(temp);
+        container.append(MODIFIER, readLines(new File(directory, Submission.MODIFIERS_FILE)));
+        container.append(EVENT, readLines(new File(directory, Submission.EVENTS_FILE)));
+        container.append(MEDIA_REF, readLines(new File(directory, Submission.MEDIA_REFS_FILE)));
+
+        File session = new File(directory, Submission.SESSION_FILE);
+        if (session.exists()) {
+            container.append(SESSION, DurableFile.read(session));
+        }
+        if (completed) {
+            container.writeTrailer();
+        }
+
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Unable to move container to " + target.getPath());
+        }
+        return new SubmissionContainer(target);
+    }
+
+    /**
+     * Gets whether the given file is a container, based on its name
+     */
+    public static boolean isContainer(File file) {
+        return file.getName().endsWith(EXTENSION) || file.getName().endsWith(PARTIAL_EXTENSION);
+    }
+
+    /**
+     * Gets the file of this container, which changes when it's sealed
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the UUID of the submission in this container (i.e. the name of its file without extension)
+     *
+     * @return the UUID
+     */
+    public String getUuid() {
+        String name = file.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    /**
+     * Appends a single record
+     *
+     * @param type    the record type
+     * @param payload the payload
+     */
+    public void append(byte type, String payload) throws IOException {
+        append(type, Collections.singletonList(payload));
+    }
+
+    /**
+     * Appends records of the same type
+     *
+     * @param type     the record type
+     * @param payloads the payloads
+     */
+    public void append(byte type, List<String> payloads) throws IOException {
+        if (payloads.isEmpty()) {
+            return;
+        }
+
+        Index index = isSealed() ? null : appendIndex();
+        if (index == null || index.trailed) {
+            throw new IOException("Can't append to completed submission " + file.getName());
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+            for (String payload : payloads) {
+                byte[] bytes = payload.getBytes(UTF8);
+                writeRecord(out, type, bytes);
+                index.add(type, index.end, 5 + bytes.length);
+            }
+            out.close();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(out);
+            this.index = null;
+            throw e;
+        }
+
+        if (index.needsCompaction()) {
+            compact(false);
+        }
+    }
+
+    /**
+     * Completes this container by appending the trailer index and footer, and renaming it
+     */
+    public void seal() throws IOException {
+        if (isSealed()) {
+            return;
+        }
+
+        // we may have died after writing the trailer but before renaming
+        if (!appendIndex().trailed) {
+            compact(true);
+        }
+
+        File sealed = new File(file.getParentFile(), getUuid() + EXTENSION);
+        if (!file.renameTo(sealed)) {
+            throw new IOException("Unable to rename " + file.getPath() + " to " + sealed.getName());
+        }
+        file = sealed;
+    }
+
+    /**
+     * Rewrites this container with only the last copy of the session, and optionally with the trailer
+     * appended. The rewritten file replaces this one under the same name, so if we die part way through,
+     * this one is left as it was.
+     */
+    private void compact(boolean withTrailer) throws IOException {
+        Index index = appendIndex();
+        File temp = new File(file.getParentFile(), getUuid() + COMPACT_EXTENSION);
+
+        SubmissionContainer compacted;
+        try {
+            compacted = create(temp);
+            compacted.append(MODIFIER, read(index.modifiers));
+            compacted.append(EVENT, read(index.events));
+            compacted.append(MEDIA_REF, read(index.mediaRefs));
+            if (index.session >= 0) {
+                compacted.append(SESSION, read(Collections.singletonList(index.session)));
+            }
+            if (withTrailer) {
+                compacted.writeTrailer();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        long before = file.length();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to replace " + file.getPath() + " with compacted copy");
+        }
+        this.index = compacted.index;
+
+        Logger.d("Compacted " + file.getName() + " from " + before + " to " + file.length() + " bytes");
+    }
+
+    private void writeTrailer() throws IOException {
+        Index index = appendIndex();
+        long trailerOffset = index.end;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream trailer = new DataOutputStream(buffer);
+        trailer.writeLong(index.session);
+        writeOffsets(trailer, index.modifiers);
+        writeOffsets(trailer, index.events);
+        writeOffsets(trailer, index.mediaRefs);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+            writeRecord(out, TRAILER, buffer.toByteArray());
+            out.writeLong(trailerOffset);
+            out.writeInt(FOOTER_MAGIC);
+        } finally {
+            out.close();
+        }
+
+        index.trailed = true;
+        index.end = file.length();
+    }
+
+    /**
+     * Gets whether this container has been completed, which only requires looking at its name
+     *
+     * @return true if sealed
+     */
+    public boolean isSealed() {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * Reads the latest session
+     *
+     * @return the session JSON or null if it was never saved
+     */
+    public String readSession() throws IOException {
+        Index index = readIndex();
+        if (index.session < 0) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return readRecordAt(raf, index.session);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads all records of the given type in the order they were appended
+     *
+     * @param type the record type
+     * @return the payloads
+     */
+    public List<String> read(byte type) throws IOException {
+        return read(readIndex().offsetsOf(type));
+    }
+
+    /**
+     * Reads the last records of the given type, without reading those before them
+     *
+     * @param type the record type
+     * @param max  the maximum number of records to read
+     * @return the payloads in the order they were appended
+     */
+    public List<String> readLast(byte type, int max) throws IOException {
+        List<Long> offsets = readIndex().offsetsOf(type);
+        return read(offsets.subList(Math.max(0, offsets.size() - max), offsets.size()));
+    }
+
+    private List<String> read(List<Long> offsets) throws IOException {
+        List<String> payloads = new ArrayList<>(offsets.size());
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            for (long offset : offsets) {
+                payloads.add(readRecordAt(raf, offset));
+            }
+        } finally {
+            raf.close();
+        }
+        return payloads;
+    }
+
+    /**
+     * Deletes this container
+     */
+    public void delete() {
+        index = null;
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(new File(file.getParentFile(), getUuid() + COMPACT_EXTENSION));
+    }
+
+    /**
+     * Gets the index of records, which is read from the trailer if there is one and otherwise by scanning
+     * the log, and then kept for as long as the file isn't changed by anything else
+     */
+    private Index readIndex() throws IOException {
+        long length = file.length();
+        if (index != null && index.end == length) {
+            return index;
+        }
+
+        long trailerOffset = readTrailerOffset();
+        Index read = trailerOffset >= 0 ? readTrailer(trailerOffset) : scan();
+
+        // don't keep an index which ends before a partial record, as appending will truncate that
+        if (read.end == length) {
+            index = read;
+        }
+        return read;
+    }
+
+    /**
+     * Gets the index of records for appending, first discarding any partial record left at the end of
+     * the log by an interrupted append
+     */
+    private Index appendIndex() throws IOException {
+        Index read = readIndex();
+        if (read.end < file.length()) {
+            Logger.w("Discarding " + (file.length() - read.end) + " bytes of partial record in " + file.getName());
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(read.end);
+            } finally {
+                raf.close();
+            }
+            index = read;
+        }
+        return read;
+    }
+
+    private Index readTrailer(long trailerOffset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(trailerOffset + 5);
+            Index index = new Index();
+            index.session = raf.readLong();
+            readOffsets(raf, index.modifiers);
+            readOffsets(raf, index.events);
+            readOffsets(raf, index.mediaRefs);
+            index.end = raf.length();
+            index.trailed = true;
+            return index;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private long readTrailerOffset() {
+        long length = file.length();
+        if (length < HEADER_SIZE + FOOTER_SIZE) {
+            return -1;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(length - FOOTER_SIZE);
+                long offset = raf.readLong();
+                if (raf.readInt() != FOOTER_MAGIC || offset < HEADER_SIZE || offset > length - FOOTER_SIZE - 5) {
+                    return -1;
+                }
+
+                // check the footer really points at a trailer which ends where it begins, in case a
+                // payload just happens to end with the magic
+                raf.seek(offset);
+                return raf.readByte() == TRAILER && offset + 5 + raf.readInt() == length - FOOTER_SIZE ? offset : -1;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Logger.e("Unable to read footer of " + file.getName(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Scans the log for complete records, ignoring anything after the last complete record
+     */
+    private Index scan() throws IOException {
+        Index index = new Index();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a submission container");
+            }
+            in.readByte();
+
+            long offset = HEADER_SIZE;
+            long length = file.length();
+            while (offset + 5 <= length) {
+                byte type = in.readByte();
+                int size = in.readInt();
+                if (type == TRAILER || offset + 5 + size > length) {
+                    break;
+                }
+
+                index.add(type, offset, 5 + size);
+
+                skipFully(in, size);
+                offset += 5 + size;
+            }
+        } catch (EOFException e) {
+            throw new IOException(file.getName() + " is truncated", e);
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    private static String readRecordAt(RandomAccessFile raf, long offset) throws IOException {
+        raf.seek(offset + 1);
+        byte[] payload = new byte[raf.readInt()];
+        raf.readFully(payload);
+        return new String(payload, UTF8);
+    }
+
+    private static void writeOffsets(DataOutputStream out, List<Long> offsets) throws IOException {
+        out.writeInt(offsets.size());
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+    }
+
+    private static void readOffsets(RandomAccessFile raf, List<Long> offsets) throws IOException {
+        int count = raf.readInt();
+        for (int o = 0; o < count; o++) {
+            offsets.add(raf.readLong());
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return file.exists() ? FileUtils.readLines(file, UTF8) : Collections.<String>emptyList();
+    }
+
+    private static class Index {
+        private long session = -1;
+        private int sessionSize;
+        private long superseded;
+        private List<Long> modifiers = new ArrayList<>();
+        private List<Long> events = new ArrayList<>();
+        private List<Long> mediaRefs = new ArrayList<>();
+        private long end = HEADER_SIZE;
+        private boolean trailed;
+
+        /**
+         * Adds a record at the end of the log
+         */
+        private void add(byte type, long offset, int size) {
+            if (type == SESSION) {
+                if (session >= 0) {
+                    superseded += sessionSize;
+                }
+                session = offset;
+                sessionSize = size;
+            } else if (type == MODIFIER) {
+                modifiers.add(offset);
+            } else if (type == EVENT) {
+                events.add(offset);
+            } else if (type == MEDIA_REF) {
+                mediaRefs.add(offset);
+            }
+            end = offset + size;
+        }
+
+        /**
+         * Whether earlier copies of the session make up enough of the log that it's worth rewriting
+         */
+        private boolean needsCompaction() {
+            return superseded >= COMPACT_THRESHOLD && superseded * 2 >= end;
+        }
+
+        private List<Long> offsetsOf(byte type) {
+            return type == MODIFIER ? modifiers : (type == EVENT ? events : mediaRefs);
+        }
+    }
+}
@@ -7,20 +7,56 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import io.rapidpro.surveyor.Logger;
 import io.rapidpro.surveyor.utils.SurveyUtils;
 
 /**
- * Directory based service for flow session submissions
+ * Directory based service for flow session submissions. Each submission is either a directory of files
+ * or, if single file submissions are enabled, a {@link SubmissionContainer}.
  */
 public class SubmissionService {
 
+    /**
+     * Directory inside the root directory where media blobs are stored
+     */
+    private static final String MEDIA_DIR = ".media";
+
+    /**
+     * Held whilst submissions are being sent or migrated, so that a submission is never migrated part
+     * way through being sent. Static as the service is recreated when storage settings change.
+     */
+    private static final Object TRANSFER_LOCK = new Object();
+
     private File rootDir;
 
-    private static FileFilter DIR_FILTER = DirectoryFileFilter.INSTANCE;
+    private MediaBlobStore mediaStore;
+
+    private boolean singleFile;
+
+    private OrgIndex orgIndex;
+
+    private volatile SubmissionService replacement;
+
+    static FileFilter DIR_FILTER = DirectoryFileFilter.INSTANCE;
+
+    static FileFilter TEMP_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().endsWith(".tmp");
+        }
+    };
+
+    static FileFilter SUBMISSION_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.isDirectory() || SubmissionContainer.isContainer(file);
+        }
+    };
 
     /**
      * Creates a new submission service
@@ -29,10 +65,56 @@ public class SubmissionService {
      */
     public SubmissionService(File rootDir) {
         this.rootDir = rootDir;
+        this.mediaStore = MediaBlobStore.forDirectory(new File(rootDir, MEDIA_DIR));
 
         Logger.d("SubmissionService created for directory " + this.rootDir.getAbsolutePath());
     }
 
+    /**
+     * Sets whether new submissions are stored as single files rather than directories
+     *
+     * @param singleFile true to use single files
+     */
+    public void setSingleFile(boolean singleFile) {
+        this.singleFile = singleFile;
+    }
+
+    /**
+     * Sets the org index whose pending counts should be kept up to date
+     *
+     * @param orgIndex the org index
+     */
+    public void setOrgIndex(OrgIndex orgIndex) {
+        this.orgIndex = orgIndex;
+    }
+
+    /**
+     * Marks this service as replaced by another, e.g. when storage settings change, so that submissions
+     * loaded by this service notify the new one of changes
+     *
+     * @param replacement the new service
+     */
+    public void replaceWith(SubmissionService replacement) {
+        this.replacement = replacement;
+    }
+
+    /**
+     * Releases any resources held by this service, e.g. once it has been replaced by another
+     */
+    public void close() {
+    }
+
+    /**
+     * Gets the service which has replaced this one, or this service if it hasn't been replaced
+     */
+    SubmissionService current() {
+        SubmissionService current = this;
+        while (current.replacement != null) {
+            current = current.replacement;
+        }
+        return current;
+    }
+
     /**
      * Creates a new submission for the given flow in the given org
      *
@@ -41,23 +123,60 @@ public class SubmissionService {
      * @return the new submission
      */
     public Submission newSubmission(Org org, Flow flow) throws IOException {
-        File flowDir = SurveyUtils.mkdir(rootDir, org.getUuid(), flow.getUuid());
-
         // blow away any existing incomplete submissions for this flow
         discardIncomplete(org, flow);
 
+        return create(org, flow);
+    }
+
+    /**
+     * Gets an incomplete submission for the given flow so that it can be resumed, e.g. after the app
+     * was killed part way through it
+     *
+     * @param org  the org
+     * @param flow the flow
+     * @param uuid the submission UUID
+     * @return the submission or null if it no longer exists or has been completed
+     */
+    public Submission getInProgress(Org org, Flow flow, String uuid) {
+        File flowDir = new File(new File(rootDir, org.getUuid()), flow.getUuid());
+
+        File[] candidates = {new File(flowDir, uuid), new File(flowDir, uuid + SubmissionContainer.PARTIAL_EXTENSION)};
+        for (File candidate : candidates) {
+            if (candidate.exists()) {
+                Submission submission = new Submission(org, candidate, this);
+                return submission.isCompleted() ? null : submission;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the storage for a new submission
+     */
+    Submission create(Org org, Flow flow) throws IOException {
+        File flowDir = SurveyUtils.mkdir(rootDir, org.getUuid(), flow.getUuid());
+
+        if (singleFile) {
+            File file = SubmissionContainer.create(flowDir, UUID.randomUUID().toString()).getFile();
+
+            Logger.d("Creating new submission in " + file.getPath());
+
+            return new Submission(org, file, this);
+        }
+
         File directory = new File(flowDir, UUID.randomUUID().toString());
         directory.mkdirs();
 
         Logger.d("Creating new submission in " + directory.getPath());
 
-        return new Submission(org, directory);
+        return new Submission(org, directory, this);
     }
 
-    private void discardIncomplete(Org org, Flow flow) throws IOException {
+    void discardIncomplete(Org org, Flow flow) throws IOException {
         for (Submission sub : getAll(org, flow)) {
             if (!sub.isCompleted()) {
-                FileUtils.deleteDirectory(sub.getDirectory());
+                sub.delete();
             }
         }
     }
@@ -81,17 +200,17 @@ public class SubmissionService {
         File orgDir = new File(rootDir, org.getUuid());
         File flowDir = new File(orgDir, flow.getUuid());
         if (flowDir.exists()) {
-            for (File file : flowDir.listFiles(DIR_FILTER)) {
-                all.add(new Submission(org, file));
+            for (File file : flowDir.listFiles(SUBMISSION_FILTER)) {
+                all.add(new Submission(org, file, this));
             }
         }
         return all;
     }
 
     public boolean hasSubmissions() {
-        for (File orgDir : rootDir.listFiles(DIR_FILTER)) {
+        for (File orgDir : getOrgDirectories()) {
             for (File flowDir : orgDir.listFiles(DIR_FILTER)) {
-                File[] subDirs = flowDir.listFiles(DIR_FILTER);
+                File[] subDirs = flowDir.listFiles(SUBMISSION_FILTER);
                 if (subDirs != null && subDirs.length > 0) {
                     return true;
                 }
@@ -138,11 +257,176 @@ public class SubmissionService {
         return getCompleted(org, flow).size();
     }
 
+    /**
+     * Return the counts of completed submissions for each flow in the given org, e.g. for showing in a
+     * flow list without counting each row separately
+     *
+     * @param org the org
+     * @return the map of flow UUIDs to counts, without flows that have no completed submissions
+     */
+    public Map<String, Integer> getCompletedCounts(Org org) {
+        Map<String, Integer> counts = new HashMap<>();
+
+        // list the org directory once rather than probing a directory for every flow
+        File[] flowDirs = new File(rootDir, org.getUuid()).listFiles(DIR_FILTER);
+        if (flowDirs == null) {
+            return counts;
+        }
+
+        for (File flowDir : flowDirs) {
+            File[] files = flowDir.listFiles(SUBMISSION_FILTER);
+            if (files == null) {
+                continue;
+            }
+
+            int count = 0;
+            for (File file : files) {
+                if (new Submission(org, file, this).isCompleted()) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                counts.put(flowDir.getName(), count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the store for submission media
+     *
+     * @return the media store
+     */
+    public MediaBlobStore getMediaStore() {
+        return mediaStore;
+    }
+
+    /**
+     * Collects media garbage if it hasn't been done recently. Garbage is only left behind by crashes so
+     * there's no need to walk all submissions every time.
+     *
+     * @return the number of media blobs deleted
+     */
+    public int collectMediaGarbageIfDue() throws IOException {
+        return mediaStore.isCollectionDue() ? collectMediaGarbage() : 0;
+    }
+
+    /**
+     * Recounts media references across all submissions and deletes any media no longer referenced
+     *
+     * @return the number of media blobs deleted
+     */
+    public int collectMediaGarbage() throws IOException {
+        Map<String, Integer> refCounts = new HashMap<>();
+
+        for (File orgDir : getOrgDirectories()) {
+            for (File flowDir : orgDir.listFiles(DIR_FILTER)) {
+                for (File subDir : flowDir.listFiles(SUBMISSION_FILTER)) {
+                    for (String ref : new Submission(null, subDir).getMediaRefs()) {
+                        Integer count = refCounts.get(ref);
+                        refCounts.put(ref, count != null ? count + 1 : 1);
+                    }
+                }
+            }
+        }
+
+        return mediaStore.collectGarbage(refCounts);
+    }
+
+    /**
+     * Converts completed directory submissions to single files. Submissions with media saved by older
+     * versions in their own media directory are left as they are.
+     *
+     * @return the number of submissions converted
+     */
+    public int migrateToSingleFiles() throws IOException {
+        int migrated = 0;
+
+        synchronized (TRANSFER_LOCK) {
+            for (File orgDir : getOrgDirectories()) {
+                for (File flowDir : orgDir.listFiles(DIR_FILTER)) {
+                    // remove containers left half written by an earlier migration that was interrupted
+                    for (File temp : flowDir.listFiles(TEMP_FILTER)) {
+                        FileUtils.deleteQuietly(temp);
+                    }
+
+                    for (File subDir : flowDir.listFiles(DIR_FILTER)) {
+                        if (!new File(subDir, Submission.COMPLETION_FILE).exists() || new File(subDir, Submission.MEDIA_DIR).exists()) {
+                            continue;
+                        }
+
+                        // if we were interrupted after the container was written, it's safe to just finish up
+                        if (!new File(flowDir, subDir.getName() + SubmissionContainer.EXTENSION).exists()) {
+                            SubmissionContainer.migrate(subDir);
+                        }
+                        FileUtils.deleteDirectory(subDir);
+                        migrated++;
+                    }
+                }
+            }
+        }
+
+        Logger.d("Migrated " + migrated + " submissions to single files");
+        return migrated;
+    }
+
+    /**
+     * Gets the lock which must be held whilst sending submissions
+     *
+     * @return the lock
+     */
+    public Object getTransferLock() {
+        return TRANSFER_LOCK;
+    }
+
+    /**
+     * Called when a submission has been completed
+     */
+    void onCompleted(Submission submission) {
+        if (orgIndex != null && submission.getOrg() != null) {
+            orgIndex.adjustPending(submission.getOrg().getUuid(), 1);
+        }
+    }
+
+    /**
+     * Called before a submission is sent to the server
+     */
+    void onSubmitting(Submission submission) {
+    }
+
+    /**
+     * Called when a submission has been deleted, e.g. after being sent
+     */
+    void onDeleted(Submission submission, boolean wasCompleted) {
+        if (orgIndex != null && wasCompleted && submission.getOrg() != null) {
+            orgIndex.adjustPending(submission.getOrg().getUuid(), -1);
+        }
+    }
+
+    File getRootDir() {
+        return rootDir;
+    }
+
+    List<File> getOrgDirectories() {
+        List<File> orgDirs = new ArrayList<>();
+        for (File dir : rootDir.listFiles(DIR_FILTER)) {
+            if (!dir.getName().equals(MEDIA_DIR)) {
+                orgDirs.add(dir);
+            }
+        }
+        return orgDirs;
+    }
+
     /**
      * Clear all submissions
      */
     public void clearAll() throws IOException {
         FileUtils.deleteDirectory(rootDir);
         rootDir.mkdir();
+        mediaStore.reset();
+
+        if (orgIndex != null) {
+            orgIndex.clearPending();
+        }
     }
 }
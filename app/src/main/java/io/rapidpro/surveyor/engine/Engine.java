@@ -17,7 +17,9 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import io.rapidpro.surveyor.data.Org;
@@ -31,6 +33,20 @@ public class Engine {
      */
     private static Engine engine = new Engine();
 
+    /**
+     * Environments of orgs which have been used, as creating one means several calls into the native
+     * library
+     */
+    private static final Map<String, Environment> environments = new HashMap<>();
+
+    /**
+     * Spec versions which have been checked and whether they're supported. These can't change while
+     * the app is running so never need to be invalidated.
+     */
+    private static final Map<String, SpecVersionSupport> specVersions = new HashMap<>();
+
+    private static Semver currentSpecVersion;
+
     private com.nyaruka.goflow.mobile.Engine target;
 
     public static Engine getInstance() {
@@ -49,8 +65,11 @@ public class Engine {
      *
      * @return the spec version
      */
-    public static Semver currentSpecVersion() {
-        return new Semver(Mobile.currentSpecVersion(), Semver.SemverType.LOOSE);
+    public static synchronized Semver currentSpecVersion() {
+        if (currentSpecVersion == null) {
+            currentSpecVersion = new Semver(Mobile.currentSpecVersion(), Semver.SemverType.LOOSE);
+        }
+        return currentSpecVersion;
     }
 
     /**
@@ -60,12 +79,69 @@ public class Engine {
      * @return true if supported
      */
     public static boolean isSpecVersionSupported(String ver) {
-        // for a while Surveyor was creating v12 flows which don't exist anywhere else
-        if (ver.startsWith("12.")) {
-            return false;
+        return checkSpecVersion(ver) == SpecVersionSupport.SUPPORTED;
+    }
+
+    /**
+     * Checks whether the given flow spec version is supported by the flow engine, and if not whether
+     * it's too old or too new. Results are remembered so this is cheap to call for every flow.
+     *
+     * @param ver the spec version
+     * @return the support
+     */
+    public static SpecVersionSupport checkSpecVersion(String ver) {
+        synchronized (specVersions) {
+            SpecVersionSupport support = specVersions.get(ver);
+            if (support == null) {
+                // for a while Surveyor was creating v12 flows which don't exist anywhere else
+                if (!ver.startsWith("12.") && Mobile.isVersionSupported(ver)) {
+                    support = SpecVersionSupport.SUPPORTED;
+                } else if (new Semver(ver, Semver.SemverType.LOOSE).isGreaterThan(currentSpecVersion())) {
+                    support = SpecVersionSupport.TOO_NEW;
+                } else {
+                    support = SpecVersionSupport.TOO_OLD;
+                }
+                specVersions.put(ver, support);
+            }
+            return support;
+        }
+    }
+
+    /**
+     * Whether a flow spec version is supported by the flow engine
+     */
+    public enum SpecVersionSupport {
+        SUPPORTED,
+        TOO_OLD,
+        TOO_NEW
+    }
+
+    /**
+     * Gets the engine environment for the given org, creating it if necessary
+     *
+     * @param org the org
+     * @return the environment
+     */
+    public static Environment getEnvironment(Org org) {
+        synchronized (environments) {
+            Environment env = environments.get(org.getUuid());
+            if (env == null) {
+                env = createEnvironment(org);
+                environments.put(org.getUuid(), env);
+            }
+            return env;
         }
+    }
 
-        return Mobile.isVersionSupported(ver);
+    /**
+     * Forgets the engine environment for the given org, e.g. because its details have been refreshed
+     *
+     * @param org the org
+     */
+    public static void invalidateEnvironment(Org org) {
+        synchronized (environments) {
+            environments.remove(org.getUuid());
+        }
     }
 
     /**
@@ -45,8 +45,12 @@ public class LocationAsset {
 
             if (boundary.getParent() != null) {
                 LocationAsset parent = locationsByOsmid.get(boundary.getParent().getOsmID());
-                parent.getChildren().add(location);
-            } else {
+
+                // parents can come after their children, but ignore any that never arrive
+                if (parent != null) {
+                    parent.getChildren().add(location);
+                }
+            } else if (root == null) {
                 root = location;
             }
         }
@@ -0,0 +1,484 @@
+package io.rapidpro.surveyor.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A location hierarchy flattened into arrays, in breadth first order so that each location's children
+ * are contiguous, with an index of case and accent folded names and aliases for matching and
+ * autocompletion. Location 0 is the root (i.e. the country). The key index is written along with the
+ * hierarchy so that reading doesn't have to fold and sort every name again.
+ */
+public class LocationIndex {
+
+    public static final int LEVEL_STATE = 1;
+    public static final int LEVEL_DISTRICT = 2;
+    public static final int LEVEL_WARD = 3;
+
+    private static final int MAGIC = 0x53564c49; // SVLI
+    private static final int VERSION = 2;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private String[] names;
+    private String[][] aliases;
+    private int[] parents;
+    private byte[] levels;
+    private int[] firstChildren;
+    private int[] childCounts;
+
+    // folded names and aliases sorted by level and then key, and the location each belongs to
+    private String[] keys;
+    private int[] keyLocations;
+    private int[] levelKeyStarts;
+
+    private LocationIndex(String[] names, String[][] aliases, int[] parents, String[] keys, int[] keyLocations) {
+        this.names = names;
+        this.aliases = aliases;
+        this.parents = parents;
+        this.levels = computeLevels(parents);
+
+        int size = names.length;
+        firstChildren = new int[size];
+        childCounts = new int[size];
+        Arrays.fill(firstChildren, -1);
+
+        for (int l = 1; l < size; l++) {
+            int parent = parents[l];
+            if (firstChildren[parent] < 0) {
+                firstChildren[parent] = l;
+            }
+            childCounts[parent]++;
+        }
+
+        if (keys == null) {
+            keys = new String[countKeys(aliases)];
+            keyLocations = new int[keys.length];
+            foldKeys(names, aliases, keys, keyLocations);
+            sortKeys(keys, keyLocations, levels);
+        }
+        this.keys = keys;
+        this.keyLocations = keyLocations;
+
+        int maxLevel = 0;
+        for (byte level : levels) {
+            maxLevel = Math.max(maxLevel, level);
+        }
+
+        // keys are sorted by level so each level's keys are contiguous
+        levelKeyStarts = new int[maxLevel + 2];
+        Arrays.fill(levelKeyStarts, keys.length);
+        for (int k = keys.length - 1; k >= 0; k--) {
+            levelKeyStarts[levels[keyLocations[k]]] = k;
+        }
+
+        // levels without any keys start where the next level starts
+        for (int l = maxLevel; l >= 0; l--) {
+            levelKeyStarts[l] = Math.min(levelKeyStarts[l], levelKeyStarts[l + 1]);
+        }
+    }
+
+    /**
+     * Builds an index from a location tree
+     *
+     * @param root the root location
+     * @return the index
+     */
+    public static LocationIndex fromAsset(LocationAsset root) {
+        List<LocationAsset> ordered = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        ordered.add(root);
+        parents.add(-1);
+
+        for (int l = 0; l < ordered.size(); l++) {
+            List<LocationAsset> children = ordered.get(l).getChildren();
+            if (children != null) {
+                for (LocationAsset child : children) {
+                    ordered.add(child);
+                    parents.add(l);
+                }
+            }
+        }
+
+        int size = ordered.size();
+        String[] names = new String[size];
+        String[][] aliases = new String[size][];
+        int[] parentArray = new int[size];
+        for (int l = 0; l < size; l++) {
+            names[l] = ordered.get(l).getName();
+            aliases[l] = ordered.get(l).getAliases() != null ? ordered.get(l).getAliases() : new String[0];
+            parentArray[l] = parents.get(l);
+        }
+        return new LocationIndex(names, aliases, parentArray, null, null);
+    }
+
+    /**
+     * Reads an index previously written with {@link #write(OutputStream)}
+     *
+     * @param input the stream to read from, which will be closed
+     * @return the index
+     */
+    public static LocationIndex read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        try {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported location index");
+            }
+
+            int size = in.readInt();
+            String[] names = new String[size];
+            String[][] aliases = new String[size][];
+            int[] parents = new int[size];
+
+            for (int l = 0; l < size; l++) {
+                parents[l] = in.readInt();
+                names[l] = in.readUTF();
+                aliases[l] = new String[in.readUnsignedShort()];
+                for (int a = 0; a < aliases[l].length; a++) {
+                    aliases[l][a] = in.readUTF();
+                }
+            }
+
+            // older indexes don't include keys so those have to be rebuilt
+            String[] keys = null;
+            int[] keyLocations = null;
+            if (version == VERSION) {
+                keys = new String[in.readInt()];
+                keyLocations = new int[keys.length];
+                for (int k = 0; k < keys.length; k++) {
+                    keyLocations[k] = in.readInt();
+                    keys[k] = in.readUTF();
+                }
+            }
+            return new LocationIndex(names, aliases, parents, keys, keyLocations);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes this index in a compact binary form
+     *
+     * @param output the stream to write to, which will be closed
+     */
+    public void write(OutputStream output) throws IOException {
+        write(output, new Records() {
+            @Override
+            public int size() {
+                return names.length;
+            }
+
+            @Override
+            public int getParent(int location) {
+                return parents[location];
+            }
+
+            @Override
+            public String getName(int location) {
+                return names[location];
+            }
+
+            @Override
+            public String[] getAliases(int location) {
+                return aliases[location];
+            }
+        });
+    }
+
+    /**
+     * Writes an index from records that may not all be in memory, e.g. when building the hierarchy
+     * from boundaries as they're fetched. Records must be in breadth first order. Only the parents and
+     * the folded keys are kept in memory, in arrays, to be sorted and written after the hierarchy.
+     *
+     * @param output  the stream to write to, which will be closed
+     * @param records the records
+     */
+    public static void write(OutputStream output, Records records) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        try {
+            int size = records.size();
+            int[] parents = new int[size];
+            String[] keys = new String[size];
+            int[] keyLocations = new int[size];
+            int numKeys = 0;
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+
+            for (int l = 0; l < size; l++) {
+                String name = records.getName(l);
+                String[] locationAliases = records.getAliases(l);
+                parents[l] = records.getParent(l);
+
+                out.writeInt(parents[l]);
+                out.writeUTF(name);
+                out.writeShort(locationAliases.length);
+
+                if (numKeys + 1 + locationAliases.length > keys.length) {
+                    int capacity = Math.max(numKeys + 1 + locationAliases.length, keys.length * 2);
+                    keys = Arrays.copyOf(keys, capacity);
+                    keyLocations = Arrays.copyOf(keyLocations, capacity);
+                }
+
+                keys[numKeys] = fold(name);
+                keyLocations[numKeys++] = l;
+                for (String alias : locationAliases) {
+                    out.writeUTF(alias);
+                    keys[numKeys] = fold(alias);
+                    keyLocations[numKeys++] = l;
+                }
+            }
+
+            keys = Arrays.copyOf(keys, numKeys);
+            keyLocations = Arrays.copyOf(keyLocations, numKeys);
+            sortKeys(keys, keyLocations, computeLevels(parents));
+
+            out.writeInt(keys.length);
+            for (int k = 0; k < keys.length; k++) {
+                out.writeInt(keyLocations[k]);
+                out.writeUTF(keys[k]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Source of locations to write to an index
+     */
+    public interface Records {
+        int size();
+
+        int getParent(int location) throws IOException;
+
+        String getName(int location) throws IOException;
+
+        String[] getAliases(int location) throws IOException;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int location) {
+        return names[location];
+    }
+
+    public String[] getAliases(int location) {
+        return aliases[location];
+    }
+
+    /**
+     * Gets the parent of a location
+     *
+     * @param location the location
+     * @return the parent or -1 if location is the root
+     */
+    public int getParent(int location) {
+        return parents[location];
+    }
+
+    public int getLevel(int location) {
+        return levels[location];
+    }
+
+    /**
+     * Gets the children of a location
+     *
+     * @param location the location
+     * @return the children
+     */
+    public int[] getChildren(int location) {
+        int[] children = new int[childCounts[location]];
+        for (int c = 0; c < children.length; c++) {
+            children[c] = firstChildren[location] + c;
+        }
+        return children;
+    }
+
+    /**
+     * Gets a display path for a location, e.g. "Gasabo, Kigali City"
+     *
+     * @param location the location
+     * @return the path, excluding the root
+     */
+    public String getPath(int location) {
+        StringBuilder sb = new StringBuilder(names[location]);
+        for (int p = parents[location]; p > 0; p = parents[p]) {
+            sb.append(", ").append(names[p]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Finds locations at the given level whose name or an alias matches the given text
+     *
+     * @param text   the text to match
+     * @param level  the level
+     * @param parent only match descendants of this location, or -1 to match anywhere
+     * @return the matching locations
+     */
+    public int[] match(String text, int level, int parent) {
+        String key = fold(text);
+        Set<Integer> matches = new LinkedHashSet<>();
+
+        for (int k = findFirst(key, level); k < levelEnd(level) && keys[k].equals(key); k++) {
+            int location = keyLocations[k];
+            if (parent < 0 || isDescendant(location, parent)) {
+                matches.add(location);
+            }
+        }
+        return toArray(matches);
+    }
+
+    /**
+     * Finds locations at the given level whose name or an alias starts with the given prefix
+     *
+     * @param prefix the prefix
+     * @param level  the level
+     * @param limit  the maximum number of locations to return
+     * @return the matching locations
+     */
+    public int[] complete(String prefix, int level, int limit) {
+        String key = fold(prefix);
+        Set<Integer> matches = new LinkedHashSet<>();
+
+        for (int k = findFirst(key, level); k < levelEnd(level) && keys[k].startsWith(key) && matches.size() < limit; k++) {
+            matches.add(keyLocations[k]);
+        }
+        return toArray(matches);
+    }
+
+    /**
+     * Folds text for matching, i.e. lowercases, strips accents and normalizes whitespace
+     *
+     * @param text the text
+     * @return the folded text
+     */
+    public static String fold(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = DIACRITICS.matcher(folded).replaceAll("");
+        folded = WHITESPACE.matcher(folded.trim()).replaceAll(" ");
+        return folded.toLowerCase(Locale.ROOT);
+    }
+
+    private boolean isDescendant(int location, int ancestor) {
+        for (int p = parents[location]; p >= 0; p = parents[p]) {
+            if (p == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the level of each location from its parents, which always come before it
+     */
+    private static byte[] computeLevels(int[] parents) {
+        byte[] levels = new byte[parents.length];
+        for (int l = 1; l < parents.length; l++) {
+            levels[l] = (byte) (levels[parents[l]] + 1);
+        }
+        return levels;
+    }
+
+    private static int countKeys(String[][] aliases) {
+        int numKeys = 0;
+        for (String[] locationAliases : aliases) {
+            numKeys += 1 + locationAliases.length;
+        }
+        return numKeys;
+    }
+
+    /**
+     * Folds all names and aliases into the given key arrays, in location order
+     */
+    private static void foldKeys(String[] names, String[][] aliases, String[] keys, int[] keyLocations) {
+        int k = 0;
+        for (int l = 0; l < names.length; l++) {
+            keys[k] = fold(names[l]);
+            keyLocations[k++] = l;
+            for (String alias : aliases[l]) {
+                keys[k] = fold(alias);
+                keyLocations[k++] = l;
+            }
+        }
+    }
+
+    /**
+     * Sorts keys, and their locations along with them, by level and then key
+     */
+    private static void sortKeys(final String[] keys, final int[] keyLocations, final byte[] levels) {
+        Integer[] order = new Integer[keys.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+
+        final String[] unsortedKeys = keys.clone();
+        final int[] unsortedLocations = keyLocations.clone();
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer k1, Integer k2) {
+                int level1 = levels[unsortedLocations[k1]], level2 = levels[unsortedLocations[k2]];
+                if (level1 != level2) {
+                    return level1 < level2 ? -1 : 1;
+                }
+                return unsortedKeys[k1].compareTo(unsortedKeys[k2]);
+            }
+        });
+
+        for (int k = 0; k < order.length; k++) {
+            keys[k] = unsortedKeys[order[k]];
+            keyLocations[k] = unsortedLocations[order[k]];
+        }
+    }
+
+    private int levelStart(int level) {
+        return level < levelKeyStarts.length ? levelKeyStarts[level] : keys.length;
+    }
+
+    private int levelEnd(int level) {
+        return level + 1 < levelKeyStarts.length ? levelKeyStarts[level + 1] : keys.length;
+    }
+
+    /**
+     * Binary searches for the first key at the given level which is greater than or equal to the given key
+     */
+    private int findFirst(String key, int level) {
+        int low = levelStart(level), high = levelEnd(level);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] toArray(Set<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,416 @@
+package io.rapidpro.surveyor.engine;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.net.responses.Boundary;
+
+/**
+ * Builds a location hierarchy from boundaries as they're fetched, in any order, and writes it out as
+ * both goflow location assets and a location index. Names and aliases are spooled to a temporary
+ * file as boundaries arrive so that only OSM IDs and parent references are held in memory, and those
+ * as UTF-8 bytes in shared arrays rather than as strings.
+ */
+public class LocationTreeWriter implements Closeable {
+
+    private File spoolFile;
+    private DataOutputStream spool;
+    private long spoolSize;
+
+    private long[] offsets = new long[1024];
+    private OsmIDTable osmIDs = new OsmIDTable();
+
+    private RandomAccessFile reader;
+    private int lastRead = -1;
+    private String lastName;
+    private String[] lastAliases;
+
+    /**
+     * Creates a new writer
+     *
+     * @param spoolFile the temporary file to spool boundaries to
+     */
+    public LocationTreeWriter(File spoolFile) throws IOException {
+        this.spoolFile = spoolFile;
+        this.spool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+    }
+
+    /**
+     * Adds a boundary. Its parent doesn't need to have been added yet.
+     *
+     * @param boundary the boundary
+     */
+    public void add(Boundary boundary) throws IOException {
+        int location = osmIDs.size();
+        byte[] osmID = boundary.getOsmID().getBytes(OsmIDTable.UTF8);
+        if (osmIDs.find(osmID, 0, osmID.length) >= 0) {
+            Logger.w("Ignoring duplicate boundary " + boundary.getOsmID());
+            return;
+        }
+
+        if (location == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[location] = spoolSize;
+
+        String[] aliases = boundary.getAliases() != null ? boundary.getAliases() : new String[0];
+        spool.writeUTF(boundary.getName());
+        spool.writeShort(aliases.length);
+        for (String alias : aliases) {
+            spool.writeUTF(alias);
+        }
+        spoolSize = spool.size();
+
+        osmIDs.add(osmID, boundary.getParent() != null ? boundary.getParent().getOsmID().getBytes(OsmIDTable.UTF8) : null);
+    }
+
+    /**
+     * Adds a page of boundaries
+     *
+     * @param boundaries the boundaries
+     */
+    public void addAll(List<Boundary> boundaries) throws IOException {
+        for (Boundary boundary : boundaries) {
+            add(boundary);
+        }
+    }
+
+    /**
+     * Gets the number of boundaries added
+     *
+     * @return the number of boundaries
+     */
+    public int size() {
+        return osmIDs.size();
+    }
+
+    /**
+     * Resolves parents and writes the hierarchy. Boundaries whose parent never arrived are dropped,
+     * along with their descendants.
+     *
+     * @param assetsOut the writer for the location assets JSON, which will be closed
+     * @param indexOut  the stream for the location index, which will be closed
+     * @return the number of locations written
+     */
+    public int finish(Writer assetsOut, OutputStream indexOut) throws IOException {
+        spool.close();
+
+        int size = size();
+        final int[] parents = new int[size];
+        int root = -1, orphans = 0;
+
+        for (int l = 0; l < size; l++) {
+            boolean hasParent = osmIDs.hasParent(l);
+            parents[l] = hasParent ? osmIDs.findParent(l) : -1;
+
+            if (parents[l] < 0) {
+                if (!hasParent && root < 0) {
+                    root = l;
+                } else {
+                    orphans++;
+                }
+            }
+        }
+
+        if (orphans > 0) {
+            Logger.w("Ignoring " + orphans + " boundaries without a valid parent");
+        }
+
+        // don't need these anymore
+        osmIDs = null;
+
+        if (root < 0) {
+            assetsOut.write("[]");
+            assetsOut.close();
+            indexOut.close();
+            return 0;
+        }
+
+        // organize children into contiguous ranges
+        int[] childStarts = new int[size + 1];
+        for (int l = 0; l < size; l++) {
+            if (parents[l] >= 0) {
+                childStarts[parents[l] + 1]++;
+            }
+        }
+        for (int l = 0; l < size; l++) {
+            childStarts[l + 1] += childStarts[l];
+        }
+        int[] children = new int[childStarts[size]];
+        int[] filled = new int[size];
+        for (int l = 0; l < size; l++) {
+            if (parents[l] >= 0) {
+                children[childStarts[parents[l]] + filled[parents[l]]++] = l;
+            }
+        }
+
+        reader = new RandomAccessFile(spoolFile, "r");
+
+        writeAssets(assetsOut, root, childStarts, children);
+
+        // order locations breadth first for the index
+        final int[] order = new int[size];
+        final int[] positions = new int[size];
+        int count = 1;
+        order[0] = root;
+        for (int o = 0; o < count; o++) {
+            int location = order[o];
+            positions[location] = o;
+            for (int c = childStarts[location]; c < childStarts[location + 1]; c++) {
+                order[count++] = children[c];
+            }
+        }
+
+        final int indexSize = count;
+        LocationIndex.write(indexOut, new LocationIndex.Records() {
+            @Override
+            public int size() {
+                return indexSize;
+            }
+
+            @Override
+            public int getParent(int position) {
+                int parent = parents[order[position]];
+                return parent >= 0 ? positions[parent] : -1;
+            }
+
+            @Override
+            public String getName(int position) throws IOException {
+                read(order[position]);
+                return lastName;
+            }
+
+            @Override
+            public String[] getAliases(int position) throws IOException {
+                read(order[position]);
+                return lastAliases;
+            }
+        });
+
+        return indexSize;
+    }
+
+    /**
+     * Writes the hierarchy as nested location assets, depth first
+     */
+    private void writeAssets(Writer out, int root, int[] childStarts, int[] children) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray();
+
+        int[] stack = new int[64];
+        int[] nextChild = new int[64];
+        int depth = 0;
+        stack[0] = root;
+        writeLocationStart(writer, root);
+        nextChild[0] = childStarts[root];
+
+        while (depth >= 0) {
+            int location = stack[depth];
+
+            if (nextChild[depth] < childStarts[location + 1]) {
+                int child = children[nextChild[depth]++];
+                depth++;
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                    nextChild = Arrays.copyOf(nextChild, depth * 2);
+                }
+                stack[depth] = child;
+                nextChild[depth] = childStarts[child];
+                writeLocationStart(writer, child);
+            } else {
+                writer.endArray();
+                writer.endObject();
+                depth--;
+            }
+        }
+
+        writer.endArray();
+        writer.close();
+    }
+
+    private void writeLocationStart(JsonWriter writer, int location) throws IOException {
+        read(location);
+
+        writer.beginObject();
+        writer.name("name").value(lastName);
+        writer.name("aliases").beginArray();
+        for (String alias : lastAliases) {
+            writer.value(alias);
+        }
+        writer.endArray();
+        writer.name("children").beginArray();
+    }
+
+    private void read(int location) throws IOException {
+        if (location == lastRead) {
+            return;
+        }
+
+        reader.seek(offsets[location]);
+        lastName = reader.readUTF();
+        lastAliases = new String[reader.readUnsignedShort()];
+        for (int a = 0; a < lastAliases.length; a++) {
+            lastAliases[a] = reader.readUTF();
+        }
+        lastRead = location;
+    }
+
+    /**
+     * The OSM IDs of locations and of their parents, as UTF-8 bytes packed into shared arrays, with an
+     * open addressing hash table for finding locations by OSM ID
+     */
+    private static class OsmIDTable {
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        private int size;
+
+        private byte[] ids = new byte[16 * 1024];
+        private int[] idEnds = new int[1024];
+
+        // locations without a parent have an empty parent ID, and hasParents tells that apart from an empty ID
+        private byte[] parentIDs = new byte[16 * 1024];
+        private int[] parentIDEnds = new int[1024];
+        private boolean[] hasParents = new boolean[1024];
+
+        // locations by hash of their ID, with -1 for empty slots
+        private int[] slots = newSlots(2048);
+
+        int size() {
+            return size;
+        }
+
+        void add(byte[] id, byte[] parentID) {
+            if (size == idEnds.length) {
+                idEnds = Arrays.copyOf(idEnds, size * 2);
+                parentIDEnds = Arrays.copyOf(parentIDEnds, size * 2);
+                hasParents = Arrays.copyOf(hasParents, size * 2);
+            }
+
+            int idStart = idStart(size);
+            ids = ensureCapacity(ids, idStart + id.length);
+            System.arraycopy(id, 0, ids, idStart, id.length);
+            idEnds[size] = idStart + id.length;
+
+            int parentStart = parentIDStart(size);
+            int parentLength = parentID != null ? parentID.length : 0;
+            parentIDs = ensureCapacity(parentIDs, parentStart + parentLength);
+            if (parentID != null) {
+                System.arraycopy(parentID, 0, parentIDs, parentStart, parentLength);
+            }
+            parentIDEnds[size] = parentStart + parentLength;
+            hasParents[size] = parentID != null;
+
+            size++;
+
+            // keep the table at most half full
+            if (size * 2 > slots.length) {
+                slots = newSlots(slots.length * 2);
+                for (int l = 0; l < size; l++) {
+                    insert(l);
+                }
+            } else {
+                insert(size - 1);
+            }
+        }
+
+        /**
+         * Finds the location with the given ID
+         *
+         * @return the location or -1 if there isn't one
+         */
+        int find(byte[] bytes, int start, int end) {
+            int mask = slots.length - 1;
+            for (int s = hash(bytes, start, end) & mask; slots[s] >= 0; s = (s + 1) & mask) {
+                int location = slots[s];
+                if (equal(ids, idStart(location), idEnds[location], bytes, start, end)) {
+                    return location;
+                }
+            }
+            return -1;
+        }
+
+        boolean hasParent(int location) {
+            return hasParents[location];
+        }
+
+        /**
+         * Finds the parent of a location, which may have been added after it
+         *
+         * @return the parent or -1 if it doesn't have one or it was never added
+         */
+        int findParent(int location) {
+            return hasParents[location] ? find(parentIDs, parentIDStart(location), parentIDEnds[location]) : -1;
+        }
+
+        private void insert(int location) {
+            int mask = slots.length - 1;
+            int s = hash(ids, idStart(location), idEnds[location]) & mask;
+            while (slots[s] >= 0) {
+                s = (s + 1) & mask;
+            }
+            slots[s] = location;
+        }
+
+        private int idStart(int location) {
+            return location > 0 ? idEnds[location - 1] : 0;
+        }
+
+        private int parentIDStart(int location) {
+            return location > 0 ? parentIDEnds[location - 1] : 0;
+        }
+
+        private static int[] newSlots(int count) {
+            int[] slots = new int[count];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+
+        private static byte[] ensureCapacity(byte[] bytes, int capacity) {
+            return capacity <= bytes.length ? bytes : Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+
+        private static int hash(byte[] bytes, int start, int end) {
+            int hash = 0;
+            for (int b = start; b < end; b++) {
+                hash = 31 * hash + bytes[b];
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean equal(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+            if (aEnd - aStart != bEnd - bStart) {
+                return false;
+            }
+            for (int i = 0; i < aEnd - aStart; i++) {
+                if (a[aStart + i] != b[bStart + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        spool.close();
+        if (reader != null) {
+            reader.close();
+        }
+        FileUtils.deleteQuietly(spoolFile);
+    }
+}
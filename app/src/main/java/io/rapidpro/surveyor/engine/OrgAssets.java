@@ -49,6 +49,22 @@ public class OrgAssets {
         return new OrgAssets(fieldAssets, groupAssets, locationAssets, flows);
     }
 
+    public List<FieldAsset> getFields() {
+        return fields;
+    }
+
+    public List<GroupAsset> getGroups() {
+        return groups;
+    }
+
+    public List<LocationAsset> getLocations() {
+        return locations;
+    }
+
+    public List<RawJson> getFlowDefinitions() {
+        return flows;
+    }
+
     /**
      * Extract the flow summaries from this set of org assets
      */
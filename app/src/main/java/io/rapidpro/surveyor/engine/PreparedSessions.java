@@ -0,0 +1,147 @@
+package io.rapidpro.surveyor.engine;
+
+import com.nyaruka.goflow.mobile.Environment;
+import com.nyaruka.goflow.mobile.SessionAssets;
+import com.nyaruka.goflow.mobile.Trigger;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+
+/**
+ * Holds a session which has been started speculatively in the background, e.g. while the user is
+ * looking at a flow, so that if they go on to run that flow the first question can be shown without
+ * waiting for assets to load and the engine to start. Only one session is held at a time.
+ */
+public class PreparedSessions {
+    /**
+     * Prepared sessions older than this are discarded rather than used, so that runs don't appear to
+     * have started long before the user actually started them
+     */
+    private static final long MAX_AGE = 5 * 60 * 1000;
+
+    private static PreparedSessions instance = new PreparedSessions();
+
+    private String key;
+    private boolean pending;
+    private Pair<Session, Sprint> prepared;
+    private long preparedOn;
+
+    public static PreparedSessions getInstance() {
+        return instance;
+    }
+
+    private PreparedSessions() {
+    }
+
+    /**
+     * Starts a new session for the given flow
+     *
+     * @param org  the org
+     * @param flow the flow
+     * @return the session and its first sprint
+     */
+    public static Pair<Session, Sprint> start(Org org, Flow flow) throws IOException, EngineException {
+        // only load the assets needed to run this flow
+        Environment environment = Engine.getEnvironment(org);
+        SessionAssets assets = Engine.createSessionAssets(environment, Engine.loadAssets(org.getAssets(flow.getUuid())));
+
+        Trigger trigger = Engine.createManualTrigger(environment, Contact.createEmpty(assets), flow.toReference());
+
+        return Engine.getInstance().newSession(assets, trigger);
+    }
+
+    /**
+     * Restores a session for the given flow which was previously saved as JSON
+     *
+     * @param org         the org
+     * @param flow        the flow
+     * @param sessionJSON the saved session
+     * @return the session
+     */
+    public static Session restore(Org org, Flow flow, String sessionJSON) throws IOException, EngineException {
+        Environment environment = Engine.getEnvironment(org);
+        SessionAssets assets = Engine.createSessionAssets(environment, Engine.loadAssets(org.getAssets(flow.getUuid())));
+
+        return Engine.getInstance().readSession(assets, sessionJSON);
+    }
+
+    /**
+     * Claims preparation of a session for the given flow, replacing any session prepared for another
+     * flow
+     *
+     * @param org  the org
+     * @param flow the flow
+     * @return false if a session for this flow is already prepared or being prepared
+     */
+    public synchronized boolean begin(Org org, Flow flow) {
+        String newKey = keyFor(org, flow);
+        if (newKey.equals(key) && (pending || !isExpired())) {
+            return false;
+        }
+
+        key = newKey;
+        pending = true;
+        prepared = null;
+        return true;
+    }
+
+    /**
+     * Stores a session which has been prepared, unless it has since been claimed or discarded
+     *
+     * @param org  the org
+     * @param flow the flow
+     * @param ss   the session and its first sprint, or null if it couldn't be started
+     */
+    public synchronized void put(Org org, Flow flow, Pair<Session, Sprint> ss) {
+        if (pending && keyFor(org, flow).equals(key)) {
+            if (ss != null) {
+                prepared = ss;
+                preparedOn = System.currentTimeMillis();
+                pending = false;
+            } else {
+                discard();
+            }
+        }
+    }
+
+    /**
+     * Takes the prepared session for the given flow if there is one. If it's still being prepared it
+     * will be discarded when ready, and the caller should start its own.
+     *
+     * @param org  the org
+     * @param flow the flow
+     * @return the session and its first sprint, or null
+     */
+    public synchronized Pair<Session, Sprint> take(Org org, Flow flow) {
+        Pair<Session, Sprint> ss = null;
+        if (prepared != null && keyFor(org, flow).equals(key) && !isExpired()) {
+            ss = prepared;
+            Logger.d("Using prepared session for flow " + flow.getUuid());
+        }
+
+        discard();
+        return ss;
+    }
+
+    /**
+     * Discards any prepared session, or one being prepared
+     */
+    public synchronized void discard() {
+        key = null;
+        pending = false;
+        prepared = null;
+    }
+
+    private boolean isExpired() {
+        return prepared != null && System.currentTimeMillis() - preparedOn > MAX_AGE;
+    }
+
+    private static String keyFor(Org org, Flow flow) {
+        return org.getUuid() + "/" + flow.getUuid() + "/" + flow.getRevision();
+    }
+}
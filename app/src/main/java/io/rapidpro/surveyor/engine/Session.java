@@ -1,10 +1,15 @@
 package io.rapidpro.surveyor.engine;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.nyaruka.goflow.mobile.Resume;
 import com.nyaruka.goflow.mobile.SessionAssets;
 import com.nyaruka.goflow.mobile.Trigger;
 import com.nyaruka.goflow.mobile.Wait;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 public class Session {
     private com.nyaruka.goflow.mobile.Session target;
 
@@ -72,4 +77,67 @@ public class Session {
             throw new EngineException(e);
         }
     }
+
+    /**
+     * Gets the UUID of the node this session is waiting at
+     *
+     * @return the node UUID or null if session isn't waiting
+     */
+    public String getWaitingNodeUUID() throws EngineException {
+        try {
+            JsonReader in = new JsonReader(new StringReader(toJSON()));
+            String nodeUUID = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("runs")) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        String[] statusAndNode = readRunStatusAndLastNode(in);
+                        if ("waiting".equals(statusAndNode[0])) {
+                            nodeUUID = statusAndNode[1];
+                        }
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return nodeUUID;
+
+        } catch (IOException | IllegalStateException e) {
+            throw new EngineException(e);
+        }
+    }
+
+    private static String[] readRunStatusAndLastNode(JsonReader in) throws IOException {
+        String status = null, lastNode = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("status") && in.peek() == JsonToken.STRING) {
+                status = in.nextString();
+            } else if (name.equals("path") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (in.nextName().equals("node_uuid") && in.peek() == JsonToken.STRING) {
+                            lastNode = in.nextString();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new String[]{status, lastNode};
+    }
 }
@@ -5,44 +5,141 @@ import com.nyaruka.goflow.mobile.EventSlice;
 import com.nyaruka.goflow.mobile.Modifier;
 import com.nyaruka.goflow.mobile.ModifierSlice;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
+import io.rapidpro.surveyor.engine.events.EngineEvent;
+import io.rapidpro.surveyor.engine.events.EventDecoders;
+
+/**
+ * The modifiers and events generated by a single engine sprint. These are read from the native slices
+ * on demand rather than copied out up front, and types and payloads are remembered so that each only
+ * crosses from native code once.
+ */
 public class Sprint {
-    private List<Modifier> modifiers;
+    private ModifierSlice modifiers;
+    private EventSlice events;
 
-    private List<Event> events;
+    private String[] modifierPayloads;
+    private String[] eventTypes;
+    private String[] eventPayloads;
+    private EngineEvent[] decodedEvents;
+    private boolean[] eventsDecoded;
 
-    private Sprint(List<Modifier> modifiers, List<Event> events) {
+    private Sprint(ModifierSlice modifiers, EventSlice events) {
         this.modifiers = modifiers;
         this.events = events;
+        this.modifierPayloads = new String[(int) modifiers.length()];
+        this.eventTypes = new String[(int) events.length()];
+        this.eventPayloads = new String[(int) events.length()];
+        this.decodedEvents = new EngineEvent[(int) events.length()];
+        this.eventsDecoded = new boolean[(int) events.length()];
     }
 
     static Sprint fromNative(com.nyaruka.goflow.mobile.Sprint s) {
-        return new Sprint(sliceToList(s.modifiers()), sliceToList(s.events()));
+        return new Sprint(s.modifiers(), s.events());
     }
 
-    public List<Modifier> getModifiers() {
-        return modifiers;
+    public int getModifierCount() {
+        return modifierPayloads.length;
     }
 
-    public List<Event> getEvents() {
-        return events;
+    /**
+     * Gets the JSON payload of the modifier at the given index
+     *
+     * @param index the index
+     * @return the payload
+     */
+    public String getModifierPayload(int index) {
+        if (modifierPayloads[index] == null) {
+            modifierPayloads[index] = modifiers.get(index).payload();
+        }
+        return modifierPayloads[index];
+    }
+
+    public int getEventCount() {
+        return eventTypes.length;
+    }
+
+    /**
+     * Gets the type of the event at the given index, e.g. "msg_created"
+     *
+     * @param index the index
+     * @return the type
+     */
+    public String getEventType(int index) {
+        if (eventTypes[index] == null) {
+            eventTypes[index] = events.get(index).type();
+        }
+        return eventTypes[index];
     }
 
-    private static List<Event> sliceToList(EventSlice slice) {
-        List<Event> list = new ArrayList<>((int) slice.length());
-        for (int e = 0; e < slice.length(); e++) {
-            list.add(slice.get(e));
+    /**
+     * Gets the JSON payload of the event at the given index
+     *
+     * @param index the index
+     * @return the payload
+     */
+    public String getEventPayload(int index) {
+        if (eventPayloads[index] == null) {
+            eventPayloads[index] = events.get(index).payload();
         }
-        return list;
+        return eventPayloads[index];
     }
 
-    private static List<Modifier> sliceToList(ModifierSlice slice) {
-        List<Modifier> list = new ArrayList<>((int) slice.length());
-        for (int e = 0; e < slice.length(); e++) {
-            list.add(slice.get(e));
+    /**
+     * Gets the decoded event at the given index. Only types with a registered decoder are decoded,
+     * payloads of other types aren't read at all.
+     *
+     * @param index the index
+     * @return the event or null if its type isn't decoded
+     */
+    public EngineEvent getEvent(int index) {
+        if (!eventsDecoded[index]) {
+            String type = getEventType(index);
+            if (EventDecoders.canDecode(type)) {
+                decodedEvents[index] = EventDecoders.decode(type, getEventPayload(index));
+            }
+            eventsDecoded[index] = true;
         }
-        return list;
+        return decodedEvents[index];
+    }
+
+    /**
+     * Gets a view of the modifiers which reads each from the native slice as it's accessed
+     *
+     * @return the modifiers
+     */
+    public List<Modifier> getModifiers() {
+        return new AbstractList<Modifier>() {
+            @Override
+            public Modifier get(int index) {
+                return modifiers.get(index);
+            }
+
+            @Override
+            public int size() {
+                return getModifierCount();
+            }
+        };
+    }
+
+    /**
+     * Gets a view of the events which reads each from the native slice as it's accessed
+     *
+     * @return the events
+     */
+    public List<Event> getEvents() {
+        return new AbstractList<Event>() {
+            @Override
+            public Event get(int index) {
+                return events.get(index);
+            }
+
+            @Override
+            public int size() {
+                return getEventCount();
+            }
+        };
     }
 }
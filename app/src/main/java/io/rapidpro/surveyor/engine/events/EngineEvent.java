@@ -0,0 +1,23 @@
+package io.rapidpro.surveyor.engine.events;
+
+/**
+ * Base class for engine events decoded from their JSON payloads
+ */
+public abstract class EngineEvent {
+    private String type;
+
+    private String createdOn;
+
+    protected EngineEvent(String type, String createdOn) {
+        this.type = type;
+        this.createdOn = createdOn;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getCreatedOn() {
+        return createdOn;
+    }
+}
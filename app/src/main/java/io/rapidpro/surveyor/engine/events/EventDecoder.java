@@ -0,0 +1,19 @@
+package io.rapidpro.surveyor.engine.events;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Decodes events of a particular type from their JSON payloads
+ */
+public interface EventDecoder {
+    /**
+     * Decodes an event, reading exactly one JSON object
+     *
+     * @param type the event type
+     * @param in   the reader, positioned at the start of the payload
+     * @return the event
+     */
+    EngineEvent decode(String type, JsonReader in) throws IOException;
+}
@@ -0,0 +1,104 @@
+package io.rapidpro.surveyor.engine.events;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.rapidpro.surveyor.Logger;
+
+/**
+ * Registry of decoders for the engine event types we care about. Payloads of other types are never
+ * parsed.
+ */
+public class EventDecoders {
+
+    private static final Map<String, EventDecoder> decoders = new HashMap<>();
+
+    static {
+        register("msg_created", MsgEvent.DECODER);
+        register("msg_received", MsgEvent.DECODER);
+        register("msg_wait", WaitEvent.DECODER);
+    }
+
+    /**
+     * Registers a decoder for the given event type, replacing any existing one
+     *
+     * @param type    the event type
+     * @param decoder the decoder
+     */
+    public static void register(String type, EventDecoder decoder) {
+        synchronized (decoders) {
+            decoders.put(type, decoder);
+        }
+    }
+
+    /**
+     * Gets whether events of the given type can be decoded
+     *
+     * @param type the event type
+     * @return true if there's a decoder for the type
+     */
+    public static boolean canDecode(String type) {
+        synchronized (decoders) {
+            return decoders.containsKey(type);
+        }
+    }
+
+    /**
+     * Decodes an event payload
+     *
+     * @param type    the event type
+     * @param payload the JSON payload
+     * @return the event, or null if there's no decoder for the type or the payload is invalid
+     */
+    public static EngineEvent decode(String type, String payload) {
+        EventDecoder decoder;
+        synchronized (decoders) {
+            decoder = decoders.get(type);
+        }
+        if (decoder == null) {
+            return null;
+        }
+
+        try {
+            return decoder.decode(type, new JsonReader(new StringReader(payload)));
+        } catch (IOException | IllegalStateException e) {
+            Logger.e("Unable to decode " + type + " event", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes an event payload, reading its type from the payload itself, e.g. for events read back
+     * from a submission
+     *
+     * @param payload the JSON payload
+     * @return the event, or null if there's no decoder for its type or the payload is invalid
+     */
+    public static EngineEvent decode(String payload) {
+        String type = readType(payload);
+        return type != null ? decode(type, payload) : null;
+    }
+
+    /**
+     * Reads the type of an event from its payload
+     */
+    private static String readType(String payload) {
+        try {
+            JsonReader in = new JsonReader(new StringReader(payload));
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("type")) {
+                    return in.nextString();
+                }
+                in.skipValue();
+            }
+        } catch (IOException | IllegalStateException e) {
+            Logger.e("Unable to read event type", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+package io.rapidpro.surveyor.engine.events;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * A msg_created or msg_received event
+ */
+public class MsgEvent extends EngineEvent {
+
+    static final EventDecoder DECODER = new EventDecoder() {
+        @Override
+        public EngineEvent decode(String type, JsonReader in) throws IOException {
+            String createdOn = null, text = null;
+            String[] attachments = null, quickReplies = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("created_on")) {
+                    createdOn = JsonUtils.nextStringOrNull(in);
+                } else if (name.equals("msg") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "text":
+                                text = JsonUtils.nextStringOrNull(in);
+                                break;
+                            case "attachments":
+                                attachments = JsonUtils.nextStringArray(in);
+                                break;
+                            case "quick_replies":
+                                quickReplies = JsonUtils.nextStringArray(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new MsgEvent(type, createdOn, text, attachments, quickReplies);
+        }
+    };
+
+    private static final String[] NONE = new String[0];
+
+    private String text;
+
+    private String[] attachments;
+
+    private String[] quickReplies;
+
+    public MsgEvent(String type, String createdOn, String text, String[] attachments, String[] quickReplies) {
+        super(type, createdOn);
+
+        this.text = text != null ? text : "";
+        this.attachments = attachments != null ? attachments : NONE;
+        this.quickReplies = quickReplies != null ? quickReplies : NONE;
+    }
+
+    /**
+     * Gets whether this is a message from the flow, rather than one received from the user
+     *
+     * @return true if created by the flow
+     */
+    public boolean isOutgoing() {
+        return getType().equals("msg_created");
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the attachments of this message, each in the form content-type:url
+     *
+     * @return the attachments
+     */
+    public String[] getAttachments() {
+        return attachments;
+    }
+
+    public String[] getQuickReplies() {
+        return quickReplies;
+    }
+}
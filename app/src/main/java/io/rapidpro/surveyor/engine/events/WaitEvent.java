@@ -0,0 +1,76 @@
+package io.rapidpro.surveyor.engine.events;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * A msg_wait event, i.e. the flow is waiting for the user to reply
+ */
+public class WaitEvent extends EngineEvent {
+
+    static final EventDecoder DECODER = new EventDecoder() {
+        @Override
+        public EngineEvent decode(String type, JsonReader in) throws IOException {
+            String createdOn = null, hintType = null;
+            int timeoutSeconds = 0;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("created_on")) {
+                    createdOn = JsonUtils.nextStringOrNull(in);
+                } else if (name.equals("timeout_seconds") && in.peek() == JsonToken.NUMBER) {
+                    timeoutSeconds = in.nextInt();
+                } else if (name.equals("hint") && in.peek() == JsonToken.BEGIN_OBJECT) {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (in.nextName().equals("type")) {
+                            hintType = JsonUtils.nextStringOrNull(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new WaitEvent(type, createdOn, hintType, timeoutSeconds);
+        }
+    };
+
+    private String hintType;
+
+    private int timeoutSeconds;
+
+    public WaitEvent(String type, String createdOn, String hintType, int timeoutSeconds) {
+        super(type, createdOn);
+
+        this.hintType = hintType;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Gets the type of input hinted at, e.g. "image", "audio", "video", "location"
+     *
+     * @return the hint type or null if there is no hint
+     */
+    public String getHintType() {
+        return hintType;
+    }
+
+    /**
+     * Gets the timeout of the wait
+     *
+     * @return the timeout in seconds or 0 if there is no timeout
+     */
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+}
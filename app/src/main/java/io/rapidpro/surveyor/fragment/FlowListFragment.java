@@ -3,15 +3,17 @@ package io.rapidpro.surveyor.fragment;
 import android.app.Activity;
 import android.app.Fragment;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.ListAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 
-import java.util.List;
+import java.util.Map;
 
 import io.rapidpro.surveyor.R;
 import io.rapidpro.surveyor.adapter.FlowListAdapter;
@@ -19,12 +21,23 @@ import io.rapidpro.surveyor.data.Flow;
 import io.rapidpro.surveyor.data.Org;
 
 /**
- * A list of flows than can be selected from
+ * A list of flows than can be selected from. Flows are loaded a page at a time as the user scrolls,
+ * and orgs with lots of flows get a search box which filters by name as the user types.
  */
-public class FlowListFragment extends Fragment implements AbsListView.OnItemClickListener {
+public class FlowListFragment extends Fragment implements AbsListView.OnItemClickListener, AbsListView.OnScrollListener {
+
+    /**
+     * Orgs with more flows than this get a search box
+     */
+    private static final int SEARCH_THRESHOLD = 10;
+
+    /**
+     * How close to the end of the list the user can scroll before we show the next page
+     */
+    private static final int LOAD_MORE_THRESHOLD = 10;
 
     private Container container;
-    private ListAdapter adapter;
+    private FlowListAdapter adapter;
 
     public FlowListFragment() {
     }
@@ -34,17 +47,37 @@ public class FlowListFragment extends Fragment implements AbsListView.OnItemClic
         super.onCreate(savedInstanceState);
 
         Org org = container.getOrg();
-        List<Flow> items = container.getListItems();
 
-        adapter = new FlowListAdapter(getActivity(), R.layout.item_flow, org, items);
+        adapter = new FlowListAdapter(getActivity(), R.layout.item_flow, org);
+        adapter.setPendingCounts(container.getPendingCounts());
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        View view = inflater.inflate(R.layout.fragment_list, container, false);
+        View view = inflater.inflate(R.layout.fragment_flow_list, container, false);
         ListView m_listView = view.findViewById(android.R.id.list);
         m_listView.setAdapter(adapter);
         m_listView.setOnItemClickListener(this);
+        m_listView.setOnScrollListener(this);
+
+        EditText search = view.findViewById(R.id.search_flows);
+        if (adapter.getMatchCount() > SEARCH_THRESHOLD) {
+            search.setVisibility(View.VISIBLE);
+            search.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                    adapter.setFilter(s.toString());
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                }
+            });
+        }
         return view;
     }
 
@@ -66,7 +99,27 @@ public class FlowListFragment extends Fragment implements AbsListView.OnItemClic
 
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        container.onItemClick((Flow) adapter.getItem(position));
+        container.onItemClick(adapter.getItem(position));
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+            adapter.showMore();
+        }
+    }
+
+    /**
+     * Filters the list to flows whose names start with the given prefix, or shows all flows if it's empty
+     *
+     * @param prefix the name prefix
+     */
+    public void filter(String prefix) {
+        adapter.setFilter(prefix);
     }
 
     /**
@@ -75,7 +128,7 @@ public class FlowListFragment extends Fragment implements AbsListView.OnItemClic
     public interface Container {
         Org getOrg();
 
-        List<Flow> getListItems();
+        Map<String, Integer> getPendingCounts();
 
         void onItemClick(Flow flow);
     }
@@ -15,7 +15,7 @@ import java.util.List;
 
 import io.rapidpro.surveyor.R;
 import io.rapidpro.surveyor.adapter.OrgListAdapter;
-import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.OrgSummary;
 
 /**
  * A list of orgs than can be selected from
@@ -32,7 +32,7 @@ public class OrgListFragment extends Fragment implements AbsListView.OnItemClick
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        List<Org> items = container.getListItems();
+        List<OrgSummary> items = container.getListItems();
 
         adapter = new OrgListAdapter(getActivity(), R.layout.item_org, items);
     }
@@ -64,15 +64,15 @@ public class OrgListFragment extends Fragment implements AbsListView.OnItemClick
 
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        container.onItemClick((Org) adapter.getItem(position));
+        container.onItemClick((OrgSummary) adapter.getItem(position));
     }
 
     /**
      * Container activity should implement this to be notified when an org is clicked
      */
     public interface Container {
-        List<Org> getListItems();
+        List<OrgSummary> getListItems();
 
-        void onItemClick(Org org);
+        void onItemClick(OrgSummary org);
     }
 }
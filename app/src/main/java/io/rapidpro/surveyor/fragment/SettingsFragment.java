@@ -62,6 +62,8 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(SurveyorPreferences.HOST)) {
             getSurveyor().onTembaHostChanged();
+        } else if (key.equals(SurveyorPreferences.SINGLE_FILE_SUBMISSIONS) || key.equals(SurveyorPreferences.INDEXED_SUBMISSIONS)) {
+            getSurveyor().onSubmissionStorageChanged();
         }
     }
 
@@ -108,6 +108,23 @@ public class TembaService {
         });
     }
 
+    /**
+     * Gets all of the boundaries a page at a time, so they don't all have to be held in memory
+     *
+     * @param token    the authentication token
+     * @param listener the listener to pass each page to
+     * @throws TembaException if fetching a page fails
+     * @throws IOException    if the listener fails to handle a page
+     */
+    public void getBoundaries(final String token, PageListener<Boundary> listener) throws TembaException, IOException {
+        fetchPages(new PageCaller<Boundary>() {
+            @Override
+            public Call<PaginatedResults<Boundary>> createCall(String cursor) {
+                return api.getBoundaries(asAuth(token), cursor);
+            }
+        }, listener);
+    }
+
     /**
      * Gets the org associated with the given token
      *
@@ -244,28 +261,48 @@ public class TembaService {
      * Utility for fetching all pages of a given type
      */
     private <T> List<T> fetchAllPages(PageCaller<T> caller) throws TembaException {
+        final List<T> all = new ArrayList<>();
+
         try {
-            List<T> all = new ArrayList<>();
-            PaginatedResults<T> page = null;
-
-            do {
-                String cursor = page != null ? page.getNextCursor() : null;
-                Call<PaginatedResults<T>> call = caller.createCall(cursor);
-                Response<PaginatedResults<T>> response = call.execute();
-
-                if (response.isSuccessful()) {
-                    page = response.body();
-                    all.addAll(page.getResults());
-                } else {
-                    throw new TembaException("Server returned non-200 response for " + call.request().url().toString());
+            fetchPages(caller, new PageListener<T>() {
+                @Override
+                public void onPage(List<T> results) {
+                    all.addAll(results);
                 }
-
-            } while (page.hasNext());
-
-            return all;
+            });
         } catch (IOException e) {
-            throw new TembaException("Unable to fetch page from API", e);
+            // our listener doesn't do any I/O, so this can't happen
+            throw new TembaException("Unable to collect pages", e);
         }
+        return all;
+    }
+
+    /**
+     * Utility for fetching all pages of a given type, passing each to a listener as it arrives. Failures
+     * to fetch a page are thrown as API errors, but failures of the listener, e.g. writing to local
+     * storage, are thrown as they are.
+     */
+    private <T> void fetchPages(PageCaller<T> caller, PageListener<T> listener) throws TembaException, IOException {
+        PaginatedResults<T> page = null;
+
+        do {
+            String cursor = page != null ? page.getNextCursor() : null;
+            Call<PaginatedResults<T>> call = caller.createCall(cursor);
+            Response<PaginatedResults<T>> response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                throw new TembaException("Unable to fetch page from API", e);
+            }
+
+            if (response.isSuccessful()) {
+                page = response.body();
+                listener.onPage(page.getResults());
+            } else {
+                throw new TembaException("Server returned non-200 response for " + call.request().url().toString());
+            }
+
+        } while (page.hasNext());
     }
 
     private void checkResponse(Response<?> response) throws TembaException {
@@ -307,4 +344,8 @@ public class TembaService {
     private interface PageCaller<T> {
         Call<PaginatedResults<T>> createCall(String cursor);
     }
+
+    public interface PageListener<T> {
+        void onPage(List<T> results) throws IOException;
+    }
 }
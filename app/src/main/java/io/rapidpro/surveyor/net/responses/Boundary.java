@@ -1,6 +1,14 @@
 package io.rapidpro.surveyor.net.responses;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
 
 public class Boundary {
     @SerializedName("osm_id")
@@ -45,4 +53,85 @@ public class Boundary {
             return name;
         }
     }
+
+    /**
+     * Streaming type adapter so boundaries, of which an org can have many thousands, don't need
+     * reflection
+     */
+    public static class Adapter extends TypeAdapter<Boundary> {
+        @Override
+        public void write(JsonWriter out, Boundary value) throws IOException {
+            out.beginObject();
+            out.name("osm_id").value(value.osmID);
+            out.name("name").value(value.name);
+            out.name("parent");
+            if (value.parent != null) {
+                out.beginObject();
+                out.name("osm_id").value(value.parent.osmID);
+                out.name("name").value(value.parent.name);
+                out.endObject();
+            } else {
+                out.nullValue();
+            }
+            out.name("level").value(value.level);
+            out.name("aliases");
+            JsonUtils.writeStringArray(out, value.aliases);
+            out.endObject();
+        }
+
+        @Override
+        public Boundary read(JsonReader in) throws IOException {
+            Boundary boundary = new Boundary();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "osm_id":
+                        boundary.osmID = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        boundary.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "parent":
+                        boundary.parent = readReference(in);
+                        break;
+                    case "level":
+                        boundary.level = JsonUtils.nextIntOrDefault(in, boundary.level);
+                        break;
+                    case "aliases":
+                        boundary.aliases = JsonUtils.nextStringArray(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return boundary;
+        }
+
+        private Reference readReference(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Reference ref = new Reference();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "osm_id":
+                        ref.osmID = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        ref.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return ref;
+        }
+    }
 }
@@ -1,6 +1,13 @@
 package io.rapidpro.surveyor.net.responses;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
 
 public class Field {
     private String key;
@@ -20,4 +27,42 @@ public class Field {
     public String getValueType() {
         return valueType;
     }
+
+    /**
+     * Streaming type adapter so fields fetched from the API don't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Field> {
+        @Override
+        public void write(JsonWriter out, Field value) throws IOException {
+            out.beginObject();
+            out.name("key").value(value.key);
+            out.name("label").value(value.label);
+            out.name("value_type").value(value.valueType);
+            out.endObject();
+        }
+
+        @Override
+        public Field read(JsonReader in) throws IOException {
+            Field result = new Field();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "key":
+                        result.key = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "label":
+                        result.label = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "value_type":
+                        result.valueType = JsonUtils.nextStringOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
 }
@@ -1,5 +1,13 @@
 package io.rapidpro.surveyor.net.responses;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
+
 public class Flow {
     private String uuid;
     private String name;
@@ -26,4 +34,50 @@ public class Flow {
     public int getExpires() {
         return expires;
     }
+
+    /**
+     * Streaming type adapter so flows fetched from the API don't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Flow> {
+        @Override
+        public void write(JsonWriter out, Flow value) throws IOException {
+            out.beginObject();
+            out.name("uuid").value(value.uuid);
+            out.name("name").value(value.name);
+            out.name("type").value(value.type);
+            out.name("archived").value(value.archived);
+            out.name("expires").value(value.expires);
+            out.endObject();
+        }
+
+        @Override
+        public Flow read(JsonReader in) throws IOException {
+            Flow result = new Flow();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uuid":
+                        result.uuid = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        result.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "type":
+                        result.type = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "archived":
+                        result.archived = JsonUtils.nextBooleanOrDefault(in, result.archived);
+                        break;
+                    case "expires":
+                        result.expires = JsonUtils.nextIntOrDefault(in, result.expires);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
 }
@@ -1,5 +1,13 @@
 package io.rapidpro.surveyor.net.responses;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
+
 public class Group {
     private String uuid;
     private String name;
@@ -16,4 +24,42 @@ public class Group {
     public String getQuery() {
         return query;
     }
+
+    /**
+     * Streaming type adapter so groups fetched from the API don't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Group> {
+        @Override
+        public void write(JsonWriter out, Group value) throws IOException {
+            out.beginObject();
+            out.name("uuid").value(value.uuid);
+            out.name("name").value(value.name);
+            out.name("query").value(value.query);
+            out.endObject();
+        }
+
+        @Override
+        public Group read(JsonReader in) throws IOException {
+            Group result = new Group();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uuid":
+                        result.uuid = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        result.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "query":
+                        result.query = JsonUtils.nextStringOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
 }
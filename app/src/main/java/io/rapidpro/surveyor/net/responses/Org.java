@@ -1,6 +1,13 @@
 package io.rapidpro.surveyor.net.responses;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
 
 public class Org {
     private String uuid;
@@ -52,4 +59,63 @@ public class Org {
     public boolean isAnon() {
         return anon;
     }
+
+    /**
+     * Streaming type adapter so orgs fetched from the API don't need reflection
+     */
+    public static class Adapter extends TypeAdapter<Org> {
+        @Override
+        public void write(JsonWriter out, Org value) throws IOException {
+            out.beginObject();
+            out.name("uuid").value(value.uuid);
+            out.name("name").value(value.name);
+            out.name("country").value(value.country);
+            out.name("languages");
+            JsonUtils.writeStringArray(out, value.languages);
+            out.name("primary_language").value(value.primaryLanguage);
+            out.name("timezone").value(value.timezone);
+            out.name("date_style").value(value.dateStyle);
+            out.name("anon").value(value.anon);
+            out.endObject();
+        }
+
+        @Override
+        public Org read(JsonReader in) throws IOException {
+            Org result = new Org();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uuid":
+                        result.uuid = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "name":
+                        result.name = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "country":
+                        result.country = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "languages":
+                        result.languages = JsonUtils.nextStringArray(in);
+                        break;
+                    case "primary_language":
+                        result.primaryLanguage = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "timezone":
+                        result.timezone = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "date_style":
+                        result.dateStyle = JsonUtils.nextStringOrNull(in);
+                        break;
+                    case "anon":
+                        result.anon = JsonUtils.nextBooleanOrDefault(in, result.anon);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package io.rapidpro.surveyor.task;
+
+import android.os.AsyncTask;
+
+import java.util.Map;
+
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.SubmissionService;
+
+/**
+ * Task to count the completed submissions for each flow in an org without blocking the UI
+ */
+public class CountSubmissionsTask extends AsyncTask<Org, Void, Map<String, Integer>> {
+
+    private SubmissionService service;
+    private Listener listener;
+
+    public CountSubmissionsTask(SubmissionService service, Listener listener) {
+        this.service = service;
+        this.listener = listener;
+    }
+
+    @Override
+    protected Map<String, Integer> doInBackground(Org... args) {
+        return service.getCompletedCounts(args[0]);
+    }
+
+    /**
+     * @see AsyncTask#onPostExecute(Object)
+     */
+    @Override
+    protected void onPostExecute(Map<String, Integer> counts) {
+        super.onPostExecute(counts);
+
+        listener.onComplete(counts);
+    }
+
+    public interface Listener {
+        void onComplete(Map<String, Integer> counts);
+    }
+}
@@ -0,0 +1,65 @@
+package io.rapidpro.surveyor.task;
+
+import android.os.AsyncTask;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.engine.Engine;
+import io.rapidpro.surveyor.engine.PreparedSessions;
+
+/**
+ * Task to warm up the engine and assets for an org, and if given a flow, to start a session for it in
+ * the background which can be used if the user goes on to run that flow
+ */
+public class PrepareSessionTask extends AsyncTask<Void, Void, Void> {
+
+    private Org org;
+    private Flow flow;
+
+    public PrepareSessionTask(Org org, Flow flow) {
+        this.org = org;
+        this.flow = flow;
+    }
+
+    /**
+     * Starts preparing a session for the given flow unless one is already prepared
+     *
+     * @param org  the org
+     * @param flow the flow or null to only warm up the engine
+     */
+    public static void prepare(Org org, Flow flow) {
+        if (flow == null || PreparedSessions.getInstance().begin(org, flow)) {
+            new PrepareSessionTask(org, flow).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    @Override
+    protected Void doInBackground(Void... args) {
+        try {
+            Engine.currentSpecVersion();
+            Engine.getEnvironment(org);
+            org.prepareAssets();
+
+            if (flow != null) {
+                long start = System.currentTimeMillis();
+
+                PreparedSessions.getInstance().put(org, flow, PreparedSessions.start(org, flow));
+
+                // the run will need the location index if the flow asks for locations
+                if (!org.getLocationNodes(flow.getUuid()).isEmpty()) {
+                    org.getLocationIndex();
+                }
+
+                Logger.d("Prepared session for flow " + flow.getUuid() + " in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (Exception e) {
+            Logger.e("Unable to prepare session", e);
+
+            if (flow != null) {
+                PreparedSessions.getInstance().put(org, flow, null);
+            }
+        }
+        return null;
+    }
+}
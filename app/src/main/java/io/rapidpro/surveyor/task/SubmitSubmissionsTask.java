@@ -5,7 +5,10 @@ import android.os.AsyncTask;
 import java.io.IOException;
 
 import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.SurveyorApplication;
+import io.rapidpro.surveyor.data.OrgIndex;
 import io.rapidpro.surveyor.data.Submission;
+import io.rapidpro.surveyor.data.SubmissionService;
 import io.rapidpro.surveyor.net.TembaException;
 
 /**
@@ -24,17 +27,41 @@ public class SubmitSubmissionsTask extends AsyncTask<Submission, Integer, Intege
     protected Integer doInBackground(Submission... submissions) {
         int total = submissions.length;
 
+        // write pending counts to the org index once rather than after each submission
+        SubmissionService service = SurveyorApplication.get().getSubmissionService();
+        OrgIndex orgIndex = SurveyorApplication.get().getOrgService().getIndex();
+        orgIndex.beginBatch();
+
         int s = 0;
-        for (Submission submission : submissions) {
-            try {
-                submission.submit();
-            } catch (IOException | TembaException e) {
-                Logger.e("Unable to send submission", e);
-                numFailed++;
+        try {
+            // don't let submissions be migrated to another format whilst we're sending them
+            synchronized (service.getTransferLock()) {
+                for (Submission submission : submissions) {
+                    // a submission may have been migrated since it was listed, in which case it'll be sent next time
+                    if (submission.getDirectory() == null || !submission.getDirectory().exists()) {
+                        Logger.d("Skipping submission " + submission.getDirectory() + " which no longer exists");
+                    } else {
+                        try {
+                            submission.submit();
+                        } catch (IOException | TembaException e) {
+                            Logger.e("Unable to send submission", e);
+                            numFailed++;
+                        }
+                    }
+
+                    s++;
+                    publishProgress(100 * s / total);
+                }
             }
+        } finally {
+            orgIndex.endBatch();
+        }
 
-            s++;
-            publishProgress(100 * s / total);
+        // occasionally clean up any media left behind by submissions that failed part way through
+        try {
+            service.collectMediaGarbageIfDue();
+        } catch (IOException e) {
+            Logger.e("Unable to collect media garbage", e);
         }
 
         return total;
@@ -0,0 +1,89 @@
+package io.rapidpro.surveyor.task;
+
+import android.os.AsyncTask;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.rapidpro.surveyor.Logger;
+import io.rapidpro.surveyor.utils.VideoTranscoder;
+
+/**
+ * Task to transcode a captured video to a smaller file. Returns the file which should be saved, which
+ * will be the original if it was already small enough or if transcoding failed. The listener can be
+ * detached and later reattached, e.g. across activity recreation, and a result that arrives while
+ * detached is delivered when a new listener is set.
+ */
+public class TranscodeVideoTask extends AsyncTask<File, Void, File> {
+
+    private VideoTranscoder transcoder;
+    private Listener listener;
+    private File result;
+
+    public TranscodeVideoTask(VideoTranscoder transcoder, Listener listener) {
+        this.transcoder = transcoder;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the listener to be notified on completion, or null to detach the current one
+     *
+     * @param listener the listener
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+
+        if (listener != null && result != null) {
+            File delivered = result;
+            result = null;
+            listener.onComplete(delivered);
+        }
+    }
+
+    @Override
+    protected File doInBackground(File... args) {
+        File src = args[0];
+        File dest = args[1];
+
+        if (!transcoder.shouldTranscode(src)) {
+            Logger.d("Skipping transcode of " + src.getPath() + " (" + src.length() + " bytes)");
+            return src;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+
+            transcoder.transcode(src, dest);
+
+            Logger.d("Transcoded video from " + src.length() + " to " + dest.length() + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+
+            // don't keep a transcoded file that ended up bigger than the original
+            if (dest.length() > 0 && dest.length() < src.length()) {
+                return dest;
+            }
+        } catch (IOException | RuntimeException e) {
+            Logger.e("Unable to transcode video, using original", e);
+        }
+
+        dest.delete();
+        return src;
+    }
+
+    /**
+     * @see AsyncTask#onPostExecute(Object)
+     */
+    @Override
+    protected void onPostExecute(File result) {
+        super.onPostExecute(result);
+
+        if (listener != null) {
+            listener.onComplete(result);
+        } else {
+            this.result = result;
+        }
+    }
+
+    public interface Listener {
+        void onComplete(File video);
+    }
+}
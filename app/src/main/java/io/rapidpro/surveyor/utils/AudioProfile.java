@@ -0,0 +1,127 @@
+package io.rapidpro.surveyor.utils;
+
+import android.content.SharedPreferences;
+import android.media.MediaRecorder;
+
+import io.rapidpro.surveyor.SurveyorPreferences;
+
+/**
+ * Encoder settings used when recording answers to audio questions
+ */
+public class AudioProfile {
+
+    /**
+     * Mono 16kHz at a low bit rate - plenty for intelligible speech and our default
+     */
+    public static final AudioProfile SPEECH = new AudioProfile("speech", 16000, 1, 24000);
+
+    /**
+     * Mono 44.1kHz for when background sound matters
+     */
+    public static final AudioProfile STANDARD = new AudioProfile("standard", 44100, 1, 64000);
+
+    /**
+     * Stereo 44.1kHz, roughly equivalent to the old recorder defaults
+     */
+    public static final AudioProfile HIGH = new AudioProfile("high", 44100, 2, 128000);
+
+    private static final AudioProfile[] ALL = {SPEECH, STANDARD, HIGH};
+
+    private String name;
+    private int sampleRate;
+    private int channels;
+    private int bitRate;
+
+    private AudioProfile(String name, int sampleRate, int channels, int bitRate) {
+        this.name = name;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitRate = bitRate;
+    }
+
+    /**
+     * Gets a profile by name
+     *
+     * @param name the profile name
+     * @return the profile or the speech profile if name isn't recognized
+     */
+    public static AudioProfile fromName(String name) {
+        for (AudioProfile profile : ALL) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return SPEECH;
+    }
+
+    /**
+     * Resolves the profile to use for the given flow. A flow specific preference takes precedence
+     * over an org specific preference, which takes precedence over the global preference.
+     *
+     * @param prefs    the preferences
+     * @param orgUUID  the org UUID
+     * @param flowUUID the flow UUID
+     * @return the profile
+     */
+    public static AudioProfile forFlow(SharedPreferences prefs, String orgUUID, String flowUUID) {
+        return resolve(prefs.getString(prefKey(orgUUID, flowUUID), null), prefs.getString(prefKey(orgUUID, null), null),
+                prefs.getString(SurveyorPreferences.AUDIO_PROFILE, null));
+    }
+
+    /**
+     * Resolves a profile from the first of the given names which is set
+     *
+     * @param flowName   the flow specific name or null
+     * @param orgName    the org specific name or null
+     * @param globalName the global name or null
+     * @return the profile
+     */
+    static AudioProfile resolve(String flowName, String orgName, String globalName) {
+        if (flowName != null) {
+            return fromName(flowName);
+        }
+        if (orgName != null) {
+            return fromName(orgName);
+        }
+        return fromName(globalName);
+    }
+
+    /**
+     * Gets the preference key for an org or flow specific profile
+     *
+     * @param orgUUID  the org UUID
+     * @param flowUUID the flow UUID or null for an org wide profile
+     * @return the key
+     */
+    public static String prefKey(String orgUUID, String flowUUID) {
+        String key = SurveyorPreferences.AUDIO_PROFILE + ":" + orgUUID;
+        return flowUUID != null ? key + ":" + flowUUID : key;
+    }
+
+    /**
+     * Configures the given recorder to use this profile. Must be called after the output format is set.
+     *
+     * @param recorder the recorder
+     */
+    public void configure(MediaRecorder recorder) {
+        recorder.setAudioSamplingRate(sampleRate);
+        recorder.setAudioChannels(channels);
+        recorder.setAudioEncodingBitRate(bitRate);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+}
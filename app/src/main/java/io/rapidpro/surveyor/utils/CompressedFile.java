@@ -0,0 +1,177 @@
+package io.rapidpro.surveyor.utils;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes files which may be stored compressed. A compressed file is a short header
+ * (3 magic bytes and a format version) followed by a gzip stream. Files without the header are read
+ * as is so both kinds can be read the same way.
+ */
+public class CompressedFile {
+
+    private static final byte[] MAGIC = {'S', 'V', 'Z'};
+
+    private static final byte VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Writes the given text to a file, compressed or not
+     *
+     * @param file       the file
+     * @param text       the text
+     * @param compressed whether to compress
+     */
+    public static void write(File file, String text, boolean compressed) throws IOException {
+        Writer writer = openWriter(file, compressed);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Opens a writer to a file, compressed or not
+     *
+     * @param file       the file
+     * @param compressed whether to compress
+     * @return the writer
+     */
+    public static Writer openWriter(File file, boolean compressed) throws IOException {
+        return new OutputStreamWriter(openOutputStream(file, compressed), UTF8);
+    }
+
+    /**
+     * Opens a binary output stream to a file, compressed or not
+     *
+     * @param file       the file
+     * @param compressed whether to compress
+     * @return the stream
+     */
+    public static OutputStream openOutputStream(File file, boolean compressed) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        if (compressed) {
+            output.write(MAGIC);
+            output.write(VERSION);
+            output = new GZIPOutputStream(output);
+        }
+        return output;
+    }
+
+    /**
+     * Reads the text from a compressed or plain file
+     *
+     * @param file the file
+     * @return the text
+     */
+    public static String read(File file) throws IOException {
+        Reader reader = openReader(file);
+        try {
+            return IOUtils.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the text from a compressed or plain file and appends it to a builder, decoding as it goes
+     *
+     * @param file the file
+     * @param sb   the builder
+     */
+    public static void readTo(File file, StringBuilder sb) throws IOException {
+        Reader reader = openReader(file);
+        try {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Opens a reader to a compressed or plain file
+     *
+     * @param file the file
+     * @return the reader
+     */
+    public static Reader openReader(File file) throws IOException {
+        return new InputStreamReader(openInputStream(file), UTF8);
+    }
+
+    /**
+     * Opens a binary input stream to a compressed or plain file
+     *
+     * @param file the file
+     * @return the stream
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (readHeader(input)) {
+                input = new BufferedInputStream(new GZIPInputStream(input));
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return input;
+    }
+
+    /**
+     * Gets whether the given file is compressed
+     *
+     * @param file the file
+     * @return true if compressed
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readHeader(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Checks for our header at the start of a stream, consuming it if found and otherwise leaving the
+     * stream where it was
+     */
+    private static boolean readHeader(InputStream input) throws IOException {
+        byte[] header = new byte[MAGIC.length + 1];
+
+        input.mark(header.length);
+        int read = IOUtils.read(input, header);
+
+        if (read == header.length && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            if (header[MAGIC.length] != VERSION) {
+                throw new IOException("Unsupported compressed file version " + header[MAGIC.length]);
+            }
+            return true;
+        }
+
+        input.reset();
+        return false;
+    }
+}
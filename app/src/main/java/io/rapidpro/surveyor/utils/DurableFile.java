@@ -0,0 +1,199 @@
+package io.rapidpro.surveyor.utils;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Writes files so that a crash part way through never leaves a corrupt file behind. Content is
+ * written to a temporary file, synced to disk and then renamed over the original, so readers see
+ * either the old or the new content. Each file starts with a short header (3 magic bytes, a format
+ * version, the content length and a CRC32 of the content) so that anything which still gets corrupted,
+ * e.g. by a power loss when syncing is disabled, is detected when read. Files without the header are
+ * read as is so older files can be read the same way.
+ */
+public class DurableFile {
+
+    private static final byte[] MAGIC = {'S', 'V', 'D'};
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 8;
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static volatile boolean sync = true;
+
+    /**
+     * Sets whether writes are synced to disk before being renamed into place. Without syncing, writes
+     * are still atomic with respect to crashes of the app but not to losing power.
+     *
+     * @param sync true to sync writes
+     */
+    public static void setSync(boolean sync) {
+        DurableFile.sync = sync;
+    }
+
+    /**
+     * Writes the given text to a file, replacing it atomically
+     *
+     * @param file the file
+     * @param text the text
+     */
+    public static void write(File file, String text) throws IOException {
+        write(file, text.getBytes(UTF8));
+    }
+
+    /**
+     * Writes the given bytes to a file, replacing it atomically
+     *
+     * @param file    the file
+     * @param content the bytes
+     */
+    public static void write(File file, byte[] content) throws IOException {
+        File temp = new File(file.getPath() + TEMP_EXTENSION);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).put(VERSION).putInt(content.length).putLong(checksum(content));
+
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            output.write(header.array());
+            output.write(content);
+            if (sync) {
+                output.getFD().sync();
+            }
+        } catch (IOException e) {
+            output.close();
+            temp.delete();
+            throw e;
+        }
+        output.close();
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to replace " + file.getPath());
+        }
+    }
+
+    /**
+     * Syncs a file which has already been written, e.g. as part of a directory which will be renamed into
+     * place, to disk
+     *
+     * @param file the file
+     */
+    public static void sync(File file) throws IOException {
+        if (!sync) {
+            return;
+        }
+
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            access.getFD().sync();
+        } finally {
+            access.close();
+        }
+    }
+
+    /**
+     * Syncs a directory to disk so that files created in it or renamed into it survive losing power. This
+     * is only possible on Lollipop and later, and does nothing on file systems which don't support it.
+     *
+     * @param directory the directory
+     */
+    public static void syncDirectory(File directory) throws IOException {
+        if (!sync || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            if (e.errno != OsConstants.EINVAL) {
+                throw new IOException("Unable to sync " + directory.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the text from a file, verifying its checksum if it has one
+     *
+     * @param file the file
+     * @return the text
+     * @throws IOException if the file can't be read or is corrupt
+     */
+    public static String read(File file) throws IOException {
+        return new String(readBytes(file), UTF8);
+    }
+
+    /**
+     * Reads the bytes from a file, verifying its checksum if it has one
+     *
+     * @param file the file
+     * @return the bytes
+     * @throws IOException if the file can't be read or is corrupt
+     */
+    public static byte[] readBytes(File file) throws IOException {
+        // read from the stream rather than by the file's length, which may be of a newer file if it's replaced
+        byte[] data;
+        InputStream input = new FileInputStream(file);
+        try {
+            data = IOUtils.toByteArray(input);
+        } finally {
+            input.close();
+        }
+
+        if (data.length < HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC)) {
+            return data;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_LENGTH);
+        header.position(MAGIC.length);
+
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported durable file version " + version + " in " + file.getPath());
+        }
+
+        int length = header.getInt();
+        long expected = header.getLong();
+
+        if (length != data.length - HEADER_LENGTH) {
+            throw new IOException("Truncated file " + file.getPath() + " (expected " + length + " bytes, found " + (data.length - HEADER_LENGTH) + ")");
+        }
+
+        byte[] content = Arrays.copyOfRange(data, HEADER_LENGTH, data.length);
+        if (checksum(content) != expected) {
+            throw new IOException("Checksum mismatch in " + file.getPath());
+        }
+        return content;
+    }
+
+    private static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
@@ -5,12 +5,42 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.net.responses.Boundary;
+import io.rapidpro.surveyor.net.responses.Field;
+import io.rapidpro.surveyor.net.responses.Group;
 
 public class JsonUtils {
-    private static Gson s_gson = new GsonBuilder()
-            //.setPrettyPrinting()
-            .registerTypeAdapter(RawJson.class, new RawJson.Adapter())
-            .create();
+    private static Gson s_gson = newGson();
+
+    /**
+     * Creates a new Gson instance configured with our type adapters
+     *
+     * @return the Gson instance
+     */
+    public static Gson newGson() {
+        return new GsonBuilder()
+                //.setPrettyPrinting()
+                .registerTypeAdapter(RawJson.class, new RawJson.Adapter())
+                // streaming adapters for the types we read most, so they don't go through reflection
+                .registerTypeAdapter(Org.class, new Org.Adapter().nullSafe())
+                .registerTypeAdapter(Flow.class, new Flow.Adapter().nullSafe())
+                .registerTypeAdapter(Boundary.class, new Boundary.Adapter().nullSafe())
+                .registerTypeAdapter(Field.class, new Field.Adapter().nullSafe())
+                .registerTypeAdapter(Group.class, new Group.Adapter().nullSafe())
+                .registerTypeAdapter(io.rapidpro.surveyor.net.responses.Flow.class, new io.rapidpro.surveyor.net.responses.Flow.Adapter().nullSafe())
+                .registerTypeAdapter(io.rapidpro.surveyor.net.responses.Org.class, new io.rapidpro.surveyor.net.responses.Org.Adapter().nullSafe())
+                .create();
+    }
 
     public static Gson getGson() {
         return s_gson;
@@ -27,4 +57,88 @@ public class JsonUtils {
     public static <T> T unmarshal(String json, TypeToken type) {
         return s_gson.fromJson(json, type.getType());
     }
+
+    /**
+     * Reads the next string value, allowing for it to be null
+     *
+     * @param in the JSON reader
+     * @return the string or null
+     */
+    public static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads the next int value, allowing for it to be null
+     *
+     * @param in           the JSON reader
+     * @param defaultValue the value to return if it's null
+     * @return the int or the default value
+     */
+    public static int nextIntOrDefault(JsonReader in, int defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * Reads the next boolean value, allowing for it to be null
+     *
+     * @param in           the JSON reader
+     * @param defaultValue the value to return if it's null
+     * @return the boolean or the default value
+     */
+    public static boolean nextBooleanOrDefault(JsonReader in, boolean defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Reads the next array of strings, allowing for it to be null
+     *
+     * @param in the JSON reader
+     * @return the strings or null
+     */
+    public static String[] nextStringArray(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(nextStringOrNull(in));
+        }
+        in.endArray();
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * Writes an array of strings, or null
+     *
+     * @param out    the JSON writer
+     * @param values the strings
+     */
+    public static void writeStringArray(JsonWriter out, String[] values) throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
 }
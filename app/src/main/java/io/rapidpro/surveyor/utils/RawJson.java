@@ -1,12 +1,12 @@
 package io.rapidpro.surveyor.utils;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 
 /**
  * Custom data type for fields which hold raw JSON
@@ -23,6 +23,67 @@ public class RawJson {
         return this.data;
     }
 
+    /**
+     * Copies the next value from the given reader to the given writer token by token, so that large
+     * values never have to be parsed into a tree
+     *
+     * @param in  the JSON reader
+     * @param out the writer to copy to, e.g. a string or file writer
+     */
+    public static void copy(JsonReader in, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        copy(in, writer);
+        writer.flush();
+    }
+
+    private static void copy(JsonReader in, JsonWriter out) throws IOException {
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    // numbers are copied as is so that we don't lose precision or change formatting
+                    out.jsonValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    throw new IOException("Unexpected end of JSON document");
+            }
+        } while (depth > 0);
+    }
+
     /**
      * Type adapter to tell Gson how to use fields of this type
      */
@@ -34,11 +95,10 @@ public class RawJson {
 
         @Override
         public RawJson read(JsonReader in) throws IOException {
-            // TODO ideally this wouldn't parse the entire tree into memory
-            // see https://github.com/google/gson/issues/1368
-            JsonElement parsed = new JsonParser().parse(in);
+            StringWriter buffer = new StringWriter();
+            copy(in, buffer);
 
-            return new RawJson(parsed.toString());
+            return new RawJson(buffer.toString());
         }
     }
 }
@@ -0,0 +1,70 @@
+package io.rapidpro.surveyor.utils;
+
+/**
+ * Encoder settings used when transcoding captured videos before they're saved
+ */
+public class VideoProfile {
+
+    /**
+     * Small and low bit rate for poor connections
+     */
+    public static final VideoProfile LOW = new VideoProfile("low", 480, 500000);
+
+    /**
+     * Good enough to see what's going on and our default
+     */
+    public static final VideoProfile STANDARD = new VideoProfile("standard", 640, 800000);
+
+    /**
+     * 720p for when detail matters
+     */
+    public static final VideoProfile HIGH = new VideoProfile("high", 1280, 2000000);
+
+    private static final VideoProfile[] ALL = {LOW, STANDARD, HIGH};
+
+    private String name;
+    private int maxDimension;
+    private int bitRate;
+
+    private VideoProfile(String name, int maxDimension, int bitRate) {
+        this.name = name;
+        this.maxDimension = maxDimension;
+        this.bitRate = bitRate;
+    }
+
+    /**
+     * Gets a profile by name
+     *
+     * @param name the profile name
+     * @return the profile or the standard profile if name isn't recognized
+     */
+    public static VideoProfile fromName(String name) {
+        for (VideoProfile profile : ALL) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return STANDARD;
+    }
+
+    /**
+     * Creates a transcoder which encodes to this profile
+     *
+     * @return the transcoder
+     */
+    public VideoTranscoder createTranscoder() {
+        return new VideoTranscoder(maxDimension, bitRate);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+}
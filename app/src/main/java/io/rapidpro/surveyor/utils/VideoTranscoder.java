@@ -0,0 +1,631 @@
+package io.rapidpro.surveyor.utils;
+
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import io.rapidpro.surveyor.Logger;
+
+/**
+ * Re-encodes captured videos to a smaller H.264 profile using MediaCodec. Frames are decoded onto a
+ * SurfaceTexture and redrawn with GL onto the encoder's input surface, which takes care of scaling.
+ * Audio tracks are copied across as-is.
+ */
+public class VideoTranscoder {
+
+    private static final String OUTPUT_MIME = "video/avc";
+    private static final int OUTPUT_FRAME_RATE = 30;
+    private static final int OUTPUT_IFRAME_INTERVAL = 5;
+    private static final int TIMEOUT_USEC = 10000;
+
+    /**
+     * Videos smaller than this are never worth transcoding
+     */
+    private static final long MIN_TRANSCODE_BYTES = 1024 * 1024;
+
+    private int maxDimension;
+    private int bitRate;
+
+    /**
+     * Creates a new transcoder
+     *
+     * @param maxDimension the maximum width or height of the output video
+     * @param bitRate      the target video bit rate in bits per second
+     */
+    public VideoTranscoder(int maxDimension, int bitRate) {
+        this.maxDimension = maxDimension;
+        this.bitRate = bitRate;
+    }
+
+    /**
+     * Checks whether the given video is large enough to be worth transcoding
+     *
+     * @param src the video file
+     * @return true if video should be transcoded
+     */
+    public boolean shouldTranscode(File src) {
+        if (src.length() < MIN_TRANSCODE_BYTES) {
+            return false;
+        }
+
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(src.getAbsolutePath());
+            int width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            int height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            int sourceBitRate = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE));
+
+            // allow some slack on bit rate so we don't re-encode videos that are already close to our target
+            return Math.max(width, height) > maxDimension || sourceBitRate > (bitRate * 5) / 4;
+        } catch (RuntimeException e) {
+            Logger.e("Unable to read video metadata from " + src.getPath(), e);
+            return false;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Transcodes the given video file to the given destination
+     *
+     * @param src  the source video
+     * @param dest the destination file
+     */
+    public void transcode(File src, File dest) throws IOException {
+        MediaExtractor videoExtractor = null;
+        MediaExtractor audioExtractor = null;
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        MediaMuxer muxer = null;
+        InputSurface inputSurface = null;
+        OutputSurface outputSurface = null;
+        boolean decoderStarted = false;
+        boolean encoderStarted = false;
+        boolean muxerStarted = false;
+
+        try {
+            videoExtractor = new MediaExtractor();
+            videoExtractor.setDataSource(src.getAbsolutePath());
+            int videoTrack = findTrack(videoExtractor, "video/");
+            if (videoTrack < 0) {
+                throw new IOException("No video track found in " + src.getPath());
+            }
+            videoExtractor.selectTrack(videoTrack);
+            MediaFormat inputFormat = videoExtractor.getTrackFormat(videoTrack);
+
+            audioExtractor = new MediaExtractor();
+            audioExtractor.setDataSource(src.getAbsolutePath());
+            int audioTrack = findTrack(audioExtractor, "audio/");
+            MediaFormat audioFormat = null;
+            if (audioTrack >= 0) {
+                audioExtractor.selectTrack(audioTrack);
+                audioFormat = audioExtractor.getTrackFormat(audioTrack);
+            }
+
+            int[] size = scaleDimensions(inputFormat.getInteger(MediaFormat.KEY_WIDTH), inputFormat.getInteger(MediaFormat.KEY_HEIGHT));
+
+            MediaFormat outputFormat = MediaFormat.createVideoFormat(OUTPUT_MIME, size[0], size[1]);
+            outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+            outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, OUTPUT_FRAME_RATE);
+            outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, OUTPUT_IFRAME_INTERVAL);
+
+            encoder = MediaCodec.createEncoderByType(OUTPUT_MIME);
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = new InputSurface(encoder.createInputSurface());
+            inputSurface.makeCurrent();
+            encoder.start();
+            encoderStarted = true;
+
+            outputSurface = new OutputSurface();
+            // on API 23+ the decoder applies any rotation itself when rendering to a surface, but our output
+            // dimensions are unrotated and the muxer's orientation hint rotates on playback, so don't rotate twice.
+            // MediaFormat.removeKey needs API 29 but a rotation of zero has the same effect.
+            if (inputFormat.containsKey(MediaFormat.KEY_ROTATION)) {
+                inputFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+            }
+
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+            decoder.start();
+            decoderStarted = true;
+
+            muxer = new MediaMuxer(dest.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer.setOrientationHint(readRotation(src));
+
+            ByteBuffer[] decoderInputBuffers = decoder.getInputBuffers();
+            ByteBuffer[] encoderOutputBuffers = encoder.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            int muxerVideoTrack = -1;
+            int muxerAudioTrack = -1;
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean outputDone = false;
+
+            while (!outputDone) {
+                // feed the next sample from the extractor to the decoder
+                if (!inputDone) {
+                    int inputIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+                    if (inputIndex >= 0) {
+                        int sampleSize = videoExtractor.readSampleData(decoderInputBuffers[inputIndex], 0);
+                        if (sampleSize < 0) {
+                            decoder.queueInputBuffer(inputIndex, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputIndex, 0, sampleSize, videoExtractor.getSampleTime(), 0);
+                            videoExtractor.advance();
+                        }
+                    }
+                }
+
+                // drain the encoder and decoder until neither has anything more for us right now
+                boolean decoderOutputAvailable = !decoderDone;
+                boolean encoderOutputAvailable = true;
+                while (decoderOutputAvailable || encoderOutputAvailable) {
+                    int encoderStatus = encoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+
+                    if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        encoderOutputAvailable = false;
+                    } else if (encoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                        encoderOutputBuffers = encoder.getOutputBuffers();
+                    } else if (encoderStatus == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        // all tracks must be added before the muxer is started
+                        muxerVideoTrack = muxer.addTrack(encoder.getOutputFormat());
+                        if (audioFormat != null) {
+                            muxerAudioTrack = muxer.addTrack(audioFormat);
+                        }
+                        muxer.start();
+                        muxerStarted = true;
+                    } else if (encoderStatus >= 0) {
+                        ByteBuffer encoded = encoderOutputBuffers[encoderStatus];
+
+                        // codec config is already included in the format passed to the muxer
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                            info.size = 0;
+                        }
+                        if (info.size != 0) {
+                            encoded.position(info.offset);
+                            encoded.limit(info.offset + info.size);
+                            muxer.writeSampleData(muxerVideoTrack, encoded, info);
+                        }
+
+                        outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                        encoder.releaseOutputBuffer(encoderStatus, false);
+                        if (outputDone) {
+                            break;
+                        }
+                    }
+
+                    // only look at the decoder once the encoder has been drained
+                    if (encoderStatus != MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        continue;
+                    }
+
+                    if (!decoderDone) {
+                        int decoderStatus = decoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+
+                        if (decoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                            decoderOutputAvailable = false;
+                        } else if (decoderStatus >= 0) {
+                            boolean render = info.size != 0;
+                            decoder.releaseOutputBuffer(decoderStatus, render);
+
+                            if (render) {
+                                outputSurface.awaitNewImage();
+                                outputSurface.drawImage();
+                                inputSurface.setPresentationTime(info.presentationTimeUs * 1000);
+                                inputSurface.swapBuffers();
+                            }
+
+                            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                                encoder.signalEndOfInputStream();
+                                decoderDone = true;
+                                decoderOutputAvailable = false;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (muxerAudioTrack >= 0) {
+                copyTrack(audioExtractor, muxer, muxerAudioTrack);
+            }
+        } catch (RuntimeException e) {
+            // MediaCodec reports most failures as IllegalStateException
+            throw new IOException("Unable to transcode " + src.getPath(), e);
+        } finally {
+            // releasing can itself fail if we never got going, and that mustn't hide the original error
+            if (videoExtractor != null) {
+                try {
+                    videoExtractor.release();
+                } catch (RuntimeException e) {
+                    Logger.e("Unable to release video extractor", e);
+                }
+            }
+            if (audioExtractor != null) {
+                try {
+                    audioExtractor.release();
+                } catch (RuntimeException e) {
+                    Logger.e("Unable to release audio extractor", e);
+                }
+            }
+            if (decoder != null) {
+                releaseCodec(decoder, decoderStarted);
+            }
+            if (encoder != null) {
+                releaseCodec(encoder, encoderStarted);
+            }
+            if (outputSurface != null) {
+                try {
+                    outputSurface.release();
+                } catch (RuntimeException e) {
+                    Logger.e("Unable to release output surface", e);
+                }
+            }
+            if (inputSurface != null) {
+                try {
+                    inputSurface.release();
+                } catch (RuntimeException e) {
+                    Logger.e("Unable to release input surface", e);
+                }
+            }
+            if (muxer != null) {
+                try {
+                    if (muxerStarted) {
+                        muxer.stop();
+                    }
+                    muxer.release();
+                } catch (RuntimeException e) {
+                    Logger.e("Unable to release muxer", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the given codec if it was started and releases it, logging rather than throwing any errors
+     */
+    private static void releaseCodec(MediaCodec codec, boolean started) {
+        if (started) {
+            try {
+                codec.stop();
+            } catch (RuntimeException e) {
+                Logger.e("Unable to stop codec", e);
+            }
+        }
+        try {
+            codec.release();
+        } catch (RuntimeException e) {
+            Logger.e("Unable to release codec", e);
+        }
+    }
+
+    /**
+     * Scales the given dimensions to fit our max dimension, rounding to multiples of 16 which
+     * hardware encoders handle best
+     */
+    int[] scaleDimensions(int width, int height) {
+        int longest = Math.max(width, height);
+        double ratio = longest > maxDimension ? (double) maxDimension / (double) longest : 1.0;
+
+        int scaledWidth = Math.max(16, (int) Math.round(width * ratio / 16.0) * 16);
+        int scaledHeight = Math.max(16, (int) Math.round(height * ratio / 16.0) * 16);
+        return new int[]{scaledWidth, scaledHeight};
+    }
+
+    /**
+     * Copies every sample of the selected extractor track to the given muxer track
+     */
+    private static void copyTrack(MediaExtractor extractor, MediaMuxer muxer, int muxerTrack) {
+        ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        while (true) {
+            int sampleSize = extractor.readSampleData(buffer, 0);
+            if (sampleSize < 0) {
+                break;
+            }
+            info.offset = 0;
+            info.size = sampleSize;
+            info.presentationTimeUs = extractor.getSampleTime();
+            info.flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0 ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+
+            muxer.writeSampleData(muxerTrack, buffer, info);
+            extractor.advance();
+        }
+    }
+
+    private static int findTrack(MediaExtractor extractor, String mimePrefix) {
+        for (int t = 0; t < extractor.getTrackCount(); t++) {
+            String mime = extractor.getTrackFormat(t).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static int readRotation(File src) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(src.getAbsolutePath());
+            return parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+        } catch (RuntimeException e) {
+            return 0;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Wraps the encoder's input surface with an EGL context so that we can render frames onto it
+     */
+    private static class InputSurface {
+        private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+        private Surface surface;
+        private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+        private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+        private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+
+        InputSurface(Surface surface) {
+            this.surface = surface;
+
+            eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+            int[] version = new int[2];
+            if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+                throw new IllegalStateException("Unable to initialize EGL display");
+            }
+
+            int[] configAttribs = {
+                    EGL14.EGL_RED_SIZE, 8,
+                    EGL14.EGL_GREEN_SIZE, 8,
+                    EGL14.EGL_BLUE_SIZE, 8,
+                    EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                    EGL_RECORDABLE_ANDROID, 1,
+                    EGL14.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] numConfigs = new int[1];
+            if (!EGL14.eglChooseConfig(eglDisplay, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+                throw new IllegalStateException("Unable to find a recordable EGL config");
+            }
+
+            int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+            eglContext = EGL14.eglCreateContext(eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+
+            int[] surfaceAttribs = {EGL14.EGL_NONE};
+            eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, configs[0], surface, surfaceAttribs, 0);
+
+            if (eglContext == null || eglSurface == null) {
+                throw new IllegalStateException("Unable to create EGL context or surface");
+            }
+        }
+
+        void makeCurrent() {
+            if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+                throw new IllegalStateException("eglMakeCurrent failed");
+            }
+        }
+
+        void setPresentationTime(long nanos) {
+            EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, nanos);
+        }
+
+        void swapBuffers() {
+            EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+        }
+
+        void release() {
+            if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+                EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+                EGL14.eglDestroySurface(eglDisplay, eglSurface);
+                EGL14.eglDestroyContext(eglDisplay, eglContext);
+                EGL14.eglReleaseThread();
+                EGL14.eglTerminate(eglDisplay);
+            }
+            surface.release();
+
+            eglDisplay = EGL14.EGL_NO_DISPLAY;
+            eglContext = EGL14.EGL_NO_CONTEXT;
+            eglSurface = EGL14.EGL_NO_SURFACE;
+        }
+    }
+
+    /**
+     * Surface that the decoder renders to, backed by an external GL texture which we then draw
+     * as a full-frame quad onto whatever EGL surface is current
+     */
+    private static class OutputSurface implements SurfaceTexture.OnFrameAvailableListener {
+        private static final long FRAME_TIMEOUT_MS = 2500;
+
+        private static final String VERTEX_SHADER =
+                "uniform mat4 uSTMatrix;\n" +
+                        "attribute vec4 aPosition;\n" +
+                        "attribute vec4 aTextureCoord;\n" +
+                        "varying vec2 vTextureCoord;\n" +
+                        "void main() {\n" +
+                        "  gl_Position = aPosition;\n" +
+                        "  vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
+                        "}\n";
+
+        private static final String FRAGMENT_SHADER =
+                "#extension GL_OES_EGL_image_external : require\n" +
+                        "precision mediump float;\n" +
+                        "varying vec2 vTextureCoord;\n" +
+                        "uniform samplerExternalOES sTexture;\n" +
+                        "void main() {\n" +
+                        "  gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
+                        "}\n";
+
+        // interleaved X, Y, Z, U, V for a triangle strip covering the frame
+        private static final float[] VERTICES = {
+                -1.0f, -1.0f, 0, 0.f, 0.f,
+                1.0f, -1.0f, 0, 1.f, 0.f,
+                -1.0f, 1.0f, 0, 0.f, 1.f,
+                1.0f, 1.0f, 0, 1.f, 1.f,
+        };
+        private static final int FLOAT_SIZE = 4;
+        private static final int VERTICES_STRIDE = 5 * FLOAT_SIZE;
+
+        private final Object frameLock = new Object();
+        private boolean frameAvailable;
+
+        private SurfaceTexture surfaceTexture;
+        private Surface surface;
+        private FloatBuffer vertices;
+        private float[] stMatrix = new float[16];
+        private int program;
+        private int textureId;
+        private int positionHandle;
+        private int textureCoordHandle;
+        private int stMatrixHandle;
+
+        OutputSurface() {
+            vertices = ByteBuffer.allocateDirect(VERTICES.length * FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            vertices.put(VERTICES).position(0);
+
+            program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+            positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+            textureCoordHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+            stMatrixHandle = GLES20.glGetUniformLocation(program, "uSTMatrix");
+
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            textureId = textures[0];
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+            GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+            // without a looper on this thread, frame callbacks are delivered on the main looper
+            surfaceTexture = new SurfaceTexture(textureId);
+            surfaceTexture.setOnFrameAvailableListener(this);
+            surface = new Surface(surfaceTexture);
+        }
+
+        Surface getSurface() {
+            return surface;
+        }
+
+        /**
+         * Waits for the decoder's next frame and latches it into our texture
+         */
+        void awaitNewImage() {
+            synchronized (frameLock) {
+                long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+                while (!frameAvailable) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException("Timed out waiting for decoded frame");
+                    }
+                    try {
+                        frameLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                frameAvailable = false;
+            }
+
+            surfaceTexture.updateTexImage();
+        }
+
+        void drawImage() {
+            surfaceTexture.getTransformMatrix(stMatrix);
+
+            GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            GLES20.glUseProgram(program);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+            vertices.position(0);
+            GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, VERTICES_STRIDE, vertices);
+            GLES20.glEnableVertexAttribArray(positionHandle);
+            vertices.position(3);
+            GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, VERTICES_STRIDE, vertices);
+            GLES20.glEnableVertexAttribArray(textureCoordHandle);
+
+            GLES20.glUniformMatrix4fv(stMatrixHandle, 1, false, stMatrix, 0);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        }
+
+        @Override
+        public void onFrameAvailable(SurfaceTexture st) {
+            synchronized (frameLock) {
+                frameAvailable = true;
+                frameLock.notifyAll();
+            }
+        }
+
+        void release() {
+            GLES20.glDeleteProgram(program);
+            surface.release();
+            surfaceTexture.release();
+        }
+
+        private static int createProgram(String vertexSource, String fragmentSource) {
+            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+
+            int program = GLES20.glCreateProgram();
+            GLES20.glAttachShader(program, vertexShader);
+            GLES20.glAttachShader(program, fragmentShader);
+            GLES20.glLinkProgram(program);
+
+            int[] linkStatus = new int[1];
+            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            if (linkStatus[0] != GLES20.GL_TRUE) {
+                String log = GLES20.glGetProgramInfoLog(program);
+                GLES20.glDeleteProgram(program);
+                throw new IllegalStateException("Unable to link program: " + log);
+            }
+            return program;
+        }
+
+        private static int loadShader(int type, String source) {
+            int shader = GLES20.glCreateShader(type);
+            GLES20.glShaderSource(shader, source);
+            GLES20.glCompileShader(shader);
+
+            int[] compiled = new int[1];
+            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+            if (compiled[0] == 0) {
+                String log = GLES20.glGetShaderInfoLog(shader);
+                GLES20.glDeleteShader(shader);
+                throw new IllegalStateException("Unable to compile shader: " + log);
+            }
+            return shader;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package io.rapidpro.surveyor.test;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.net.responses.Boundary;
+import io.rapidpro.surveyor.net.responses.Field;
+import io.rapidpro.surveyor.net.responses.Group;
+import io.rapidpro.surveyor.utils.JsonUtils;
+import io.rapidpro.surveyor.utils.RawJson;
+
+/**
+ * Generates realistic looking org data at any scale for tests and benchmarks. Everything is
+ * deterministic so the same arguments always produce the same data. See {@link SyntheticOrg} for
+ * installing a complete org on disk.
+ */
+public class SyntheticData {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Generates a deterministic UUID from the given parts
+     */
+    public static String uuid(Object... parts) {
+        return UUID.nameUUIDFromBytes(Arrays.toString(parts).getBytes(UTF8)).toString();
+    }
+
+    /**
+     * Generates a flow definition with the given number of questions, each of which is a message
+     * followed by a wait with a few categories
+     *
+     * @param index     the index of the flow, used to generate its UUID and name
+     * @param questions the number of questions
+     * @param legacy    whether to generate a 11.x definition rather than 13+
+     * @return the definition JSON
+     */
+    public static String flowDefinition(int index, int questions, boolean legacy) {
+        try {
+            StringWriter buffer = new StringWriter();
+            JsonWriter out = new JsonWriter(buffer);
+            if (legacy) {
+                writeLegacyFlow(out, index, questions);
+            } else {
+                writeFlow(out, index, questions);
+            }
+            out.close();
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generates a definitions API response with the given number of flows, every fifth of which
+     * is in the 11.x format
+     *
+     * @param flows     the number of flows
+     * @param questions the number of questions in each flow
+     * @return the response JSON
+     */
+    public static String definitions(int flows, int questions) {
+        StringBuilder sb = new StringBuilder("{\"version\":\"13.0.0\",\"site\":\"https://app.rapidpro.io\",\"flows\":[");
+        for (int f = 0; f < flows; f++) {
+            if (f > 0) {
+                sb.append(",");
+            }
+            sb.append(flowDefinition(f, questions, f % 5 == 4));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Generates flow definitions, every fifth of which is in the 11.x format
+     */
+    public static List<RawJson> flowDefinitions(int flows, int questions) {
+        List<RawJson> definitions = new ArrayList<>(flows);
+        for (int f = 0; f < flows; f++) {
+            definitions.add(new RawJson(flowDefinition(f, questions, f % 5 == 4)));
+        }
+        return definitions;
+    }
+
+    /**
+     * Generates flow summaries to match {@link #flowDefinitions(int, int)}
+     */
+    public static List<Flow> flowSummaries(int flows, int questions) {
+        List<Flow> summaries = new ArrayList<>(flows);
+        for (int f = 0; f < flows; f++) {
+            summaries.add(new Flow(uuid("flow", f), "Flow " + f, f % 5 == 4 ? "11.12" : "13.0.0", f + 1, questions));
+        }
+        return summaries;
+    }
+
+    /**
+     * Generates boundaries for a country with the given number of states, districts per state and
+     * wards per district, in the order the API returns them (by level)
+     *
+     * @return the boundaries
+     */
+    public static List<Boundary> boundaries(int states, int districts, int wards) {
+        StringBuilder sb = new StringBuilder("[");
+        appendBoundary(sb, "C", "Country", null, 0);
+
+        for (int s = 0; s < states; s++) {
+            appendBoundary(sb, "S" + s, "State " + s, "C", 1);
+        }
+        for (int s = 0; s < states; s++) {
+            for (int d = 0; d < districts; d++) {
+                appendBoundary(sb, "D" + s + "." + d, "District " + s + "." + d, "S" + s, 2);
+            }
+        }
+        for (int s = 0; s < states; s++) {
+            for (int d = 0; d < districts; d++) {
+                for (int w = 0; w < wards; w++) {
+                    appendBoundary(sb, "W" + s + "." + d + "." + w, "Ward " + s + "." + d + "." + w, "D" + s + "." + d, 3);
+                }
+            }
+        }
+        sb.setCharAt(sb.length() - 1, ']');
+
+        return Arrays.asList(JsonUtils.unmarshal(sb.toString(), Boundary[].class));
+    }
+
+    public static List<Field> fields(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int f = 0; f < count; f++) {
+            String type = f % 10 == 9 ? "district" : (f % 3 == 0 ? "numeric" : "text");
+            sb.append(f > 0 ? "," : "").append("{\"key\":\"field_").append(f).append("\",\"label\":\"Field ").append(f)
+                    .append("\",\"value_type\":\"").append(type).append("\"}");
+        }
+        return Arrays.asList(JsonUtils.unmarshal(sb.append("]").toString(), Field[].class));
+    }
+
+    public static List<Group> groups(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int g = 0; g < count; g++) {
+            sb.append(g > 0 ? "," : "").append("{\"uuid\":\"").append(uuid("group", g)).append("\",\"name\":\"Group ").append(g)
+                    .append("\",\"query\":null,\"count\":").append(g * 10).append("}");
+        }
+        return Arrays.asList(JsonUtils.unmarshal(sb.append("]").toString(), Group[].class));
+    }
+
+    /**
+     * Generates a complete set of org assets
+     *
+     * @param flows     the number of flows
+     * @param questions the number of questions per flow
+     * @param states    the number of states
+     * @param districts the number of districts per state
+     * @param wards     the number of wards per district
+     * @return the assets
+     */
+    public static OrgAssets orgAssets(int flows, int questions, int states, int districts, int wards) {
+        return OrgAssets.fromTemba(fields(20), groups(10), boundaries(states, districts, wards), flowDefinitions(flows, questions));
+    }
+
+    /**
+     * Generates the event payloads of a run through a flow with the given number of questions
+     *
+     * @param flowIndex the index of the flow
+     * @param questions the number of questions
+     * @return the event payloads
+     */
+    public static List<String> events(int flowIndex, int questions) {
+        List<String> events = new ArrayList<>(questions * 4);
+        for (int q = 0; q < questions; q++) {
+            String step = uuid("step", flowIndex, q);
+            events.add("{\"type\":\"msg_created\",\"created_on\":\"2019-06-12T18:45:08.712493Z\",\"step_uuid\":\"" + step + "\"," +
+                    "\"msg\":{\"uuid\":\"" + uuid("out", flowIndex, q) + "\",\"text\":\"Question " + q + ": what is your favorite color?\"}}");
+            events.add("{\"type\":\"msg_wait\",\"created_on\":\"2019-06-12T18:45:08.712958Z\",\"step_uuid\":\"" + step + "\"}");
+            events.add("{\"type\":\"msg_received\",\"created_on\":\"2019-06-12T18:45:12.331207Z\",\"step_uuid\":\"" + step + "\"," +
+                    "\"msg\":{\"uuid\":\"" + uuid("in", flowIndex, q) + "\",\"text\":\"Blue\",\"attachments\":[]}}");
+            events.add("{\"type\":\"run_result_changed\",\"created_on\":\"2019-06-12T18:45:12.331821Z\",\"step_uuid\":\"" + step + "\"," +
+                    "\"name\":\"Question " + q + "\",\"value\":\"Blue\",\"category\":\"Blue\",\"input\":\"Blue\"}");
+        }
+        return events;
+    }
+
+    /**
+     * Generates the JSON of a session which has run through a flow with the given number of questions
+     *
+     * @param flowIndex the index of the flow
+     * @param questions the number of questions
+     * @return the session JSON
+     */
+    public static String sessionJSON(int flowIndex, int questions) {
+        StringBuilder path = new StringBuilder();
+        StringBuilder results = new StringBuilder();
+        for (int q = 0; q < questions; q++) {
+            path.append(q > 0 ? "," : "").append("{\"uuid\":\"").append(uuid("step", flowIndex, q)).append("\",\"node_uuid\":\"")
+                    .append(uuid("node", flowIndex, q, "wait")).append("\",\"exit_uuid\":\"").append(uuid("exit", flowIndex, q, 0))
+                    .append("\",\"arrived_on\":\"2019-06-12T18:45:08.712493Z\"}");
+            results.append(q > 0 ? "," : "").append("\"question_").append(q).append("\":{\"name\":\"Question ").append(q)
+                    .append("\",\"value\":\"Blue\",\"category\":\"Blue\",\"node_uuid\":\"").append(uuid("node", flowIndex, q, "wait"))
+                    .append("\",\"input\":\"Blue\",\"created_on\":\"2019-06-12T18:45:12.331821Z\"}");
+        }
+
+        return "{\"uuid\":\"" + uuid("session", flowIndex) + "\",\"type\":\"messaging_offline\",\"environment\":{\"date_format\":\"DD-MM-YYYY\"," +
+                "\"time_format\":\"tt:mm\",\"timezone\":\"Africa/Kigali\",\"default_language\":\"eng\",\"allowed_languages\":[\"eng\",\"fra\"]," +
+                "\"default_country\":\"RW\",\"redaction_policy\":\"none\"},\"trigger\":{\"type\":\"manual\",\"flow\":{\"uuid\":\"" + uuid("flow", flowIndex) +
+                "\",\"name\":\"Flow " + flowIndex + "\"},\"triggered_on\":\"2019-06-12T18:45:08.712493Z\"},\"contact\":{\"uuid\":\"" + uuid("contact", flowIndex) +
+                "\",\"id\":0,\"created_on\":\"2019-06-12T18:45:08.712493Z\"},\"runs\":[{\"uuid\":\"" + uuid("run", flowIndex) +
+                "\",\"flow\":{\"uuid\":\"" + uuid("flow", flowIndex) + "\",\"name\":\"Flow " + flowIndex + "\"},\"path\":[" + path +
+                "],\"results\":{" + results + "},\"status\":\"completed\",\"created_on\":\"2019-06-12T18:45:08.712493Z\"," +
+                "\"modified_on\":\"2019-06-12T18:45:12.331821Z\",\"exited_on\":\"2019-06-12T18:45:12.331821Z\"}],\"status\":\"completed\"}";
+    }
+
+    private static void writeFlow(JsonWriter out, int index, int questions) throws IOException {
+        out.beginObject();
+        out.name("uuid").value(uuid("flow", index));
+        out.name("name").value("Flow " + index);
+        out.name("spec_version").value("13.0.0");
+        out.name("language").value("eng");
+        out.name("type").value("messaging_offline");
+        out.name("revision").value(index + 1);
+        out.name("expire_after_minutes").value(10080);
+        out.name("localization").beginObject().endObject();
+        out.name("nodes").beginArray();
+
+        for (int q = 0; q < questions; q++) {
+            String waitNode = uuid("node", index, q, "wait");
+            String nextNode = uuid("node", index, q + 1, "ask");
+
+            out.beginObject();
+            out.name("uuid").value(uuid("node", index, q, "ask"));
+            out.name("actions").beginArray().beginObject();
+            out.name("type").value("send_msg");
+            out.name("uuid").value(uuid("action", index, q));
+            out.name("text").value("Question " + q + ": what is your favorite color?");
+            out.name("quick_replies").beginArray().value("Red").value("Blue").endArray();
+            out.endObject().endArray();
+            out.name("exits").beginArray().beginObject();
+            out.name("uuid").value(uuid("exit", index, q, "ask"));
+            out.name("destination_uuid").value(waitNode);
+            out.endObject().endArray();
+            out.endObject();
+
+            out.beginObject();
+            out.name("uuid").value(waitNode);
+            out.name("router").beginObject();
+            out.name("type").value("switch");
+            out.name("wait").beginObject().name("type").value("msg").endObject();
+            out.name("result_name").value("Question " + q);
+            out.name("operand").value("@input.text");
+            out.name("categories").beginArray();
+            for (int c = 0; c < 3; c++) {
+                out.beginObject();
+                out.name("uuid").value(uuid("category", index, q, c));
+                out.name("name").value(c == 0 ? "Red" : (c == 1 ? "Blue" : "Other"));
+                out.name("exit_uuid").value(uuid("exit", index, q, c));
+                out.endObject();
+            }
+            out.endArray();
+            out.name("cases").beginArray();
+            for (int c = 0; c < 2; c++) {
+                out.beginObject();
+                out.name("uuid").value(uuid("case", index, q, c));
+                out.name("type").value("has_any_word");
+                out.name("arguments").beginArray().value(c == 0 ? "Red" : "Blue").endArray();
+                out.name("category_uuid").value(uuid("category", index, q, c));
+                out.endObject();
+            }
+            out.endArray();
+            out.name("default_category_uuid").value(uuid("category", index, q, 2));
+            out.endObject();
+            out.name("exits").beginArray();
+            for (int c = 0; c < 3; c++) {
+                out.beginObject();
+                out.name("uuid").value(uuid("exit", index, q, c));
+                if (q + 1 < questions) {
+                    out.name("destination_uuid").value(nextNode);
+                }
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        out.endArray();
+        out.endObject();
+    }
+
+    private static void writeLegacyFlow(JsonWriter out, int index, int questions) throws IOException {
+        out.beginObject();
+        out.name("version").value("11.12");
+        out.name("flow_type").value("S");
+        out.name("base_language").value("eng");
+        out.name("entry").value(uuid("node", index, 0, "ask"));
+        out.name("action_sets").beginArray();
+        for (int q = 0; q < questions; q++) {
+            out.beginObject();
+            out.name("uuid").value(uuid("node", index, q, "ask"));
+            out.name("destination").value(uuid("node", index, q, "wait"));
+            out.name("actions").beginArray().beginObject();
+            out.name("type").value("reply");
+            out.name("uuid").value(uuid("action", index, q));
+            out.name("msg").beginObject().name("eng").value("Question " + q + ": what is your favorite color?").endObject();
+            out.endObject().endArray();
+            out.name("exit_uuid").value(uuid("exit", index, q, "ask"));
+            out.endObject();
+        }
+        out.endArray();
+        out.name("rule_sets").beginArray();
+        for (int q = 0; q < questions; q++) {
+            String next = q + 1 < questions ? uuid("node", index, q + 1, "ask") : null;
+
+            out.beginObject();
+            out.name("uuid").value(uuid("node", index, q, "wait"));
+            out.name("label").value("Question " + q);
+            out.name("ruleset_type").value("wait_message");
+            out.name("operand").value("@step.value");
+            out.name("rules").beginArray();
+            for (int c = 0; c < 3; c++) {
+                String category = c == 0 ? "Red" : (c == 1 ? "Blue" : "Other");
+                out.beginObject();
+                out.name("uuid").value(uuid("category", index, q, c));
+                out.name("category").beginObject().name("eng").value(category).endObject();
+                out.name("destination").value(next);
+                out.name("test").beginObject();
+                if (c < 2) {
+                    out.name("type").value("contains_any");
+                    out.name("test").beginObject().name("eng").value(category).endObject();
+                } else {
+                    out.name("type").value("true");
+                }
+                out.endObject();
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+        out.endArray();
+        out.name("metadata").beginObject();
+        out.name("uuid").value(uuid("flow", index));
+        out.name("name").value("Flow " + index);
+        out.name("revision").value(index + 1);
+        out.endObject();
+        out.endObject();
+    }
+
+    private static void appendBoundary(StringBuilder sb, String osmID, String name, String parentOsmID, int level) {
+        sb.append("{\"osm_id\":\"").append(osmID).append("\",\"name\":\"").append(name).append("\",\"parent\":");
+        if (parentOsmID != null) {
+            sb.append("{\"osm_id\":\"").append(parentOsmID).append("\",\"name\":\"\"}");
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"level\":").append(level).append(",\"aliases\":[\"").append(name.toUpperCase()).append("\"]},");
+    }
+}
@@ -0,0 +1,217 @@
+package io.rapidpro.surveyor.test;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.rapidpro.surveyor.data.AssetStore;
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.MediaBlobStore;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * A synthetic org of configurable size which can be installed on disk as if it had been downloaded,
+ * along with pending submissions, e.g.
+ *
+ * <pre>
+ * SyntheticOrg org = SyntheticOrg.large();
+ * org.install(orgsDir);
+ * org.installSubmissions(submissionsDir, mediaStore);
+ * </pre>
+ * <p>
+ * Every fifth flow is in the 11.x format so that both spec formats are always covered.
+ */
+public class SyntheticOrg {
+
+    private static final String DETAILS_FILE = "details.json";
+    private static final String FLOWS_FILE = "flows.json";
+    private static final String ASSETS_DIR = "assets";
+
+    private String uuid = SyntheticData.uuid("org");
+    private int flows = 10;
+    private int questions = 5;
+    private int states = 5;
+    private int districts = 5;
+    private int wards = 5;
+    private int submissions = 0;
+    private int mediaPerSubmission = 0;
+    private int mediaSize = 1024;
+
+    /**
+     * Creates a small org which is quick to install, similar in size to the org1 fixture
+     */
+    public static SyntheticOrg small() {
+        return new SyntheticOrg();
+    }
+
+    /**
+     * Creates an org as large as the biggest we've seen in production: 500 flows, ~100k boundaries
+     * and 5,000 pending submissions each with a photo
+     */
+    public static SyntheticOrg large() {
+        return new SyntheticOrg().withFlows(500, 10).withLocations(40, 50, 50).withSubmissions(5000, 1);
+    }
+
+    public SyntheticOrg withUuid(String uuid) {
+        this.uuid = uuid;
+        return this;
+    }
+
+    /**
+     * Sets the number of flows and the number of questions in each
+     */
+    public SyntheticOrg withFlows(int flows, int questions) {
+        this.flows = flows;
+        this.questions = questions;
+        return this;
+    }
+
+    /**
+     * Sets the size of the location hierarchy below the country
+     */
+    public SyntheticOrg withLocations(int states, int districtsPerState, int wardsPerDistrict) {
+        this.states = states;
+        this.districts = districtsPerState;
+        this.wards = wardsPerDistrict;
+        return this;
+    }
+
+    /**
+     * Sets the number of pending submissions, spread evenly across flows, and how many media
+     * files each has
+     */
+    public SyntheticOrg withSubmissions(int submissions, int mediaPerSubmission) {
+        this.submissions = submissions;
+        this.mediaPerSubmission = mediaPerSubmission;
+        return this;
+    }
+
+    /**
+     * Sets the size in bytes of each generated media file
+     */
+    public SyntheticOrg withMediaSize(int mediaSize) {
+        this.mediaSize = mediaSize;
+        return this;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public int getFlowCount() {
+        return flows;
+    }
+
+    public int getBoundaryCount() {
+        return 1 + states + states * districts + states * districts * wards;
+    }
+
+    public int getSubmissionCount() {
+        return submissions;
+    }
+
+    /**
+     * Gets the flow summaries of this org
+     */
+    public List<Flow> getFlows() {
+        return SyntheticData.flowSummaries(flows, questions);
+    }
+
+    /**
+     * Generates the assets of this org
+     */
+    public OrgAssets getAssets() {
+        return SyntheticData.orgAssets(flows, questions, states, districts, wards);
+    }
+
+    /**
+     * Installs this org's details and flow summaries, without assets
+     *
+     * @param orgsDir the orgs root directory
+     * @return the org directory
+     */
+    public File installDetails(File orgsDir) throws IOException {
+        File dir = new File(orgsDir, uuid);
+        dir.mkdirs();
+
+        FileUtils.writeStringToFile(new File(dir, DETAILS_FILE), "{\"name\":\"Synthetic\",\"country\":\"RW\",\"languages\":[\"eng\",\"fra\"]," +
+                "\"primary_language\":\"eng\",\"timezone\":\"Africa/Kigali\",\"date_style\":\"day_first\",\"anon\":false,\"token\":\"abc123\"}");
+        FileUtils.writeStringToFile(new File(dir, FLOWS_FILE), JsonUtils.marshal(getFlows()));
+        return dir;
+    }
+
+    /**
+     * Installs this org with its details, flow summaries and assets
+     *
+     * @param orgsDir the orgs root directory
+     * @return the org directory
+     */
+    public File install(File orgsDir) throws IOException {
+        File dir = installDetails(orgsDir);
+        new AssetStore(new File(dir, ASSETS_DIR), true).write(getAssets());
+        return dir;
+    }
+
+    /**
+     * Installs this org's completed submissions as the submission service would have written them
+     *
+     * @param submissionsDir the submissions root directory
+     * @param mediaStore     the store to add media to
+     * @return the submission directories
+     */
+    public List<File> installSubmissions(File submissionsDir, MediaBlobStore mediaStore) throws IOException {
+        List<Flow> flowList = getFlows();
+        File orgDir = new File(submissionsDir, uuid);
+        Random random = new Random(submissions);
+
+        List<File> dirs = new ArrayList<>(submissions);
+        for (int s = 0; s < submissions; s++) {
+            int flowIndex = s % flowList.size();
+            File dir = new File(new File(orgDir, flowList.get(flowIndex).getUuid()), SyntheticData.uuid("submission", uuid, s));
+            dir.mkdirs();
+
+            List<String> events = SyntheticData.events(flowIndex, questions);
+            List<String> refs = new ArrayList<>(mediaPerSubmission);
+
+            for (int m = 0; m < mediaPerSubmission; m++) {
+                byte[] data = new byte[mediaSize];
+                random.nextBytes(data);
+                File blob = mediaStore.add(data, "jpg");
+                refs.add(blob.getName());
+
+                events.add("{\"type\":\"msg_received\",\"created_on\":\"2019-06-12T18:45:14.102331Z\",\"msg\":{\"uuid\":\"" +
+                        SyntheticData.uuid("media", uuid, s, m) + "\",\"text\":\"\",\"attachments\":[\"image/jpeg:" + blob.toURI() + "\"]}}");
+            }
+
+            FileUtils.writeStringToFile(new File(dir, "session.json"), SyntheticData.sessionJSON(flowIndex, questions));
+            FileUtils.writeStringToFile(new File(dir, "modifiers.jsonl"), "");
+            writeLines(new File(dir, "events.jsonl"), events);
+            if (!refs.isEmpty()) {
+                writeLines(new File(dir, "media.refs"), refs);
+            }
+            FileUtils.writeStringToFile(new File(dir, ".completed"), "");
+
+            dirs.add(dir);
+        }
+        return dirs;
+    }
+
+    private static void writeLines(File file, List<String> lines) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.rapidpro.surveyor.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.rapidpro.surveyor.data.AssetStore;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.test.Benchmark;
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * Benchmarks loading a large org's assets from the asset store, plain and compressed, against reading
+ * the single legacy assets.json. Only run when the build is invoked with -Pbenchmarks.
+ */
+public class AssetStoreBenchmark {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws Exception {
+        OrgAssets assets = SyntheticData.orgAssets(50, 50, 20, 25, 40);
+
+        final File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, JsonUtils.marshal(assets));
+
+        final AssetStore plain = new AssetStore(new File(folder.getRoot(), "plain"), false);
+        plain.write(assets);
+        final AssetStore compressed = new AssetStore(new File(folder.getRoot(), "compressed"), true);
+        compressed.write(assets);
+
+        System.out.println(String.format("assets size: legacy=%,d plain=%,d compressed=%,d bytes", legacy.length(),
+                FileUtils.sizeOfDirectory(new File(folder.getRoot(), "plain")),
+                FileUtils.sizeOfDirectory(new File(folder.getRoot(), "compressed"))));
+
+        final String flowUUID = SyntheticData.uuid("flow", 1);
+
+        Benchmark.run("assets.json (legacy, whole file)", 2, 10, new Benchmark.Operation() {
+            @Override
+            public void run() throws IOException {
+                FileUtils.readFileToString(legacy);
+            }
+        });
+        Benchmark.run("assets (plain, all flows)", 2, 10, new Benchmark.Operation() {
+            @Override
+            public void run() throws IOException {
+                plain.load();
+            }
+        });
+        Benchmark.run("assets (compressed, all flows)", 2, 10, new Benchmark.Operation() {
+            @Override
+            public void run() throws IOException {
+                compressed.load();
+            }
+        });
+        Benchmark.run("assets (compressed, one flow)", 2, 10, new Benchmark.Operation() {
+            @Override
+            public void run() throws IOException {
+                compressed.load(flowUUID);
+            }
+        });
+    }
+}
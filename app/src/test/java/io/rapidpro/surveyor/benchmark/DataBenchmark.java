@@ -0,0 +1,207 @@
+package io.rapidpro.surveyor.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.engine.LocationAsset;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.engine.events.EventDecoders;
+import io.rapidpro.surveyor.net.responses.Boundary;
+import io.rapidpro.surveyor.net.responses.Definitions;
+import io.rapidpro.surveyor.test.Benchmark;
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.utils.JsonUtils;
+import io.rapidpro.surveyor.utils.RawJson;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Benchmarks for parsing and serializing flows, org assets and events at different org sizes, mostly
+ * against the tree parsing and reflection we used before. Only run when the build is invoked with
+ * -Pbenchmarks.
+ */
+public class DataBenchmark {
+
+    private static final int[] FLOW_COUNTS = {10, 100, 500};
+    private static final int[][] LOCATION_SIZES = {{10, 10, 10}, {20, 25, 40}, {40, 50, 50}};
+
+    private static final Type FLOW_LIST = new TypeToken<List<Flow>>() {
+    }.getType();
+
+    private static final Type BOUNDARY_LIST = new TypeToken<List<Boundary>>() {
+    }.getType();
+
+    @Test
+    public void flowExtract() throws Exception {
+        for (final boolean legacy : new boolean[]{false, true}) {
+            for (int questions : new int[]{5, 50}) {
+                final RawJson definition = new RawJson(SyntheticData.flowDefinition(0, questions, legacy));
+                assertThat(Flow.extract(definition).getQuestionCount(), is(questions));
+                String label = (legacy ? "v11" : "v13") + ", " + questions + " questions";
+
+                Benchmark.run("Flow.extract (" + label + ", tree parse only)", 200, 2000, new Benchmark.Operation() {
+                    @Override
+                    public void run() {
+                        JsonUtils.unmarshal(definition.toString(), JsonObject.class);
+                    }
+                });
+                Benchmark.run("Flow.extract (" + label + ")", 200, 2000, new Benchmark.Operation() {
+                    @Override
+                    public void run() {
+                        Flow.extract(definition);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void definitionsUnmarshal() throws Exception {
+        final Gson treeGson = newTreeGson();
+
+        for (final int flows : FLOW_COUNTS) {
+            final String json = SyntheticData.definitions(flows, 10);
+
+            Benchmark.run("Definitions unmarshal (" + flows + " flows, tree)", 3, 20, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    treeGson.fromJson(json, Definitions.class);
+                }
+            });
+            Benchmark.run("Definitions unmarshal (" + flows + " flows)", 3, 20, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    JsonUtils.unmarshal(json, Definitions.class);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void orgAssetsMarshal() throws Exception {
+        for (int s = 0; s < FLOW_COUNTS.length; s++) {
+            int[] size = LOCATION_SIZES[s];
+            final OrgAssets assets = SyntheticData.orgAssets(FLOW_COUNTS[s], 10, size[0], size[1], size[2]);
+            final String json = JsonUtils.marshal(assets);
+            String label = FLOW_COUNTS[s] + " flows, " + (size[0] * size[1] * size[2]) + " wards";
+
+            Benchmark.run("OrgAssets marshal (" + label + ")", 2, 10, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    JsonUtils.marshal(assets);
+                }
+            });
+            Benchmark.run("OrgAssets unmarshal (" + label + ")", 2, 10, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    JsonUtils.unmarshal(json, OrgAssets.class);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void locationsFromTemba() throws Exception {
+        for (int[] size : LOCATION_SIZES) {
+            final List<Boundary> boundaries = SyntheticData.boundaries(size[0], size[1], size[2]);
+
+            Benchmark.run("LocationAsset.fromTemba (" + boundaries.size() + " boundaries)", 2, 10, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    LocationAsset.fromTemba(boundaries);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void adapters() throws Exception {
+        final String flowsJson = JsonUtils.marshal(SyntheticData.flowSummaries(500, 10));
+        final String boundariesJson = JsonUtils.marshal(SyntheticData.boundaries(20, 25, 20));
+
+        // cold parses include building the type adapters, as happens on first load of an org
+        Benchmark.run("flows.json (reflective, cold)", 5, 50, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                newReflectiveGson().fromJson(flowsJson, FLOW_LIST);
+            }
+        });
+        Benchmark.run("flows.json (streaming, cold)", 5, 50, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                JsonUtils.newGson().fromJson(flowsJson, FLOW_LIST);
+            }
+        });
+
+        final Gson reflective = newReflectiveGson();
+        Benchmark.run("boundaries (reflective)", 5, 20, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                reflective.fromJson(boundariesJson, BOUNDARY_LIST);
+            }
+        });
+        Benchmark.run("boundaries (streaming)", 5, 20, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                JsonUtils.getGson().fromJson(boundariesJson, BOUNDARY_LIST);
+            }
+        });
+    }
+
+    @Test
+    public void eventDecode() throws Exception {
+        final String event = SyntheticData.events(0, 1).get(0);
+
+        Benchmark.run("msg_created (tree)", 1000, 20000, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                JsonObject asObj = new JsonParser().parse(event).getAsJsonObject();
+                asObj.get("msg").getAsJsonObject().get("text").getAsString();
+            }
+        });
+        Benchmark.run("msg_created (decoder)", 1000, 20000, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                EventDecoders.decode("msg_created", event);
+            }
+        });
+    }
+
+    /**
+     * Gson as configured before we had streaming adapters, i.e. everything by reflection
+     */
+    private static Gson newReflectiveGson() {
+        return new GsonBuilder().registerTypeAdapter(RawJson.class, new RawJson.Adapter()).create();
+    }
+
+    /**
+     * Gson configured with the old RawJson adapter which parsed values into a tree
+     */
+    private static Gson newTreeGson() {
+        return new GsonBuilder().registerTypeAdapter(RawJson.class, new TypeAdapter<RawJson>() {
+            @Override
+            public void write(JsonWriter out, RawJson value) throws IOException {
+                out.jsonValue(value.toString());
+            }
+
+            @Override
+            public RawJson read(JsonReader in) {
+                return new RawJson(new JsonParser().parse(in).toString());
+            }
+        }).create();
+    }
+}
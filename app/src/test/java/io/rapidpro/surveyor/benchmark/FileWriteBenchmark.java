@@ -0,0 +1,72 @@
+package io.rapidpro.surveyor.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import io.rapidpro.surveyor.test.Benchmark;
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.utils.DurableFile;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+/**
+ * Benchmarks the overhead of durable writes over plain writes, with and without syncing, for files the
+ * size of a session and of a large org's flows.json. Only run when the build is invoked with
+ * -Pbenchmarks.
+ */
+public class FileWriteBenchmark {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetSync() {
+        DurableFile.setSync(true);
+    }
+
+    @Test
+    public void write() throws Exception {
+        String session = SyntheticData.sessionJSON(0, 10);
+        String flows = JsonUtils.marshal(SyntheticData.flowSummaries(500, 10));
+
+        for (String[] content : new String[][]{{"session", session}, {"flows.json", flows}}) {
+            final String name = content[0] + " " + (content[1].length() / 1024) + "KB";
+            final String text = content[1];
+            final File file = new File(folder.getRoot(), content[0]);
+
+            Benchmark.run("plain write (" + name + ")", 20, 200, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    FileUtils.writeStringToFile(file, text, "UTF-8");
+                }
+            });
+
+            DurableFile.setSync(false);
+            Benchmark.run("durable write, no sync (" + name + ")", 20, 200, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    DurableFile.write(file, text);
+                }
+            });
+
+            DurableFile.setSync(true);
+            Benchmark.run("durable write, sync (" + name + ")", 20, 200, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    DurableFile.write(file, text);
+                }
+            });
+
+            Benchmark.run("durable read (" + name + ")", 20, 200, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    DurableFile.read(file);
+                }
+            });
+        }
+    }
+}
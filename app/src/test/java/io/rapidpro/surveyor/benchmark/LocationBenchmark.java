@@ -0,0 +1,84 @@
+package io.rapidpro.surveyor.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.rapidpro.surveyor.engine.LocationAsset;
+import io.rapidpro.surveyor.engine.LocationIndex;
+import io.rapidpro.surveyor.engine.LocationTreeWriter;
+import io.rapidpro.surveyor.net.responses.Boundary;
+import io.rapidpro.surveyor.test.Benchmark;
+import io.rapidpro.surveyor.test.SyntheticData;
+
+/**
+ * Benchmarks for building, reading and searching the location index of a large country. Only run when
+ * the build is invoked with -Pbenchmarks.
+ */
+public class LocationBenchmark {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void index() throws Exception {
+        final LocationIndex index = LocationIndex.fromAsset(LocationAsset.fromTemba(SyntheticData.boundaries(30, 30, 60)));
+        final File file = folder.newFile("locations.idx");
+        index.write(new BufferedOutputStream(new FileOutputStream(file)));
+
+        System.out.println(String.format("location index: %,d locations in %,d bytes", index.size(), file.length()));
+
+        Benchmark.run("LocationIndex.read", 2, 10, new Benchmark.Operation() {
+            @Override
+            public void run() throws IOException {
+                LocationIndex.read(new BufferedInputStream(new FileInputStream(file)));
+            }
+        });
+        Benchmark.run("LocationIndex.match", 1000, 10000, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                index.match("ward 12.3.45", LocationIndex.LEVEL_WARD, -1);
+            }
+        });
+        Benchmark.run("LocationIndex.complete", 1000, 10000, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                index.complete("ward 1", LocationIndex.LEVEL_WARD, 20);
+            }
+        });
+    }
+
+    @Test
+    public void treeWriter() throws Exception {
+        // children first so that every boundary has to wait for its parent
+        final List<Boundary> boundaries = new ArrayList<>(SyntheticData.boundaries(30, 30, 60));
+        Collections.reverse(boundaries);
+
+        Benchmark.run("LocationTreeWriter (" + boundaries.size() + " boundaries)", 2, 5, new Benchmark.Operation() {
+            @Override
+            public void run() throws Exception {
+                LocationTreeWriter writer = new LocationTreeWriter(new File(folder.getRoot(), "boundaries.tmp"));
+                try {
+                    for (int b = 0; b < boundaries.size(); b += 250) {
+                        writer.addAll(boundaries.subList(b, Math.min(b + 250, boundaries.size())));
+                    }
+                    writer.finish(new StringWriter(), new ByteArrayOutputStream());
+                } finally {
+                    writer.close();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,93 @@
+package io.rapidpro.surveyor.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.data.OrgService;
+import io.rapidpro.surveyor.data.Submission;
+import io.rapidpro.surveyor.data.SubmissionService;
+import io.rapidpro.surveyor.test.Benchmark;
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Benchmarks for persisting and counting submissions on disk. Only run when the build is invoked
+ * with -Pbenchmarks.
+ */
+public class SubmissionBenchmark {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void save() throws Exception {
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(1, 10);
+        synthetic.installDetails(folder.newFolder("orgs"));
+        Org org = new OrgService(new File(folder.getRoot(), "orgs")).get(synthetic.getUuid());
+
+        final File directory = folder.newFolder("submission");
+        final Submission submission = new Submission(org, directory);
+
+        for (int questions : new int[]{5, 50}) {
+            final String sessionJSON = SyntheticData.sessionJSON(0, questions);
+            final List<String> events = SyntheticData.events(0, questions);
+
+            Benchmark.run("Submission.saveSession (" + questions + " questions)", 50, 500, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    submission.saveSession(sessionJSON);
+                }
+            });
+            Benchmark.run("Submission.saveNewEvents (" + events.size() + " events)", 50, 500, new Benchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    submission.saveNewEvents(events);
+                }
+            });
+
+            FileUtils.cleanDirectory(directory);
+        }
+    }
+
+    @Test
+    public void getCompletedCount() throws Exception {
+        File orgsDir = folder.newFolder("orgs");
+
+        for (final int count : new int[]{100, 1000, 5000}) {
+            SyntheticOrg synthetic = SyntheticOrg.small().withFlows(500, 5).withSubmissions(count, 0);
+            synthetic.installDetails(orgsDir);
+            final Org org = new OrgService(orgsDir).get(synthetic.getUuid());
+
+            File submissionsDir = folder.newFolder("submissions" + count);
+            final SubmissionService service = new SubmissionService(submissionsDir);
+            synthetic.installSubmissions(submissionsDir, service.getMediaStore());
+
+            assertThat(service.getCompletedCount(org), is(count));
+
+            Benchmark.run("SubmissionService.getCompletedCount (" + count + " dirs)", 5, 50, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    service.getCompletedCount(org);
+                }
+            });
+
+            service.migrateToSingleFiles();
+
+            Benchmark.run("SubmissionService.getCompletedCount (" + count + " files)", 5, 50, new Benchmark.Operation() {
+                @Override
+                public void run() {
+                    service.getCompletedCount(org);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.rapidpro.surveyor.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AssetStoreTest {
+
+    private static final String ASSETS = "{" +
+            "\"fields\":[{\"key\":\"gender\",\"name\":\"Gender\",\"type\":\"text\"},{\"key\":\"home\",\"name\":\"Home\",\"type\":\"district\"}]," +
+            "\"groups\":[{\"uuid\":\"g1\",\"name\":\"Testers\"}]," +
+            "\"locations\":[{\"name\":\"Rwanda\",\"children\":[]}]," +
+            "\"flows\":[" +
+            // starts f2
+            "{\"uuid\":\"f1\",\"name\":\"One\",\"nodes\":[{\"uuid\":\"n1\",\"actions\":[{\"type\":\"enter_flow\",\"flow\":{\"uuid\":\"f2\",\"name\":\"Two\"}}]}]}," +
+            // saves to a location field
+            "{\"uuid\":\"f2\",\"name\":\"Two\",\"nodes\":[{\"uuid\":\"n2\",\"actions\":[{\"type\":\"set_contact_field\",\"field\":{\"key\":\"home\",\"name\":\"Home\"},\"value\":\"x\"}]}]}," +
+            // standalone
+            "{\"uuid\":\"f3\",\"name\":\"Three\",\"nodes\":[{\"uuid\":\"n3\",\"router\":{\"cases\":[{\"type\":\"has_text\"}]}}]}," +
+            // 11.x flow with a district rule which starts f3
+            "{\"version\":\"11.6\",\"metadata\":{\"uuid\":\"f4\",\"name\":\"Four\"},\"rule_sets\":[{\"ruleset_type\":\"subflow\",\"config\":{\"flow\":{\"uuid\":\"f3\"}}}," +
+            "{\"uuid\":\"rs2\",\"rules\":[{\"test\":{\"type\":\"district\"}}]}]}" +
+            "]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void migrateAndLoad() throws IOException {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        AssetStore store = new AssetStore(new File(folder.getRoot(), "assets"));
+        assertThat(store.exists(), is(false));
+
+        store.migrate(legacy);
+        assertThat(store.exists(), is(true));
+
+        JsonObject all = JsonUtils.unmarshal(store.load(), JsonObject.class);
+        assertThat(all.get("fields").getAsJsonArray().size(), is(2));
+        assertThat(all.get("groups").getAsJsonArray().size(), is(1));
+        assertThat(all.get("locations").getAsJsonArray().size(), is(1));
+        assertThat(flowUUIDs(all), is("f1,f2,f3,f4"));
+
+        // f1 needs f2 which uses a location field
+        JsonObject forFlow1 = JsonUtils.unmarshal(store.load("f1"), JsonObject.class);
+        assertThat(flowUUIDs(forFlow1), is("f1,f2"));
+        assertThat(forFlow1.get("fields").getAsJsonArray().size(), is(2));
+        assertThat(forFlow1.get("locations").getAsJsonArray().size(), is(1));
+
+        // f3 needs nothing else
+        JsonObject forFlow3 = JsonUtils.unmarshal(store.load("f3"), JsonObject.class);
+        assertThat(flowUUIDs(forFlow3), is("f3"));
+        assertThat(forFlow3.get("locations").getAsJsonArray().size(), is(0));
+
+        // f4 needs f3 and locations
+        JsonObject forFlow4 = JsonUtils.unmarshal(store.load("f4"), JsonObject.class);
+        assertThat(flowUUIDs(forFlow4), is("f4,f3"));
+        assertThat(forFlow4.get("locations").getAsJsonArray().size(), is(1));
+
+        // an unknown flow gets everything
+        assertThat(flowUUIDs(JsonUtils.unmarshal(store.load("xx"), JsonObject.class)), is("f1,f2,f3,f4"));
+
+        // the nodes in f4 which test for locations, and the index of locations
+        assertThat(store.getLocationNodes("f4").size(), is(1));
+        assertThat(store.getLocationNodes("f4").get("rs2"), is(2));
+        assertThat(store.getLocationNodes("f1").size(), is(0));
+        assertThat(store.loadLocationIndex().getName(0), is("Rwanda"));
+
+        // a new store instance reads the manifest back
+        store = new AssetStore(new File(folder.getRoot(), "assets"));
+        assertThat(flowUUIDs(JsonUtils.unmarshal(store.load("f1"), JsonObject.class)), is("f1,f2"));
+    }
+
+    @Test
+    public void compressed() throws IOException {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        // migrate to plain files and then upgrade those to compressed
+        AssetStore store = new AssetStore(new File(folder.getRoot(), "assets"), false);
+        store.migrate(legacy);
+        String plainAll = store.load();
+        assertThat(store.isCompressed(), is(false));
+
+        store = new AssetStore(new File(folder.getRoot(), "assets"), true);
+        store.upgrade();
+        assertThat(store.isCompressed(), is(true));
+        assertThat(store.load(), is(plainAll));
+        assertThat(flowUUIDs(JsonUtils.unmarshal(store.load("f1"), JsonObject.class)), is("f1,f2"));
+
+        // and back again
+        store = new AssetStore(new File(folder.getRoot(), "assets"), false);
+        store.upgrade();
+        assertThat(store.isCompressed(), is(false));
+        assertThat(store.load(), is(plainAll));
+    }
+
+    @Test
+    public void recoverInterruptedWrite() throws IOException {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        File written = new File(folder.getRoot(), "assets");
+        new AssetStore(written).migrate(legacy);
+
+        // killed after moving the old directory aside but before the new one was complete
+        File dir1 = new File(folder.getRoot(), "assets1");
+        FileUtils.copyDirectory(written, new File(folder.getRoot(), "assets1.old"));
+        new File(folder.getRoot(), "assets1.tmp/flows").mkdirs();
+
+        assertThat(new AssetStore(dir1).exists(), is(true));
+        assertThat(flowUUIDs(JsonUtils.unmarshal(new AssetStore(dir1).load(), JsonObject.class)), is("f1,f2,f3,f4"));
+        assertThat(new File(folder.getRoot(), "assets1.old").exists(), is(false));
+        assertThat(new File(folder.getRoot(), "assets1.tmp").exists(), is(false));
+
+        // killed after the new directory was complete but before it was moved into place
+        File dir2 = new File(folder.getRoot(), "assets2");
+        FileUtils.copyDirectory(written, new File(folder.getRoot(), "assets2.tmp"));
+        new File(folder.getRoot(), "assets2.old").mkdirs();
+
+        assertThat(new AssetStore(dir2).exists(), is(true));
+        assertThat(new File(folder.getRoot(), "assets2.old").exists(), is(false));
+        assertThat(new File(folder.getRoot(), "assets2.tmp").exists(), is(false));
+
+        // rewriting replaces the existing directory and leaves nothing behind
+        AssetStore store = new AssetStore(dir2, true);
+        store.upgrade();
+        assertThat(store.isCompressed(), is(true));
+        assertThat(new File(folder.getRoot(), "assets2.old").exists(), is(false));
+        assertThat(new File(folder.getRoot(), "assets2.tmp").exists(), is(false));
+    }
+
+    @Test
+    public void recoverTornWrite() throws IOException {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        File written = new File(folder.getRoot(), "assets");
+        new AssetStore(written).migrate(legacy);
+
+        // lost power after the new directory was renamed but before a flow file reached the disk
+        File dir = new File(folder.getRoot(), "assets1");
+        FileUtils.copyDirectory(written, dir);
+        FileUtils.copyDirectory(written, new File(folder.getRoot(), "assets1.old"));
+        FileUtils.writeStringToFile(new File(dir, "flows/f2.json"), "");
+
+        // the new directory has a manifest, but its files don't match it so the old one is kept
+        AssetStore store = new AssetStore(dir);
+        assertThat(store.exists(), is(true));
+        assertThat(flowUUIDs(JsonUtils.unmarshal(store.load(), JsonObject.class)), is("f1,f2,f3,f4"));
+        assertThat(new File(folder.getRoot(), "assets1.old").exists(), is(false));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadCorruptFile() throws IOException {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        File dir = new File(folder.getRoot(), "assets");
+        new AssetStore(dir).migrate(legacy);
+
+        FileUtils.writeStringToFile(new File(dir, "flows/f2.json"), "{\"uuid\":\"f2\"}");
+
+        new AssetStore(dir).load("f1");
+    }
+
+    @Test
+    public void loadDuringWrites() throws Exception {
+        File legacy = folder.newFile("assets.json");
+        FileUtils.writeStringToFile(legacy, ASSETS);
+
+        final File dir = new File(folder.getRoot(), "assets");
+        new AssetStore(dir).migrate(legacy);
+
+        // keep rewriting the store from another store instance while this one loads
+        final File source = legacy;
+        final Exception[] failure = new Exception[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AssetStore other = new AssetStore(dir);
+                    for (int w = 0; w < 20; w++) {
+                        other.migrate(source);
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        writer.start();
+
+        AssetStore store = new AssetStore(dir);
+        while (writer.isAlive()) {
+            assertThat(flowUUIDs(JsonUtils.unmarshal(store.load("f1"), JsonObject.class)), is("f1,f2"));
+            assertThat(store.loadLocationIndex().getName(0), is("Rwanda"));
+        }
+        writer.join();
+
+        assertThat(failure[0] == null, is(true));
+    }
+
+    private static String flowUUIDs(JsonObject assets) {
+        JsonArray flows = assets.get("flows").getAsJsonArray();
+        StringBuilder sb = new StringBuilder();
+        for (int f = 0; f < flows.size(); f++) {
+            JsonObject flow = flows.get(f).getAsJsonObject();
+            if (f > 0) {
+                sb.append(",");
+            }
+            sb.append(flow.has("uuid") ? flow.get("uuid").getAsString() : flow.get("metadata").getAsJsonObject().get("uuid").getAsString());
+        }
+        return sb.toString();
+    }
+}
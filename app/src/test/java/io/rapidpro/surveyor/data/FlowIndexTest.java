@@ -0,0 +1,54 @@
+package io.rapidpro.surveyor.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+public class FlowIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void getAndFind() throws Exception {
+        File orgsDir = folder.newFolder("orgs");
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(25, 2);
+        synthetic.installDetails(orgsDir);
+
+        Org org = new OrgService(orgsDir).get(synthetic.getUuid());
+
+        // flows keep their original order
+        assertThat(org.getFlows(), hasSize(25));
+        assertThat(org.getFlows().get(2).getName(), is("Flow 2"));
+
+        for (Flow flow : org.getFlows()) {
+            assertThat(org.getFlow(flow.getUuid()), is(sameInstance(flow)));
+        }
+        assertThat(org.getFlow("???"), is(nullValue()));
+
+        // prefix search ignores case and returns flows sorted by name
+        List<Flow> found = org.findFlows("FLOW 1");
+        assertThat(found, hasSize(11));
+        assertThat(found.get(0).getName(), is("Flow 1"));
+        assertThat(found.get(1).getName(), is("Flow 10"));
+        assertThat(found.get(10).getName(), is("Flow 19"));
+
+        assertThat(org.findFlows("flow 24"), hasSize(1));
+        assertThat(org.findFlows(" flow"), hasSize(25));
+        assertThat(org.findFlows(""), hasSize(25));
+        assertThat(org.findFlows("flows"), is(empty()));
+        assertThat(org.findFlows("zzz"), is(empty()));
+    }
+}
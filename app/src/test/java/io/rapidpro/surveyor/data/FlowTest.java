@@ -40,4 +40,34 @@ public class FlowTest {
         assertThat(summary.getRevision(), is(24));
         assertThat(summary.getQuestionCount(), is(2));
     }
+
+    @Test
+    public void extractStreaming() throws IOException {
+        // fields can come in any order and nested uuids and names shouldn't be confused with the flow's
+        String definition = "{\"nodes\":[" +
+                "{\"uuid\":\"n1\",\"actions\":[{\"uuid\":\"a1\",\"name\":\"x\"}],\"router\":{\"type\":\"switch\",\"wait\":{\"type\":\"msg\"}}}," +
+                "{\"uuid\":\"n2\",\"router\":{\"type\":\"switch\"}}," +
+                "{\"uuid\":\"n3\",\"router\":null}," +
+                "{\"uuid\":\"n4\",\"router\":{\"wait\":{\"type\":\"msg\"},\"type\":\"switch\"}}" +
+                "],\"revision\":3,\"spec_version\":\"13.1.0\",\"name\":\"Backwards\",\"uuid\":\"f1\"}";
+
+        Flow summary = Flow.extract(new RawJson(definition));
+
+        assertThat(summary.getUuid(), is("f1"));
+        assertThat(summary.getName(), is("Backwards"));
+        assertThat(summary.getSpecVersion(), is("13.1.0"));
+        assertThat(summary.getRevision(), is(3));
+        assertThat(summary.getQuestionCount(), is(2));
+
+        definition = "{\"rule_sets\":[{\"uuid\":\"r1\",\"ruleset_type\":\"wait_message\"},{\"ruleset_type\":\"expression\"}," +
+                "{\"ruleset_type\":\"wait_digits\"}],\"version\":11.6,\"metadata\":{\"revision\":5,\"name\":\"Legacy\",\"uuid\":\"f2\"}}";
+
+        summary = Flow.extract(new RawJson(definition));
+
+        assertThat(summary.getUuid(), is("f2"));
+        assertThat(summary.getName(), is("Legacy"));
+        assertThat(summary.getSpecVersion(), is("11.6"));
+        assertThat(summary.getRevision(), is(5));
+        assertThat(summary.getQuestionCount(), is(2));
+    }
 }
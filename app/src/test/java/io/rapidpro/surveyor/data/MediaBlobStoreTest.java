@@ -0,0 +1,112 @@
+package io.rapidpro.surveyor.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MediaBlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void addAndRelease() throws IOException {
+        MediaBlobStore store = new MediaBlobStore(new File(folder.getRoot(), ".media"));
+
+        File blob1 = store.add("consent".getBytes(), "jpg");
+        File blob2 = store.add("consent".getBytes(), "jpg");
+        File blob3 = store.add("selfie".getBytes(), "jpg");
+
+        // same content is stored once
+        assertThat(blob1, is(blob2));
+        assertThat(blob1, is(not(blob3)));
+        assertThat(blob1.getName(), is("15b617889f16c74e4530edab8a2d0067c32a77d1.jpg"));
+
+        store.setUploadedUrl("org1", blob1.getName(), "http://uploads.rapidpro.io/1.jpg");
+        assertThat(store.getUploadedUrl("org1", blob1.getName()), is("http://uploads.rapidpro.io/1.jpg"));
+        assertThat(store.getUploadedUrl("org2", blob1.getName()), is(nullValue()));
+
+        // blob survives until its last reference is released
+        store.release(blob1.getName());
+        assertThat(blob1.exists(), is(true));
+        store.release(blob1.getName());
+        assertThat(blob1.exists(), is(false));
+        assertThat(store.getUploadedUrl("org1", blob1.getName()), is(nullValue()));
+
+        // a new store instance reads back the persisted index
+        store = new MediaBlobStore(new File(folder.getRoot(), ".media"));
+        store.release(blob3.getName());
+        assertThat(blob3.exists(), is(false));
+    }
+
+    @Test
+    public void batch() throws IOException {
+        File directory = new File(folder.getRoot(), ".media");
+        File index = new File(directory, "index.json");
+        MediaBlobStore store = new MediaBlobStore(directory);
+
+        store.beginBatch();
+        File blob1 = store.add("consent".getBytes(), "jpg");
+        File blob2 = store.add("selfie".getBytes(), "jpg");
+        store.setUploadedUrl("org1", blob1.getName(), "http://uploads.rapidpro.io/1.jpg");
+        store.release(blob2.getName());
+
+        // only written once the batch ends
+        assertThat(index.exists(), is(false));
+        store.endBatch();
+        assertThat(index.exists(), is(true));
+
+        store = new MediaBlobStore(directory);
+        assertThat(store.getUploadedUrl("org1", blob1.getName()), is("http://uploads.rapidpro.io/1.jpg"));
+        assertThat(blob2.exists(), is(false));
+    }
+
+    @Test
+    public void collectGarbage() throws IOException {
+        MediaBlobStore store = new MediaBlobStore(new File(folder.getRoot(), ".media"));
+
+        File blob1 = store.add("one".getBytes(), "m4a");
+        File blob2 = store.add("two".getBytes(), "m4a");
+
+        Map<String, Integer> refCounts = new HashMap<>();
+        refCounts.put(blob2.getName(), 1);
+
+        // nothing is due or deleted whilst blobs are new, as their references may not have been recorded yet
+        assertThat(store.isCollectionDue(), is(true));
+        assertThat(store.collectGarbage(refCounts), is(0));
+        assertThat(blob1.exists(), is(true));
+        assertThat(store.isCollectionDue(), is(false));
+
+        long old = System.currentTimeMillis() - MediaBlobStore.GRACE_PERIOD - 1000;
+        blob1.setLastModified(old);
+        blob2.setLastModified(old);
+
+        assertThat(store.collectGarbage(refCounts), is(1));
+        assertThat(blob1.exists(), is(false));
+        assertThat(blob2.exists(), is(true));
+
+        // adding existing content again restarts its grace period
+        blob2.setLastModified(old);
+        assertThat(store.add("two".getBytes(), "m4a"), is(blob2));
+        assertThat(store.collectGarbage(new HashMap<String, Integer>()), is(0));
+        assertThat(blob2.exists(), is(true));
+    }
+
+    @Test
+    public void forDirectory() {
+        File dir = new File(folder.getRoot(), ".media");
+
+        assertThat(MediaBlobStore.forDirectory(dir) == MediaBlobStore.forDirectory(dir), is(true));
+        assertThat(MediaBlobStore.forDirectory(dir) == MediaBlobStore.forDirectory(folder.getRoot()), is(false));
+    }
+}
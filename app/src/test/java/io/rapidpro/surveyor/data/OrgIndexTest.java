@@ -0,0 +1,90 @@
+package io.rapidpro.surveyor.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class OrgIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildAndMaintain() throws Exception {
+        File orgsDir = folder.newFolder("orgs");
+        File submissionsDir = folder.newFolder("submissions");
+
+        SyntheticOrg synthetic1 = SyntheticOrg.small().withFlows(3, 2).withSubmissions(6, 0);
+        SyntheticOrg synthetic2 = SyntheticOrg.small().withUuid(SyntheticData.uuid("org", 2)).withFlows(5, 2);
+        synthetic1.installDetails(orgsDir);
+        synthetic2.installDetails(orgsDir);
+
+        OrgService orgService = new OrgService(orgsDir);
+        SubmissionService submissionService = new SubmissionService(submissionsDir);
+        submissionService.setOrgIndex(orgService.getIndex());
+        List<File> dirs = synthetic1.installSubmissions(submissionsDir, submissionService.getMediaStore());
+
+        // nothing to trust until the index has been built
+        assertThat(orgService.getIndex().getTotalPending(), is(-1));
+        assertThat(orgService.buildIndex(submissionService), is(true));
+        assertThat(orgService.buildIndex(submissionService), is(false));
+        assertThat(orgService.getIndex().getTotalPending(), is(6));
+
+        OrgSummary summary1 = orgService.getIndex().get(synthetic1.getUuid());
+        assertThat(summary1.getFlowCount(), is(3));
+        assertThat(summary1.getPendingCount(), is(6));
+        assertThat(orgService.getIndex().get(synthetic2.getUuid()).getFlowCount(), is(5));
+        assertThat(summary1.getAssetsVersion(), is(not(orgService.getIndex().get(synthetic2.getUuid()).getAssetsVersion())));
+
+        // completing and deleting submissions keeps pending counts up to date
+        Org org1 = orgService.get(synthetic1.getUuid());
+        Submission submission = submissionService.newSubmission(org1, org1.getFlows().get(0));
+        assertThat(orgService.getIndex().getTotalPending(), is(6));
+        submission.complete();
+        assertThat(orgService.getIndex().getTotalPending(), is(7));
+
+        new Submission(org1, dirs.get(0), submissionService).delete();
+        assertThat(orgService.getIndex().get(synthetic1.getUuid()).getPendingCount(), is(6));
+
+        // submissions opened by a service which has since been replaced notify its replacement
+        SubmissionService replaced = new SubmissionService(submissionsDir);
+        Submission opened = replaced.newSubmission(org1, org1.getFlows().get(1));
+        replaced.replaceWith(submissionService);
+        opened.complete();
+        assertThat(orgService.getIndex().getTotalPending(), is(7));
+        opened.delete();
+        assertThat(orgService.getIndex().getTotalPending(), is(6));
+
+        // changes made in a batch are only written when the batch ends
+        orgService.getIndex().beginBatch();
+        new Submission(org1, dirs.get(1), submissionService).delete();
+        new Submission(org1, dirs.get(2), submissionService).delete();
+        assertThat(orgService.getIndex().getTotalPending(), is(4));
+        assertThat(new OrgService(orgsDir).getIndex().getTotalPending(), is(6));
+        orgService.getIndex().endBatch();
+        assertThat(new OrgService(orgsDir).getIndex().getTotalPending(), is(4));
+
+        // and are reloaded from disk by a new service without loading any orgs
+        OrgService reloaded = new OrgService(orgsDir);
+        assertThat(reloaded.getIndex().needsBuild(), is(false));
+        assertThat(reloaded.getIndex().getTotalPending(), is(4));
+        assertThat(reloaded.getSummary(synthetic2.getUuid()).getName(), is(orgService.get(synthetic2.getUuid()).getName()));
+
+        submissionService.clearAll();
+        assertThat(orgService.getIndex().getTotalPending(), is(0));
+
+        orgService.getIndex().remove(synthetic2.getUuid());
+        assertThat(orgService.getIndex().get(synthetic2.getUuid()), is(nullValue()));
+    }
+}
@@ -0,0 +1,180 @@
+package io.rapidpro.surveyor.data;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.rapidpro.surveyor.test.SyntheticData;
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class OrgServiceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        File orgsDir = folder.newFolder("orgs");
+        List<String> uuids = new ArrayList<>();
+        for (int o = 0; o < 5; o++) {
+            SyntheticOrg synthetic = SyntheticOrg.small().withUuid(SyntheticData.uuid("org", o)).withFlows(10, 2);
+            synthetic.installDetails(orgsDir);
+            uuids.add(synthetic.getUuid());
+        }
+
+        // room for three orgs of 10 flows
+        OrgService svc = new OrgService(orgsDir, 33);
+
+        Org org0 = svc.get(uuids.get(0));
+        svc.get(uuids.get(1));
+        svc.get(uuids.get(2));
+        assertThat(svc.getCachedCount(), is(3));
+        assertThat(svc.get(uuids.get(0)), is(sameInstance(org0)));
+
+        // org 1 is now the least recently used so is evicted first
+        svc.get(uuids.get(3));
+        assertThat(svc.getCachedCount(), is(3));
+        assertThat(svc.getCachedFlows(), is(33));
+        assertThat(svc.get(uuids.get(0)), is(sameInstance(org0)));
+
+        svc.invalidate(uuids.get(0));
+        assertThat(svc.getCachedCount(), is(2));
+        assertThat(svc.get(uuids.get(0)), is(not(sameInstance(org0))));
+
+        // an org bigger than the limit is still cached on its own
+        OrgService tiny = new OrgService(orgsDir, 5);
+        Org org4 = tiny.get(uuids.get(4));
+        assertThat(tiny.get(uuids.get(4)), is(sameInstance(org4)));
+        assertThat(tiny.getCachedCount(), is(1));
+    }
+
+    @Test
+    public void remove() throws Exception {
+        File orgsDir = folder.newFolder("orgs");
+        List<String> uuids = new ArrayList<>();
+        for (int o = 0; o < 3; o++) {
+            SyntheticOrg synthetic = SyntheticOrg.small().withUuid(SyntheticData.uuid("org", o)).withFlows(2, 2);
+            synthetic.installDetails(orgsDir);
+            uuids.add(synthetic.getUuid());
+        }
+
+        OrgService svc = new OrgService(orgsDir);
+        for (String uuid : uuids) {
+            svc.get(uuid);
+        }
+        assertThat(svc.getIndex().get(uuids.get(0)), is(not(nullValue())));
+
+        svc.remove(uuids.get(0));
+        assertThat(new File(orgsDir, uuids.get(0)).exists(), is(false));
+        assertThat(svc.getIndex().get(uuids.get(0)), is(nullValue()));
+        assertThat(svc.getCachedCount(), is(2));
+
+        svc.removeAll();
+        assertThat(svc.getCachedCount(), is(0));
+        for (String uuid : uuids) {
+            assertThat(new File(orgsDir, uuid).exists(), is(false));
+            assertThat(svc.getIndex().get(uuid), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void concurrentReadersAndRefreshers() throws Exception {
+        final File orgsDir = folder.newFolder("orgs");
+        final List<String> uuids = new ArrayList<>();
+        for (int o = 0; o < 4; o++) {
+            SyntheticOrg synthetic = SyntheticOrg.small().withUuid(SyntheticData.uuid("org", o)).withFlows(3, 2);
+            synthetic.installDetails(orgsDir);
+            uuids.add(synthetic.getUuid());
+        }
+
+        // the two versions of flows.json that refreshers will switch between
+        final List<String> versions = new ArrayList<>();
+        for (int flows : new int[]{3, 7}) {
+            File dir = folder.newFolder("version" + flows);
+            SyntheticOrg.small().withFlows(flows, 2).installDetails(dir);
+            versions.add(FileUtils.readFileToString(new File(dir, SyntheticData.uuid("org") + "/flows.json"), "UTF-8"));
+        }
+
+        // small enough that orgs are constantly being evicted
+        final OrgService svc = new OrgService(orgsDir, 12);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+
+        for (int r = 0; r < 6; r++) {
+            final int reader = r;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    for (int i = 0; i < 2000; i++) {
+                        Org org = svc.get(uuids.get((reader + i) % uuids.size()));
+                        int size = 0;
+                        for (Flow flow : org.getFlows()) {
+                            assertThat(org.getFlow(flow.getUuid()), is(sameInstance(flow)));
+                            size++;
+                        }
+                        assertThat(size, anyOf(is(3), is(7)));
+                    }
+                    return 0;
+                }
+            });
+        }
+
+        for (int w = 0; w < 2; w++) {
+            final int refresher = w;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    for (int i = 0; i < 300; i++) {
+                        String uuid = uuids.get((refresher + i) % uuids.size());
+                        File orgDir = new File(orgsDir, uuid);
+                        File tmp = new File(orgDir, "flows.json." + refresher);
+
+                        // write like a refresh would, but swap the file in so readers never see it half written
+                        FileUtils.writeStringToFile(tmp, versions.get(i % 2), "UTF-8");
+                        tmp.renameTo(new File(orgDir, "flows.json"));
+
+                        if (i % 3 == 0) {
+                            svc.onChanged(Org.load(orgDir));
+                        } else {
+                            svc.invalidate(uuid);
+                        }
+                    }
+                    return 0;
+                }
+            });
+        }
+
+        for (Future<Integer> result : executor.invokeAll(tasks)) {
+            result.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(svc.getCachedFlows(), is(lessThanOrEqualTo(12)));
+
+        // once everything settles, a refreshed org is what gets returned
+        File flowsFile = new File(orgsDir, uuids.get(0) + "/flows.json");
+        FileUtils.writeStringToFile(flowsFile, versions.get(1), "UTF-8");
+        svc.invalidate(uuids.get(0));
+        assertThat(svc.get(uuids.get(0)).getFlows().size(), is(7));
+    }
+}
@@ -0,0 +1,189 @@
+package io.rapidpro.surveyor.data;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.rapidpro.surveyor.test.SyntheticOrg;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SubmissionContainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendAndRead() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        assertThat(container.getFile().getName(), is("1234.part"));
+        assertThat(container.getUuid(), is("1234"));
+        assertThat(container.isSealed(), is(false));
+        assertThat(container.readSession(), is(nullValue()));
+
+        container.append(SubmissionContainer.SESSION, "{\"status\":\"waiting\"}");
+        container.append(SubmissionContainer.EVENT, Arrays.asList("{\"type\":\"msg_created\",\"text\":\"Héllo\"}", "{\"type\":\"msg_wait\"}"));
+        container.append(SubmissionContainer.MODIFIER, "{\"type\":\"name\"}");
+        container.append(SubmissionContainer.SESSION, "{\"status\":\"completed\"}");
+        container.append(SubmissionContainer.EVENT, "{\"type\":\"msg_received\"}");
+        container.append(SubmissionContainer.MEDIA_REF, "abc.jpg");
+
+        // readable before and after sealing, with the last session winning
+        for (int pass = 0; pass < 2; pass++) {
+            container = new SubmissionContainer(container.getFile());
+            assertThat(container.isSealed(), is(pass == 1));
+            assertThat(container.readSession(), is("{\"status\":\"completed\"}"));
+            assertThat(container.read(SubmissionContainer.EVENT), is(Arrays.asList("{\"type\":\"msg_created\",\"text\":\"Héllo\"}", "{\"type\":\"msg_wait\"}", "{\"type\":\"msg_received\"}")));
+            assertThat(container.read(SubmissionContainer.MODIFIER), is(Collections.singletonList("{\"type\":\"name\"}")));
+            assertThat(container.read(SubmissionContainer.MEDIA_REF), is(Collections.singletonList("abc.jpg")));
+
+            container.seal();
+
+            assertThat(container.getFile().getName(), is("1234.sub"));
+            assertThat(container.getUuid(), is("1234"));
+        }
+
+        try {
+            container.append(SubmissionContainer.EVENT, "{}");
+            fail("should have thrown exception");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sealDropsEarlierSessions() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        String session = "{\"status\":\"waiting\",\"padding\":\"" + new String(new char[1000]).replace('\0', 'x') + "\"}";
+        for (int s = 0; s < 50; s++) {
+            container.append(SubmissionContainer.SESSION, session);
+            container.append(SubmissionContainer.EVENT, "{\"step\":" + s + "}");
+        }
+        container.append(SubmissionContainer.SESSION, "{\"status\":\"completed\"}");
+
+        long before = container.getFile().length();
+        container.seal();
+
+        assertThat(container.getFile().length() < before / 20, is(true));
+        assertThat(new File(folder.getRoot(), "1234.part").exists(), is(false));
+        assertThat(new File(folder.getRoot(), "1234.compact").exists(), is(false));
+
+        container = new SubmissionContainer(container.getFile());
+        assertThat(container.readSession(), is("{\"status\":\"completed\"}"));
+        assertThat(container.read(SubmissionContainer.EVENT), hasSize(50));
+        assertThat(container.readLast(SubmissionContainer.EVENT, 1), is(Collections.singletonList("{\"step\":49}")));
+    }
+
+    @Test
+    public void appendCompactsEarlierSessions() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        String session = "{\"status\":\"waiting\",\"padding\":\"" + new String(new char[10000]).replace('\0', 'x') + "\"}";
+        for (int s = 0; s < 100; s++) {
+            container.append(SubmissionContainer.SESSION, session);
+            container.append(SubmissionContainer.EVENT, "{\"step\":" + s + "}");
+
+            // earlier copies never make up much more than half of the log
+            assertThat(container.getFile().length() < 300 * 1024, is(true));
+        }
+        container.append(SubmissionContainer.SESSION, "{\"status\":\"completed\"}");
+
+        assertThat(container.getFile().getName(), is("1234.part"));
+        assertThat(container.readSession(), is("{\"status\":\"completed\"}"));
+        assertThat(container.read(SubmissionContainer.EVENT), hasSize(100));
+
+        // and a new instance scans the compacted log the same
+        container = new SubmissionContainer(container.getFile());
+        assertThat(container.readSession(), is("{\"status\":\"completed\"}"));
+        assertThat(container.readLast(SubmissionContainer.EVENT, 1), is(Collections.singletonList("{\"step\":99}")));
+    }
+
+    @Test
+    public void payloadEndingWithFooterMagic() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        container.append(SubmissionContainer.EVENT, "12345678SVSE");
+
+        assertThat(container.isSealed(), is(false));
+
+        container = new SubmissionContainer(container.getFile());
+        container.append(SubmissionContainer.EVENT, "{}");
+        assertThat(container.read(SubmissionContainer.EVENT).size(), is(2));
+    }
+
+    @Test
+    public void readLast() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        container.append(SubmissionContainer.EVENT, Arrays.asList("{\"n\":1}", "{\"n\":2}", "{\"n\":3}"));
+        container.append(SubmissionContainer.MODIFIER, "{\"type\":\"name\"}");
+
+        assertThat(container.readLast(SubmissionContainer.EVENT, 2), is(Arrays.asList("{\"n\":2}", "{\"n\":3}")));
+        assertThat(container.readLast(SubmissionContainer.EVENT, 10), hasSize(3));
+        assertThat(container.readLast(SubmissionContainer.EVENT, 0), is(empty()));
+
+        // works the same once sealed
+        container.seal();
+        assertThat(container.readLast(SubmissionContainer.EVENT, 1), is(Collections.singletonList("{\"n\":3}")));
+    }
+
+    @Test
+    public void partialRecordDiscarded() throws Exception {
+        SubmissionContainer container = SubmissionContainer.create(folder.getRoot(), "1234");
+        container.append(SubmissionContainer.EVENT, "{\"type\":\"msg_created\"}");
+
+        // simulate dying part way through writing a record
+        RandomAccessFile raf = new RandomAccessFile(container.getFile(), "rw");
+        raf.seek(raf.length());
+        raf.writeByte(SubmissionContainer.EVENT);
+        raf.writeInt(100);
+        raf.write("{\"ty".getBytes("UTF-8"));
+        raf.close();
+
+        container = new SubmissionContainer(container.getFile());
+        assertThat(container.read(SubmissionContainer.EVENT), is(Collections.singletonList("{\"type\":\"msg_created\"}")));
+
+        container.append(SubmissionContainer.EVENT, "{\"type\":\"msg_wait\"}");
+        container.seal();
+
+        assertThat(container.read(SubmissionContainer.EVENT), is(Arrays.asList("{\"type\":\"msg_created\"}", "{\"type\":\"msg_wait\"}")));
+    }
+
+    @Test
+    public void migrateToSingleFiles() throws Exception {
+        SyntheticOrg synthetic = SyntheticOrg.small().withFlows(3, 2).withSubmissions(9, 1);
+        File orgsDir = folder.newFolder("orgs");
+        synthetic.installDetails(orgsDir);
+        Org org = new OrgService(orgsDir).get(synthetic.getUuid());
+
+        File submissionsDir = folder.newFolder("submissions");
+        SubmissionService service = new SubmissionService(submissionsDir);
+        List<File> dirs = synthetic.installSubmissions(submissionsDir, service.getMediaStore());
+
+        Submission before = new Submission(org, dirs.get(0));
+        String session = FileUtils.readFileToString(new File(dirs.get(0), "session.json"), "UTF-8");
+        List<String> refs = before.getMediaRefs();
+
+        assertThat(service.migrateToSingleFiles(), is(9));
+        assertThat(service.migrateToSingleFiles(), is(0));
+        assertThat(dirs.get(0).exists(), is(false));
+        assertThat(service.getCompletedCount(org), is(9));
+        assertThat(service.getCompletedCounts(org).get(org.getFlows().get(0).getUuid()), is(3));
+
+        Submission after = new Submission(org, new File(dirs.get(0).getPath() + SubmissionContainer.EXTENSION));
+        assertThat(after.getUuid(), is(dirs.get(0).getName()));
+        assertThat(after.isCompleted(), is(true));
+        assertThat(after.getMediaRefs(), is(refs));
+        assertThat(new SubmissionContainer(after.getDirectory()).readSession(), is(session));
+    }
+}
@@ -0,0 +1,120 @@
+package io.rapidpro.surveyor.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocationIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fromAsset() throws IOException {
+        LocationIndex index = LocationIndex.fromAsset(createRwanda());
+
+        assertThat(index.size(), is(7));
+        assertThat(index.getName(0), is("Rwanda"));
+        assertThat(index.getParent(0), is(-1));
+        assertThat(index.getLevel(0), is(0));
+        assertThat(index.getChildren(0), is(new int[]{1, 2}));
+
+        int gasabo = index.match("gasabo", LocationIndex.LEVEL_DISTRICT, -1)[0];
+        assertThat(index.getName(gasabo), is("Gasabo"));
+        assertThat(index.getLevel(gasabo), is(2));
+        assertThat(index.getPath(gasabo), is("Gasabo, Kigali City"));
+        assertThat(index.getAliases(gasabo), is(new String[]{"Gasabo District"}));
+
+        // matching ignores case, accents and extra whitespace, and includes aliases
+        assertThat(index.match("  KIGALI   city ", LocationIndex.LEVEL_STATE, -1), is(new int[]{1}));
+        assertThat(index.match("Kigalí", LocationIndex.LEVEL_STATE, -1), is(new int[]{1}));
+        assertThat(index.match("gasabo district", LocationIndex.LEVEL_DISTRICT, -1), is(new int[]{gasabo}));
+        assertThat(index.match("gasabo", LocationIndex.LEVEL_STATE, -1), is(new int[0]));
+
+        // names can be repeated in different parts of the hierarchy
+        assertThat(index.match("Remera", LocationIndex.LEVEL_WARD, -1).length, is(2));
+        assertThat(index.match("Remera", LocationIndex.LEVEL_WARD, gasabo).length, is(1));
+
+        // autocomplete by prefix
+        assertThat(names(index, index.complete("ki", LocationIndex.LEVEL_STATE, 10)), is("Kigali City"));
+        assertThat(names(index, index.complete("G", LocationIndex.LEVEL_DISTRICT, 10)), is("Gasabo,Gicumbi"));
+        assertThat(names(index, index.complete("G", LocationIndex.LEVEL_DISTRICT, 1)), is("Gasabo"));
+        assertThat(names(index, index.complete("x", LocationIndex.LEVEL_DISTRICT, 10)), is(""));
+        assertThat(names(index, index.complete("r", 7, 10)), is(""));
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        File file = folder.newFile("locations.idx");
+        LocationIndex.fromAsset(createRwanda()).write(new FileOutputStream(file));
+
+        LocationIndex index = LocationIndex.read(new FileInputStream(file));
+
+        assertThat(index.size(), is(7));
+        assertThat(index.getPath(index.match("Remera", LocationIndex.LEVEL_WARD, 2)[0]), is("Remera, Gicumbi, Northern Province"));
+        assertThat(names(index, index.complete("n", LocationIndex.LEVEL_STATE, 10)), is("Northern Province"));
+    }
+
+    @Test
+    public void readVersion1() throws IOException {
+        // version 1 indexes only have the hierarchy so keys are rebuilt when read
+        File file = folder.newFile("locations.idx");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0x53564c49);
+        out.writeInt(1);
+        out.writeInt(3);
+        out.writeInt(-1);
+        out.writeUTF("Rwanda");
+        out.writeShort(0);
+        out.writeInt(0);
+        out.writeUTF("Kigali City");
+        out.writeShort(1);
+        out.writeUTF("Kigali");
+        out.writeInt(1);
+        out.writeUTF("Gasabo");
+        out.writeShort(0);
+        out.close();
+
+        LocationIndex index = LocationIndex.read(new FileInputStream(file));
+
+        assertThat(index.size(), is(3));
+        assertThat(index.match("kigali", LocationIndex.LEVEL_STATE, -1), is(new int[]{1}));
+        assertThat(names(index, index.complete("ga", LocationIndex.LEVEL_DISTRICT, 10)), is("Gasabo"));
+    }
+
+    private static LocationAsset createRwanda() {
+        LocationAsset rwanda = new LocationAsset("Rwanda", new String[0]);
+        LocationAsset kigali = new LocationAsset("Kigali City", new String[]{"Kigali"});
+        LocationAsset northern = new LocationAsset("Northern Province", new String[0]);
+        LocationAsset gasabo = new LocationAsset("Gasabo", new String[]{"Gasabo District"});
+        LocationAsset gicumbi = new LocationAsset("Gicumbi", null);
+
+        rwanda.getChildren().add(kigali);
+        rwanda.getChildren().add(northern);
+        kigali.getChildren().add(gasabo);
+        northern.getChildren().add(gicumbi);
+        gasabo.getChildren().add(new LocationAsset("Remera", new String[0]));
+        gicumbi.getChildren().add(new LocationAsset("Remera", new String[0]));
+        return rwanda;
+    }
+
+    private static String names(LocationIndex index, int[] locations) {
+        StringBuilder sb = new StringBuilder();
+        for (int location : locations) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(index.getName(location));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package io.rapidpro.surveyor.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.rapidpro.surveyor.net.responses.Boundary;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocationTreeWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void finish() throws IOException {
+        // children arrive before their parents, across pages, and one boundary's parent never arrives
+        List<Boundary> page1 = Arrays.asList(
+                boundary("R2", "Gasabo", "R1", "Gasabo District"),
+                boundary("R3", "Remera", "R2"),
+                boundary("X1", "Lost", "X0")
+        );
+        List<Boundary> page2 = Arrays.asList(
+                boundary("R1", "Kigali City", "R0"),
+                boundary("R0", "Rwanda", null),
+                boundary("R4", "Northern Province", "R0")
+        );
+
+        StringWriter json = new StringWriter();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+        LocationTreeWriter writer = new LocationTreeWriter(folder.newFile("boundaries.tmp"));
+        try {
+            writer.addAll(page1);
+            writer.addAll(page2);
+            assertThat(writer.size(), is(6));
+            assertThat(writer.finish(json, index), is(5));
+        } finally {
+            writer.close();
+        }
+
+        assertThat(json.toString(), is("[{\"name\":\"Rwanda\",\"aliases\":[],\"children\":[" +
+                "{\"name\":\"Kigali City\",\"aliases\":[],\"children\":[" +
+                "{\"name\":\"Gasabo\",\"aliases\":[\"Gasabo District\"],\"children\":[" +
+                "{\"name\":\"Remera\",\"aliases\":[],\"children\":[]}]}]}," +
+                "{\"name\":\"Northern Province\",\"aliases\":[],\"children\":[]}]}]"));
+
+        // same as building the tree in memory
+        List<Boundary> all = new ArrayList<>(page1);
+        all.addAll(page2);
+        assertThat(json.toString(), is(JsonUtils.marshal(new LocationAsset[]{LocationAsset.fromTemba(all)})));
+
+        LocationIndex locations = LocationIndex.read(new ByteArrayInputStream(index.toByteArray()));
+        assertThat(locations.size(), is(5));
+        assertThat(locations.getName(0), is("Rwanda"));
+        assertThat(locations.getPath(locations.match("Remera", LocationIndex.LEVEL_WARD, -1)[0]), is("Remera, Gasabo, Kigali City"));
+        assertThat(locations.match("gasabo district", LocationIndex.LEVEL_DISTRICT, -1).length, is(1));
+    }
+
+    @Test
+    public void finishManyBoundaries() throws IOException {
+        // enough boundaries for the OSM ID table to grow, all added before their parents
+        List<Boundary> all = new ArrayList<>();
+        for (int s = 0; s < 100; s++) {
+            for (int d = 0; d < 40; d++) {
+                all.add(boundary("D" + s + "." + d, "District " + s + "." + d, "S" + s));
+            }
+            all.add(boundary("S" + s, "State " + s, "C"));
+        }
+        all.add(boundary("C", "Country", null));
+
+        StringWriter json = new StringWriter();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+        LocationTreeWriter writer = new LocationTreeWriter(folder.newFile("boundaries.tmp"));
+        try {
+            writer.addAll(all);
+            writer.add(boundary("S7", "Duplicate", "C"));
+            assertThat(writer.size(), is(4101));
+            assertThat(writer.finish(json, index), is(4101));
+        } finally {
+            writer.close();
+        }
+
+        assertThat(json.toString(), is(JsonUtils.marshal(new LocationAsset[]{LocationAsset.fromTemba(all)})));
+
+        LocationIndex locations = LocationIndex.read(new ByteArrayInputStream(index.toByteArray()));
+        assertThat(locations.getPath(locations.match("District 73.21", LocationIndex.LEVEL_DISTRICT, -1)[0]), is("District 73.21, State 73"));
+    }
+
+    @Test
+    public void finishWithoutBoundaries() throws IOException {
+        File spool = folder.newFile("boundaries.tmp");
+        StringWriter json = new StringWriter();
+
+        LocationTreeWriter writer = new LocationTreeWriter(spool);
+        try {
+            assertThat(writer.finish(json, new ByteArrayOutputStream()), is(0));
+        } finally {
+            writer.close();
+        }
+
+        assertThat(json.toString(), is("[]"));
+        assertThat(spool.exists(), is(false));
+    }
+
+    private static Boundary boundary(String osmID, String name, String parentOsmID, String... aliases) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"osm_id\":\"").append(osmID).append("\",\"name\":\"").append(name).append("\"");
+        if (parentOsmID != null) {
+            json.append(",\"parent\":{\"osm_id\":\"").append(parentOsmID).append("\"}");
+        }
+        json.append(",\"aliases\":").append(JsonUtils.marshal(aliases)).append("}");
+        return JsonUtils.unmarshal(json.toString(), Boundary.class);
+    }
+}
@@ -0,0 +1,78 @@
+package io.rapidpro.surveyor.engine;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.utils.JsonUtils;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PreparedSessionsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        PreparedSessions.getInstance().discard();
+    }
+
+    @Test
+    public void prepareAndTake() throws IOException {
+        PreparedSessions prepared = PreparedSessions.getInstance();
+        Org org = Org.create(folder.newFolder("b2ad9e4d-71f1-4d54-8dd6-f7a94b685d06"), "Nyaruka", "abc");
+        Flow flow1 = flow("14ca824e-6607-4c11-82f5-18e298d0bd58", 1);
+        Flow flow2 = flow("bdd61538-5f50-4836-a8fb-acaafd64ddb1", 1);
+        Pair<Session, Sprint> ss1 = new ImmutablePair<>(null, null);
+
+        assertThat(prepared.begin(org, flow1), is(true));
+        assertThat(prepared.begin(org, flow1), is(false)); // already being prepared
+
+        // a session being prepared can't be taken
+        assertThat(prepared.take(org, flow1), is(nullValue()));
+
+        // and once taken or discarded, it won't be stored when ready
+        prepared.put(org, flow1, ss1);
+        assertThat(prepared.take(org, flow1), is(nullValue()));
+
+        assertThat(prepared.begin(org, flow1), is(true));
+        prepared.put(org, flow1, ss1);
+        assertThat(prepared.begin(org, flow1), is(false)); // already prepared
+
+        // a session for a different flow or revision isn't used
+        assertThat(prepared.take(org, flow("14ca824e-6607-4c11-82f5-18e298d0bd58", 2)), is(nullValue()));
+        assertThat(prepared.take(org, flow1), is(nullValue()));
+
+        assertThat(prepared.begin(org, flow1), is(true));
+        prepared.put(org, flow1, ss1);
+        assertThat(prepared.take(org, flow1), is(sameInstance(ss1)));
+        assertThat(prepared.take(org, flow1), is(nullValue()));
+
+        // preparing another flow replaces the previous one
+        assertThat(prepared.begin(org, flow1), is(true));
+        prepared.put(org, flow1, ss1);
+        assertThat(prepared.begin(org, flow2), is(true));
+        prepared.put(org, flow1, ss1);
+        assertThat(prepared.take(org, flow1), is(nullValue()));
+
+        // a failed preparation can be retried
+        assertThat(prepared.begin(org, flow1), is(true));
+        prepared.put(org, flow1, null);
+        assertThat(prepared.begin(org, flow1), is(true));
+    }
+
+    private static Flow flow(String uuid, int revision) {
+        return JsonUtils.unmarshal("{\"uuid\":\"" + uuid + "\",\"name\":\"Test\",\"spec_version\":\"13.0.0\",\"revision\":" + revision + ",\"question_count\":1}", Flow.class);
+    }
+}
@@ -0,0 +1,88 @@
+package io.rapidpro.surveyor.engine.events;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class EventDecodersTest {
+
+    private static final String MSG_CREATED = "{\"type\":\"msg_created\",\"created_on\":\"2019-06-12T18:45:08.712493Z\"," +
+            "\"step_uuid\":\"5c9f1b2f-6a0e-4d3c-9a3a-6c3e8a2f3b7e\",\"msg\":{\"uuid\":\"e4a6f3a9-59b6-4d70-a0c5-8a8e2a8b7c0e\"," +
+            "\"urn\":\"tel:+250788123123\",\"attachments\":[\"image/jpeg:http://example.com/cat.jpg\"]," +
+            "\"quick_replies\":[\"Red\",\"Blue\"],\"text\":\"What is your \\\"favorite\\\" color?\"}}";
+
+    @Test
+    public void msgEvents() {
+        MsgEvent created = (MsgEvent) EventDecoders.decode("msg_created", MSG_CREATED);
+        assertThat(created.getType(), is("msg_created"));
+        assertThat(created.getCreatedOn(), is("2019-06-12T18:45:08.712493Z"));
+        assertThat(created.isOutgoing(), is(true));
+        assertThat(created.getText(), is("What is your \"favorite\" color?"));
+        assertThat(created.getAttachments(), is(new String[]{"image/jpeg:http://example.com/cat.jpg"}));
+        assertThat(created.getQuickReplies(), is(new String[]{"Red", "Blue"}));
+
+        MsgEvent received = (MsgEvent) EventDecoders.decode("msg_received", "{\"msg\":{\"text\":\"Blue\"},\"type\":\"msg_received\"}");
+        assertThat(received.isOutgoing(), is(false));
+        assertThat(received.getText(), is("Blue"));
+        assertThat(received.getAttachments(), is(new String[0]));
+        assertThat(received.getQuickReplies(), is(new String[0]));
+    }
+
+    @Test
+    public void waitEvents() {
+        WaitEvent wait = (WaitEvent) EventDecoders.decode("msg_wait", "{\"type\":\"msg_wait\",\"created_on\":\"2019-06-12T18:45:08.712493Z\",\"hint\":{\"type\":\"image\"}}");
+        assertThat(wait.getHintType(), is("image"));
+        assertThat(wait.getTimeoutSeconds(), is(0));
+
+        wait = (WaitEvent) EventDecoders.decode("msg_wait", "{\"type\":\"msg_wait\",\"timeout_seconds\":300}");
+        assertThat(wait.getHintType(), is(nullValue()));
+        assertThat(wait.getTimeoutSeconds(), is(300));
+    }
+
+    @Test
+    public void unknownAndInvalid() {
+        // types without a decoder aren't parsed at all, even if invalid
+        assertThat(EventDecoders.canDecode("run_result_changed"), is(false));
+        assertThat(EventDecoders.decode("run_result_changed", "{"), is(nullValue()));
+
+        assertThat(EventDecoders.decode("msg_created", "{\"msg\":"), is(nullValue()));
+        assertThat(EventDecoders.decode("msg_created", "[]"), is(nullValue()));
+    }
+
+    @Test
+    public void decodeWithoutType() {
+        // type is read from the payload wherever it appears
+        MsgEvent created = (MsgEvent) EventDecoders.decode(MSG_CREATED);
+        assertThat(created.getType(), is("msg_created"));
+        assertThat(created.getText(), is("What is your \"favorite\" color?"));
+
+        MsgEvent received = (MsgEvent) EventDecoders.decode("{\"msg\":{\"text\":\"Blue\"},\"type\":\"msg_received\"}");
+        assertThat(received.isOutgoing(), is(false));
+
+        assertThat(EventDecoders.decode("{\"type\":\"run_result_changed\",\"name\":\"Color\"}"), is(nullValue()));
+        assertThat(EventDecoders.decode("{\"msg\":{\"text\":\"Blue\"}}"), is(nullValue()));
+        assertThat(EventDecoders.decode("["), is(nullValue()));
+    }
+
+    @Test
+    public void register() {
+        EventDecoders.register("test_happened", new EventDecoder() {
+            @Override
+            public EngineEvent decode(String type, JsonReader in) throws IOException {
+                in.skipValue();
+                return new EngineEvent(type, null) {
+                };
+            }
+        });
+
+        assertThat(EventDecoders.canDecode("test_happened"), is(true));
+        assertThat(EventDecoders.decode("test_happened", "{\"foo\":1}"), is(instanceOf(EngineEvent.class)));
+    }
+}
@@ -0,0 +1,83 @@
+package io.rapidpro.surveyor.task;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.rapidpro.surveyor.utils.VideoTranscoder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TranscodeVideoTaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fallsBackToOriginal() throws IOException {
+        File src = folder.newFile("video.mp4");
+        File dest = new File(folder.getRoot(), "video_transcoded.mp4");
+        FileUtils.writeByteArrayToFile(src, new byte[2048]);
+
+        // a transcoder which fails with an IOException
+        TranscodeVideoTask task = new TranscodeVideoTask(new FailingTranscoder(new IOException("no codec")), null);
+        assertThat(task.doInBackground(src, dest), is(src));
+        assertThat(dest.exists(), is(false));
+
+        // or with the runtime exceptions that MediaCodec likes to throw
+        task = new TranscodeVideoTask(new FailingTranscoder(new IllegalStateException("codec died")), null);
+        assertThat(task.doInBackground(src, dest), is(src));
+        assertThat(dest.exists(), is(false));
+    }
+
+    @Test
+    public void keepsOriginalIfNotSmaller() throws IOException {
+        File src = folder.newFile("video.mp4");
+        File dest = new File(folder.getRoot(), "video_transcoded.mp4");
+        FileUtils.writeByteArrayToFile(src, new byte[2048]);
+
+        TranscodeVideoTask task = new TranscodeVideoTask(new VideoTranscoder(640, 800000) {
+            @Override
+            public boolean shouldTranscode(File src) {
+                return true;
+            }
+
+            @Override
+            public void transcode(File src, File dest) throws IOException {
+                FileUtils.writeByteArrayToFile(dest, new byte[4096]);
+            }
+        }, null);
+
+        assertThat(task.doInBackground(src, dest), is(src));
+        assertThat(dest.exists(), is(false));
+    }
+
+    private static class FailingTranscoder extends VideoTranscoder {
+        private Exception error;
+
+        FailingTranscoder(Exception error) {
+            super(640, 800000);
+            this.error = error;
+        }
+
+        @Override
+        public boolean shouldTranscode(File src) {
+            return true;
+        }
+
+        @Override
+        public void transcode(File src, File dest) throws IOException {
+            FileUtils.writeByteArrayToFile(dest, new byte[1024]);
+
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            throw (RuntimeException) error;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.rapidpro.surveyor.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Minimal microbenchmark runner for unit tests. Measures average time and, where the JVM supports
+ * it, average bytes allocated per operation on the current thread.
+ */
+public class Benchmark {
+
+    /**
+     * Runs the given operation, after some warmup iterations, and prints the result
+     *
+     * @param name       the name to print
+     * @param warmup     the number of untimed iterations
+     * @param iterations the number of timed iterations
+     * @param op         the operation
+     * @return the result
+     */
+    public static Result run(String name, int warmup, int iterations, Operation op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+
+        Result result = new Result(name, nanos / iterations, bytesBefore >= 0 ? bytes / iterations : -1);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    public static class Result {
+        private String name;
+        private long nanosPerOp;
+        private long bytesPerOp;
+
+        private Result(String name, long nanosPerOp, long bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public long getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public double getOpsPerSecond() {
+            return nanosPerOp > 0 ? 1e9 / nanosPerOp : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-48s %,12d ns/op %,12.1f op/s %,14d B/op", name, nanosPerOp, getOpsPerSecond(), bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.rapidpro.surveyor.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import io.rapidpro.surveyor.data.AssetStore;
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.MediaBlobStore;
+import io.rapidpro.surveyor.engine.OrgAssets;
+import io.rapidpro.surveyor.utils.RawJson;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+public class SyntheticOrgTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void assets() {
+        SyntheticOrg org = SyntheticOrg.small().withFlows(10, 4).withLocations(2, 3, 4);
+        assertThat(org.getBoundaryCount(), is(1 + 2 + 6 + 24));
+
+        OrgAssets assets = org.getAssets();
+        assertThat(assets.getLocations(), hasSize(1));
+        assertThat(assets.getLocations().get(0).getChildren(), hasSize(2));
+
+        // flow summaries extracted from the definitions of both formats should match the generated ones
+        List<Flow> summaries = org.getFlows();
+        for (int f = 0; f < 10; f++) {
+            Flow extracted = Flow.extract(assets.getFlowDefinitions().get(f));
+            assertThat(extracted.getUuid(), is(summaries.get(f).getUuid()));
+            assertThat(extracted.getName(), is(summaries.get(f).getName()));
+            assertThat(extracted.getRevision(), is(summaries.get(f).getRevision()));
+            assertThat(extracted.getQuestionCount(), is(4));
+        }
+        assertThat(Flow.extract(new RawJson(SyntheticData.flowDefinition(4, 4, true))).getSpecVersion(), is("11.12"));
+    }
+
+    @Test
+    public void install() throws Exception {
+        SyntheticOrg org = SyntheticOrg.small().withFlows(3, 2).withSubmissions(7, 2);
+
+        File dir = org.install(folder.newFolder("orgs"));
+        assertThat(new File(dir, "details.json").exists(), is(true));
+        assertThat(new AssetStore(new File(dir, "assets")).exists(), is(true));
+
+        MediaBlobStore media = new MediaBlobStore(folder.newFolder("media"));
+        List<File> submissions = org.installSubmissions(folder.newFolder("submissions"), media);
+        assertThat(submissions, hasSize(7));
+        assertThat(new File(submissions.get(0), ".completed").exists(), is(true));
+        assertThat(media.getDirectory().listFiles().length, is(7 * 2 + 1)); // plus the index
+    }
+}
@@ -0,0 +1,36 @@
+package io.rapidpro.surveyor.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AudioProfileTest {
+
+    @Test
+    public void fromName() {
+        assertThat(AudioProfile.fromName("speech"), is(AudioProfile.SPEECH));
+        assertThat(AudioProfile.fromName("standard"), is(AudioProfile.STANDARD));
+        assertThat(AudioProfile.fromName("high"), is(AudioProfile.HIGH));
+
+        // unset or unknown preference values fall back to speech
+        assertThat(AudioProfile.fromName(null), is(AudioProfile.SPEECH));
+        assertThat(AudioProfile.fromName("xxx"), is(AudioProfile.SPEECH));
+
+        assertThat(AudioProfile.SPEECH.getSampleRate(), is(16000));
+        assertThat(AudioProfile.SPEECH.getChannels(), is(1));
+        assertThat(AudioProfile.HIGH.getChannels(), is(2));
+    }
+
+    @Test
+    public void resolve() {
+        // flow beats org beats global
+        assertThat(AudioProfile.resolve("high", "standard", "speech"), is(AudioProfile.HIGH));
+        assertThat(AudioProfile.resolve(null, "standard", "high"), is(AudioProfile.STANDARD));
+        assertThat(AudioProfile.resolve(null, null, "high"), is(AudioProfile.HIGH));
+        assertThat(AudioProfile.resolve(null, null, null), is(AudioProfile.SPEECH));
+
+        assertThat(AudioProfile.prefKey("org1", null), is("audio_profile:org1"));
+        assertThat(AudioProfile.prefKey("org1", "flow1"), is("audio_profile:org1:flow1"));
+    }
+}
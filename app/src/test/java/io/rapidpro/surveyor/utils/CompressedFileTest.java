@@ -0,0 +1,46 @@
+package io.rapidpro.surveyor.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CompressedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead() throws IOException {
+        String text = "{\"name\":\"Kigali éè कि\"}";
+
+        File plain = folder.newFile("plain.json");
+        CompressedFile.write(plain, text, false);
+
+        assertThat(FileUtils.readFileToString(plain, "UTF-8"), is(text));
+        assertThat(CompressedFile.isCompressed(plain), is(false));
+        assertThat(CompressedFile.read(plain), is(text));
+
+        File compressed = folder.newFile("compressed.json");
+        CompressedFile.write(compressed, text, true);
+
+        assertThat(CompressedFile.isCompressed(compressed), is(true));
+        assertThat(CompressedFile.read(compressed), is(text));
+
+        StringBuilder sb = new StringBuilder("[");
+        CompressedFile.readTo(compressed, sb);
+        CompressedFile.readTo(plain, sb.append(","));
+        assertThat(sb.toString(), is("[" + text + "," + text));
+
+        // short and empty files are just plain
+        File empty = folder.newFile("empty.json");
+        assertThat(CompressedFile.isCompressed(empty), is(false));
+        assertThat(CompressedFile.read(empty), is(""));
+    }
+}
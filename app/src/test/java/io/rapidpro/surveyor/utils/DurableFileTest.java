@@ -0,0 +1,85 @@
+package io.rapidpro.surveyor.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DurableFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead() throws IOException {
+        String text = "{\"name\":\"Kigali éè कि\"}";
+        File file = new File(folder.getRoot(), "details.json");
+
+        DurableFile.write(file, "{}");
+        DurableFile.write(file, text);
+
+        assertThat(DurableFile.read(file), is(text));
+        assertThat(new File(folder.getRoot(), "details.json.tmp").exists(), is(false));
+
+        // files written by older versions are read as is
+        File plain = folder.newFile("plain.json");
+        FileUtils.writeStringToFile(plain, text, "UTF-8");
+        assertThat(DurableFile.read(plain), is(text));
+
+        DurableFile.write(file, "");
+        assertThat(DurableFile.read(file), is(""));
+    }
+
+    @Test
+    public void corruptionDetected() throws IOException {
+        File file = new File(folder.getRoot(), "session.json");
+        DurableFile.write(file, "{\"status\":\"completed\"}");
+
+        // flip a byte of the content
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - 3);
+        raf.write('X');
+        raf.close();
+
+        assertCorrupt(file);
+
+        // and truncate it
+        DurableFile.write(file, "{\"status\":\"completed\"}");
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 2);
+        raf.close();
+
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void interruptedWriteLeavesOriginal() throws IOException {
+        File file = new File(folder.getRoot(), "flows.json");
+        DurableFile.write(file, "[1,2,3]");
+
+        // simulate dying after writing some of the temp file
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "flows.json.tmp"), "[1,2", "UTF-8");
+
+        assertThat(DurableFile.read(file), is("[1,2,3]"));
+
+        DurableFile.write(file, "[4]");
+        assertThat(DurableFile.read(file), is("[4]"));
+    }
+
+    private static void assertCorrupt(File file) {
+        try {
+            DurableFile.read(file);
+            fail("should have thrown exception");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
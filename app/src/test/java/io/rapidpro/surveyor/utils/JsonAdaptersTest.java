@@ -0,0 +1,125 @@
+package io.rapidpro.surveyor.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import io.rapidpro.surveyor.data.Flow;
+import io.rapidpro.surveyor.data.Org;
+import io.rapidpro.surveyor.net.responses.Boundary;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class JsonAdaptersTest {
+
+    private static final Type FLOW_LIST = new TypeToken<List<Flow>>() {
+    }.getType();
+
+    private static final Type BOUNDARY_LIST = new TypeToken<List<Boundary>>() {
+    }.getType();
+
+    /**
+     * Gson as configured before we had streaming adapters, i.e. everything by reflection
+     */
+    private static Gson newReflectiveGson() {
+        return new GsonBuilder().registerTypeAdapter(RawJson.class, new RawJson.Adapter()).create();
+    }
+
+    @Test
+    public void org() {
+        String json = "{\"token\":\"abc123\",\"name\":\"Nyaruka\",\"primary_language\":\"eng\",\"languages\":[\"eng\",\"fra\"]," +
+                "\"timezone\":\"Africa/Kigali\",\"country\":\"RW\",\"date_style\":\"day_first\",\"anon\":true,\"legacySubmissionsDirectory\":\"1234\"}";
+
+        Org org = JsonUtils.unmarshal(json, Org.class);
+
+        assertThat(org.getToken(), is("abc123"));
+        assertThat(org.getName(), is("Nyaruka"));
+        assertThat(org.getPrimaryLanguage(), is("eng"));
+        assertThat(org.getLanguages(), is(new String[]{"eng", "fra"}));
+        assertThat(org.getTimezone(), is("Africa/Kigali"));
+        assertThat(org.getCountry(), is("RW"));
+        assertThat(org.getDateStyle(), is("day_first"));
+        assertThat(org.isAnon(), is(true));
+        assertThat(org.getLegacySubmissionsDirectory(), is("1234"));
+
+        // output should be identical to what we used to write by reflection
+        assertThat(JsonUtils.marshal(org), is(json));
+        assertThat(JsonUtils.marshal(org), is(newReflectiveGson().toJson(org)));
+
+        // details.json as written by Org.create
+        org = JsonUtils.unmarshal("{\"name\":\"Nyaruka\",\"token\":\"abc123\",\"other\":[1,{}]}", Org.class);
+
+        assertThat(org.getName(), is("Nyaruka"));
+        assertThat(org.getLanguages(), is(nullValue()));
+        assertThat(JsonUtils.marshal(org), is("{\"token\":\"abc123\",\"name\":\"Nyaruka\",\"anon\":false}"));
+    }
+
+    @Test
+    public void flows() {
+        String json = "[{\"uuid\":\"bdd61538-5f50-4836-a8fb-acaafd64ddb1\",\"name\":\"Two Questions\",\"spec_version\":\"13.0.0\",\"revision\":24,\"question_count\":2}]";
+
+        List<Flow> flows = JsonUtils.getGson().fromJson(json, FLOW_LIST);
+
+        assertThat(flows.size(), is(1));
+        assertThat(flows.get(0).getUuid(), is("bdd61538-5f50-4836-a8fb-acaafd64ddb1"));
+        assertThat(flows.get(0).getName(), is("Two Questions"));
+        assertThat(flows.get(0).getSpecVersion(), is("13.0.0"));
+        assertThat(flows.get(0).getRevision(), is(24));
+        assertThat(flows.get(0).getQuestionCount(), is(2));
+
+        assertThat(JsonUtils.marshal(flows), is(json));
+        assertThat(JsonUtils.marshal(flows), is(newReflectiveGson().toJson(flows)));
+    }
+
+    @Test
+    public void boundaries() {
+        String json = "[{\"osm_id\":\"192787\",\"name\":\"Nigeria\",\"parent\":null,\"level\":0,\"aliases\":[],\"geometry\":null}," +
+                "{\"osm_id\":\"3698564\",\"name\":\"Yobe\",\"parent\":{\"osm_id\":\"192787\",\"name\":\"Nigeria\"},\"level\":1,\"aliases\":[\"Iobe\"],\"geometry\":null}]";
+
+        List<Boundary> boundaries = JsonUtils.getGson().fromJson(json, BOUNDARY_LIST);
+
+        assertThat(boundaries.size(), is(2));
+        assertThat(boundaries.get(0).getOsmID(), is("192787"));
+        assertThat(boundaries.get(0).getParent(), is(nullValue()));
+        assertThat(boundaries.get(0).getAliases(), is(new String[0]));
+        assertThat(boundaries.get(1).getName(), is("Yobe"));
+        assertThat(boundaries.get(1).getParent().getOsmID(), is("192787"));
+        assertThat(boundaries.get(1).getParent().getName(), is("Nigeria"));
+        assertThat(boundaries.get(1).getLevel(), is(1));
+        assertThat(boundaries.get(1).getAliases(), is(new String[]{"Iobe"}));
+
+        assertThat(JsonUtils.marshal(boundaries), is(newReflectiveGson().toJson(boundaries)));
+    }
+
+    @Test
+    public void nullNumbersAndBooleans() {
+        Org org = JsonUtils.unmarshal("{\"name\":\"Nyaruka\",\"anon\":null}", Org.class);
+        assertThat(org.getName(), is("Nyaruka"));
+        assertThat(org.isAnon(), is(false));
+
+        List<Flow> flows = JsonUtils.getGson().fromJson("[{\"uuid\":\"bdd61538-5f50-4836-a8fb-acaafd64ddb1\",\"revision\":null,\"question_count\":null}]", FLOW_LIST);
+        assertThat(flows.get(0).getUuid(), is("bdd61538-5f50-4836-a8fb-acaafd64ddb1"));
+        assertThat(flows.get(0).getRevision(), is(0));
+        assertThat(flows.get(0).getQuestionCount(), is(0));
+
+        List<Boundary> boundaries = JsonUtils.getGson().fromJson("[{\"osm_id\":\"192787\",\"level\":null,\"name\":\"Nigeria\"}]", BOUNDARY_LIST);
+        assertThat(boundaries.get(0).getLevel(), is(0));
+        assertThat(boundaries.get(0).getName(), is("Nigeria"));
+
+        io.rapidpro.surveyor.net.responses.Flow flow = JsonUtils.unmarshal("{\"uuid\":\"bdd61538-5f50-4836-a8fb-acaafd64ddb1\",\"archived\":null,\"expires\":null,\"name\":\"Two Questions\"}", io.rapidpro.surveyor.net.responses.Flow.class);
+        assertThat(flow.isArchived(), is(false));
+        assertThat(flow.getExpires(), is(0));
+        assertThat(flow.getName(), is("Two Questions"));
+
+        io.rapidpro.surveyor.net.responses.Org info = JsonUtils.unmarshal("{\"uuid\":\"dc8123a1-168c-4962-ab9e-f784f3d804a2\",\"anon\":null,\"name\":\"Nyaruka\"}", io.rapidpro.surveyor.net.responses.Org.class);
+        assertThat(info.isAnon(), is(false));
+        assertThat(info.getName(), is("Nyaruka"));
+    }
+}
@@ -0,0 +1,99 @@
+package io.rapidpro.surveyor.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import io.rapidpro.surveyor.net.responses.Definitions;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RawJsonTest {
+
+    @Test
+    public void copy() throws IOException {
+        assertCopy("{\"a\":[1,2.50,-3e5,true,false,null],\"b\":{\"c\":\"\\\"quoted\\\" \\u00e9 \\n <tag>\"},\"d\":{}}");
+        assertCopy("[]");
+        assertCopy("\"text\"");
+        assertCopy("12345678901234567890");
+
+        // only the next value is consumed
+        JsonReader reader = new JsonReader(new StringReader("[{\"a\":1},{\"b\":2}]"));
+        reader.beginArray();
+        StringWriter out = new StringWriter();
+        RawJson.copy(reader, out);
+        assertThat(out.toString(), is("{\"a\":1}"));
+        out = new StringWriter();
+        RawJson.copy(reader, out);
+        assertThat(out.toString(), is("{\"b\":2}"));
+        reader.endArray();
+    }
+
+    @Test
+    public void adapter() throws IOException {
+        String definitions = readDefinitions(3);
+
+        Definitions parsed = JsonUtils.unmarshal(definitions, Definitions.class);
+
+        assertThat(parsed.getFlows().size(), is(3));
+
+        // result should be identical to what we got by parsing to a tree
+        Definitions treeParsed = newTreeGson().fromJson(definitions, Definitions.class);
+        for (int f = 0; f < parsed.getFlows().size(); f++) {
+            assertThat(parsed.getFlows().get(f).toString(), is(treeParsed.getFlows().get(f).toString()));
+        }
+    }
+
+    private static void assertCopy(String json) throws IOException {
+        StringWriter out = new StringWriter();
+        RawJson.copy(new JsonReader(new StringReader(json)), out);
+
+        assertThat(out.toString(), is(new JsonParser().parse(json).toString()));
+    }
+
+    /**
+     * Generates a definitions response with the given number of copies of our test flow
+     */
+    private static String readDefinitions(int numFlows) throws IOException {
+        File file = new File(RawJsonTest.class.getClassLoader().getResource("flows/two_questions_v13.json").getPath());
+        String flow = FileUtils.readFileToString(file);
+
+        StringBuilder sb = new StringBuilder("{\"version\":\"13.0.0\",\"site\":\"https://app.rapidpro.io\",\"flows\":[");
+        for (int f = 0; f < numFlows; f++) {
+            if (f > 0) {
+                sb.append(",");
+            }
+            sb.append(flow);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Gson configured with the old RawJson adapter which parsed values into a tree
+     */
+    private static Gson newTreeGson() {
+        return new GsonBuilder().registerTypeAdapter(RawJson.class, new TypeAdapter<RawJson>() {
+            @Override
+            public void write(JsonWriter out, RawJson value) throws IOException {
+                out.jsonValue(value.toString());
+            }
+
+            @Override
+            public RawJson read(JsonReader in) {
+                return new RawJson(new JsonParser().parse(in).toString());
+            }
+        }).create();
+    }
+}
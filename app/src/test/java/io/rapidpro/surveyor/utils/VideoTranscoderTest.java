@@ -0,0 +1,34 @@
+package io.rapidpro.surveyor.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class VideoTranscoderTest {
+
+    @Test
+    public void scaleDimensions() {
+        VideoTranscoder transcoder = VideoProfile.STANDARD.createTranscoder();
+
+        // scaled to fit the longest side
+        assertThat(transcoder.scaleDimensions(1280, 960), is(new int[]{640, 480}));
+        assertThat(transcoder.scaleDimensions(960, 1280), is(new int[]{480, 640}));
+
+        // never scaled up
+        assertThat(transcoder.scaleDimensions(320, 240), is(new int[]{320, 240}));
+
+        // rounded to multiples of 16
+        assertThat(transcoder.scaleDimensions(1920, 1000), is(new int[]{640, 336}));
+        assertThat(transcoder.scaleDimensions(8, 8), is(new int[]{16, 16}));
+
+        assertThat(VideoProfile.HIGH.createTranscoder().scaleDimensions(1920, 1440), is(new int[]{1280, 960}));
+    }
+
+    @Test
+    public void profileFromName() {
+        assertThat(VideoProfile.fromName("low"), is(VideoProfile.LOW));
+        assertThat(VideoProfile.fromName("high"), is(VideoProfile.HIGH));
+        assertThat(VideoProfile.fromName("xxx"), is(VideoProfile.STANDARD));
+    }
+}